@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkApplication;
+import dagger.ObjectGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creation of the application-scope graph.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationGraphBenchmark {
+
+    /**
+     * ObjectGraph.create from the modules returned by InjectingApplication.getModules().
+     */
+    @Benchmark
+    public ObjectGraph createFromModules() {
+        return ObjectGraph.create(new BenchmarkApplication().modules().toArray());
+    }
+
+    /**
+     * The whole of InjectingApplication.onCreate: graph creation plus injection of the application.
+     */
+    @Benchmark
+    public ObjectGraph applicationOnCreate() {
+        BenchmarkApplication app = new BenchmarkApplication();
+        app.onCreate();
+        return app.getObjectGraph();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.IBinder;
+import com.fizzbuzz.android.dagger.InjectingActivity;
+import com.fizzbuzz.android.dagger.InjectingActivityModule;
+import com.fizzbuzz.android.dagger.InjectingAppWidgetProvider;
+import com.fizzbuzz.android.dagger.InjectingApplication;
+import com.fizzbuzz.android.dagger.InjectingBroadcastReceiver;
+import com.fizzbuzz.android.dagger.InjectingFragment;
+import com.fizzbuzz.android.dagger.InjectingFragmentActivity;
+import com.fizzbuzz.android.dagger.InjectingFragmentModule;
+import com.fizzbuzz.android.dagger.InjectingService;
+import com.fizzbuzz.android.dagger.StaticModules;
+import com.fizzbuzz.android.dagger.benchmarks.Bindings.Clock;
+import com.fizzbuzz.android.dagger.benchmarks.Bindings.Presenter;
+import com.fizzbuzz.android.dagger.benchmarks.Bindings.Repository;
+
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * Concrete subclasses of the library components, as an application would write them.  Each exposes its protected
+ * lifecycle methods so that the benchmarks can drive it without an Android runtime.
+ */
+final class BenchmarkComponents {
+    private BenchmarkComponents() {
+    }
+
+    static class BenchmarkApplication extends InjectingApplication {
+        @Inject Repository mRepository;
+
+        List<Object> modules() {
+            return getModules();
+        }
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.AppModule());
+            return result;
+        }
+    }
+
+    static class AccountingBenchmarkApplication extends BenchmarkApplication {
+        @Override
+        protected boolean isScopeAccountingEnabled() {
+            return true;
+        }
+    }
+
+    static class BenchmarkActivity extends InjectingActivity {
+        @Inject @InjectingActivityModule.Activity Context mContext;
+        @Inject Presenter mPresenter;
+
+        BenchmarkActivity(Application app) {
+            attachBaseContext(app);
+        }
+
+        void create() {
+            onCreate(null);
+        }
+
+        void destroy() {
+            onDestroy();
+        }
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.ActivityModule());
+            return result;
+        }
+    }
+
+    @StaticModules(BenchmarkModules.ActivityModule.class)
+    static class CollectingBenchmarkActivity extends InjectingActivity {
+        @Inject @InjectingActivityModule.Activity Context mContext;
+        @Inject Presenter mPresenter;
+
+        CollectingBenchmarkActivity(Application app) {
+            attachBaseContext(app);
+        }
+
+        void create() {
+            onCreate(null);
+        }
+
+        void create(Bundle savedInstanceState) {
+            onCreate(savedInstanceState);
+        }
+
+        void saveInstanceState(Bundle outState) {
+            onSaveInstanceState(outState);
+        }
+
+        void destroy() {
+            onDestroy();
+        }
+    }
+
+    static class RetainingBenchmarkActivity extends CollectingBenchmarkActivity {
+        RetainingBenchmarkActivity(Application app) {
+            super(app);
+        }
+
+        @Override
+        protected boolean isObjectGraphRetained() {
+            return true;
+        }
+
+        // the benchmark only ever destroys these to recreate them, as for a rotation
+        @Override
+        public boolean isChangingConfigurations() {
+            return true;
+        }
+    }
+
+    static class BenchmarkFragmentActivity extends InjectingFragmentActivity {
+        @Inject Presenter mPresenter;
+
+        BenchmarkFragmentActivity(Application app) {
+            attachBaseContext(app);
+        }
+
+        void create() {
+            onCreate(null);
+        }
+
+        void destroy() {
+            onDestroy();
+        }
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.ActivityModule());
+            return result;
+        }
+    }
+
+    static class BenchmarkFragment extends InjectingFragment {
+        @Inject @InjectingFragmentModule.Fragment com.fizzbuzz.android.dagger.Injector mInjector;
+        @Inject Presenter mPresenter;
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.FragmentModule());
+            return result;
+        }
+    }
+
+    @StaticModules(BenchmarkModules.FragmentModule.class)
+    static class RecyclingBenchmarkFragment extends InjectingFragment {
+        @Inject @InjectingFragmentModule.Fragment com.fizzbuzz.android.dagger.Injector mInjector;
+        @Inject Presenter mPresenter;
+
+        @Override
+        protected boolean isModuleRecyclingEnabled() {
+            return true;
+        }
+    }
+
+    static class BenchmarkService extends InjectingService {
+        @Inject Repository mRepository;
+
+        BenchmarkService(Application app) {
+            attachBaseContext(app);
+        }
+
+        @Override
+        public IBinder onBind(Intent intent) {
+            return null;
+        }
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.ServiceModule());
+            return result;
+        }
+    }
+
+    static class ConcurrentBenchmarkService extends BenchmarkService {
+        ConcurrentBenchmarkService(Application app) {
+            super(app);
+        }
+
+        @Override
+        protected boolean isConcurrentInjectionEnabled() {
+            return true;
+        }
+    }
+
+    static class BenchmarkReceiver extends InjectingBroadcastReceiver {
+        @Inject Clock mClock;
+        @Inject Repository mRepository;
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.ReceiverModule());
+            return result;
+        }
+    }
+
+    static class CachingBenchmarkReceiver extends BenchmarkReceiver {
+        @Override
+        protected boolean isObjectGraphCacheEnabled() {
+            return true;
+        }
+    }
+
+    static class BenchmarkAppWidgetProvider extends InjectingAppWidgetProvider {
+        @Inject Clock mClock;
+        @Inject Repository mRepository;
+
+        @Override
+        protected List<Object> getModules() {
+            List<Object> result = super.getModules();
+            result.add(new BenchmarkModules.AppWidgetProviderModule());
+            return result;
+        }
+    }
+
+    static class CachingBenchmarkAppWidgetProvider extends BenchmarkAppWidgetProvider {
+        @Override
+        protected boolean isObjectGraphCacheEnabled() {
+            return true;
+        }
+    }
+}
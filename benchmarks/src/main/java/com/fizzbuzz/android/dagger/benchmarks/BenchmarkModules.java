@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.AccountingBenchmarkApplication;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkAppWidgetProvider;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkApplication;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkFragment;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkFragmentActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkReceiver;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkService;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.CachingBenchmarkAppWidgetProvider;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.CachingBenchmarkReceiver;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.CollectingBenchmarkActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.ConcurrentBenchmarkService;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.RecyclingBenchmarkFragment;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.RetainingBenchmarkActivity;
+import dagger.Module;
+
+/**
+ * The application-specific modules that the benchmark components add to the library modules.
+ */
+final class BenchmarkModules {
+    private BenchmarkModules() {
+    }
+
+    @Module(
+            injects = {
+                    BenchmarkApplication.class,
+                    AccountingBenchmarkApplication.class,
+                    Bindings.InjectionTarget.class,
+                    Bindings.Presenter.class},
+            complete = false,
+            library = true)
+    static class AppModule {
+    }
+
+    @Module(
+            addsTo = AppModule.class,
+            injects = {
+                    BenchmarkActivity.class,
+                    CollectingBenchmarkActivity.class,
+                    RetainingBenchmarkActivity.class,
+                    BenchmarkFragmentActivity.class},
+            complete = false,
+            library = true)
+    static class ActivityModule {
+    }
+
+    @Module(
+            addsTo = ActivityModule.class,
+            injects = {BenchmarkFragment.class, RecyclingBenchmarkFragment.class},
+            complete = false,
+            library = true)
+    static class FragmentModule {
+    }
+
+    @Module(
+            addsTo = AppModule.class,
+            injects = {BenchmarkService.class, ConcurrentBenchmarkService.class},
+            complete = false,
+            library = true)
+    static class ServiceModule {
+    }
+
+    @Module(
+            addsTo = ServiceModule.class,
+            injects = Bindings.InjectionTarget.class,
+            complete = false,
+            library = true)
+    static class PerThreadModule {
+    }
+
+    @Module(
+            addsTo = AppModule.class,
+            injects = {BenchmarkReceiver.class, CachingBenchmarkReceiver.class},
+            complete = false,
+            library = true)
+    static class ReceiverModule {
+    }
+
+    @Module(
+            addsTo = AppModule.class,
+            injects = {BenchmarkAppWidgetProvider.class, CachingBenchmarkAppWidgetProvider.class},
+            complete = false,
+            library = true)
+    static class AppWidgetProviderModule {
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * A small set of bindings with a realistic mix of scoped and unscoped types, used by the benchmark components.
+ */
+final class Bindings {
+    private Bindings() {
+    }
+
+    @Singleton
+    static class Clock {
+        @Inject
+        Clock() {
+        }
+    }
+
+    @Singleton
+    static class Repository {
+        final Clock mClock;
+
+        @Inject
+        Repository(Clock clock) {
+            mClock = clock;
+        }
+    }
+
+    static class Presenter {
+        final Repository mRepository;
+        final Clock mClock;
+
+        @Inject
+        Presenter(Repository repository, Clock clock) {
+            mRepository = repository;
+            mClock = clock;
+        }
+    }
+
+    /**
+     * A typical injection target: a few scoped and unscoped dependencies, injected through an Injector.
+     */
+    static class InjectionTarget {
+        @Inject Clock mClock;
+        @Inject Repository mRepository;
+        @Inject Presenter mPresenter;
+    }
+}
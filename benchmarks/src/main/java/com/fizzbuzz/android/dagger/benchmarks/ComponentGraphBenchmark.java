@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import android.content.Intent;
+import android.os.Bundle;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkAppWidgetProvider;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkApplication;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkFragment;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkFragmentActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkReceiver;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkService;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.CachingBenchmarkAppWidgetProvider;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.CachingBenchmarkReceiver;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.CollectingBenchmarkActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.RecyclingBenchmarkFragment;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.RetainingBenchmarkActivity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-instance lifecycle cost of each component type: extending the parent graph with the component's
+ * modules, injecting the component, and (where applicable) tearing it down again.  The rotation benchmarks replace an
+ * activity with a new instance, passing on its saved state, as for a configuration change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentGraphBenchmark {
+    private BenchmarkApplication mApp;
+    private BenchmarkFragmentActivity mHostActivity;
+    private Intent mIntent;
+    private CollectingBenchmarkActivity mRotatingActivity;
+    private CollectingBenchmarkActivity mRetainingActivity;
+
+    @Setup
+    public void setUp() {
+        mApp = new BenchmarkApplication();
+        mApp.onCreate();
+
+        mHostActivity = new BenchmarkFragmentActivity(mApp);
+        mHostActivity.create();
+
+        mIntent = new Intent();
+
+        mRotatingActivity = new CollectingBenchmarkActivity(mApp);
+        mRotatingActivity.create();
+        mRetainingActivity = new RetainingBenchmarkActivity(mApp);
+        mRetainingActivity.create();
+    }
+
+    @Benchmark
+    public Object activity() {
+        BenchmarkActivity activity = new BenchmarkActivity(mApp);
+        activity.create();
+        activity.destroy();
+        return activity;
+    }
+
+    @Benchmark
+    public Object activityCollectingModules() {
+        CollectingBenchmarkActivity activity = new CollectingBenchmarkActivity(mApp);
+        activity.create();
+        activity.destroy();
+        return activity;
+    }
+
+    @Benchmark
+    public Object activityRotation() {
+        mRotatingActivity = rotate(mRotatingActivity, new CollectingBenchmarkActivity(mApp));
+        return mRotatingActivity;
+    }
+
+    @Benchmark
+    public Object activityRotationRetainingGraph() {
+        mRetainingActivity = rotate(mRetainingActivity, new RetainingBenchmarkActivity(mApp));
+        return mRetainingActivity;
+    }
+
+    @Benchmark
+    public Object fragment() {
+        BenchmarkFragment fragment = new BenchmarkFragment();
+        fragment.onAttach(mHostActivity);
+        fragment.onDestroy();
+        return fragment;
+    }
+
+    @Benchmark
+    public Object fragmentRecyclingModule() {
+        RecyclingBenchmarkFragment fragment = new RecyclingBenchmarkFragment();
+        fragment.onAttach(mHostActivity);
+        fragment.onDestroy();
+        return fragment;
+    }
+
+    @Benchmark
+    public Object service() {
+        BenchmarkService service = new BenchmarkService(mApp);
+        service.onCreate();
+        service.onDestroy();
+        return service;
+    }
+
+    @Benchmark
+    public Object receiver() {
+        BenchmarkReceiver receiver = new BenchmarkReceiver();
+        receiver.onReceive(mApp, mIntent);
+        return receiver;
+    }
+
+    @Benchmark
+    public Object receiverCached() {
+        BenchmarkReceiver receiver = new CachingBenchmarkReceiver();
+        receiver.onReceive(mApp, mIntent);
+        return receiver;
+    }
+
+    @Benchmark
+    public Object appWidgetProvider() {
+        BenchmarkAppWidgetProvider provider = new BenchmarkAppWidgetProvider();
+        provider.onReceive(mApp, mIntent);
+        return provider;
+    }
+
+    @Benchmark
+    public Object appWidgetProviderCached() {
+        BenchmarkAppWidgetProvider provider = new CachingBenchmarkAppWidgetProvider();
+        provider.onReceive(mApp, mIntent);
+        return provider;
+    }
+
+    private static CollectingBenchmarkActivity rotate(CollectingBenchmarkActivity activity,
+            CollectingBenchmarkActivity replacement) {
+        Bundle savedInstanceState = new Bundle();
+        activity.saveInstanceState(savedInstanceState);
+        activity.destroy();
+        replacement.create(savedInstanceState);
+        return replacement;
+    }
+}
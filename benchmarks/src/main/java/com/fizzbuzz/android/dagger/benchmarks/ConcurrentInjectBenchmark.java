@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import com.fizzbuzz.android.dagger.ModuleCollector;
+import com.fizzbuzz.android.dagger.PerThreadObjectGraph;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkApplication;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.ConcurrentBenchmarkService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures injection throughput with four threads sharing one service-scope graph: through the ObjectGraph itself,
+ * which takes dagger's linker lock on every call, through the service's Injector methods, and through a
+ * {@link PerThreadObjectGraph} extending the service graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ConcurrentInjectBenchmark {
+    private ConcurrentBenchmarkService mService;
+    private PerThreadObjectGraph mPerThreadGraph;
+
+    @State(Scope.Thread)
+    public static class Target {
+        Bindings.InjectionTarget mTarget = new Bindings.InjectionTarget();
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkApplication app = new BenchmarkApplication();
+        app.onCreate();
+
+        mService = new ConcurrentBenchmarkService(app);
+        mService.onCreate();
+
+        mPerThreadGraph = new PerThreadObjectGraph(mService) {
+            @Override
+            protected void collectModules(ModuleCollector collector) {
+                collector.add(new BenchmarkModules.PerThreadModule());
+            }
+        };
+    }
+
+    @Benchmark
+    public Object injectViaGraph(Target target) {
+        mService.getObjectGraph().inject(target.mTarget);
+        return target.mTarget;
+    }
+
+    @Benchmark
+    public Object inject(Target target) {
+        mService.inject(target.mTarget);
+        return target.mTarget;
+    }
+
+    @Benchmark
+    public Object injectPerThreadGraph(Target target) {
+        mPerThreadGraph.inject(target.mTarget);
+        return target.mTarget;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import com.fizzbuzz.android.dagger.DaggerGraphBackend;
+import com.fizzbuzz.android.dagger.GeneratedGraphBackend;
+import com.fizzbuzz.android.dagger.GraphBackend;
+import com.fizzbuzz.android.dagger.InjectingActivityModule;
+import com.fizzbuzz.android.dagger.InjectingApplication.InjectingApplicationModule;
+import com.fizzbuzz.android.dagger.InjectingFragmentModule;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkApplication;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkFragment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the graph backends across the application -> activity -> fragment hierarchy: Dagger's own object graphs,
+ * which load adapters by name and link bindings at runtime, against the graphs that fb-android-dagger-compiler
+ * generates.  The graphs are built from the same modules as the benchmark components', directly through the backend,
+ * so that only the graphs themselves are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBackendBenchmark {
+    @Param({"dagger", "generated"})
+    public String backend;
+
+    private GraphBackend mBackend;
+    private BenchmarkApplication mApp;
+    private GraphBackend.Graph mAppGraph;
+    private GraphBackend.Graph mActivityGraph;
+
+    @Setup
+    public void setUp() {
+        mBackend = backend.equals("generated") ? new GeneratedGraphBackend() : new DaggerGraphBackend();
+        mApp = new BenchmarkApplication();
+        mAppGraph = createApplicationGraph(mApp);
+        mActivityGraph = createActivityGraph(mAppGraph, new BenchmarkActivity(mApp));
+    }
+
+    @Benchmark
+    public Object applicationGraph() {
+        return createApplicationGraph(new BenchmarkApplication());
+    }
+
+    @Benchmark
+    public Object activityGraph() {
+        return createActivityGraph(mAppGraph, new BenchmarkActivity(mApp));
+    }
+
+    @Benchmark
+    public Object fragmentGraph() {
+        return createFragmentGraph(mActivityGraph, new BenchmarkFragment());
+    }
+
+    @Benchmark
+    public Object hierarchy() {
+        BenchmarkApplication app = new BenchmarkApplication();
+        GraphBackend.Graph appGraph = createApplicationGraph(app);
+        GraphBackend.Graph activityGraph = createActivityGraph(appGraph, new BenchmarkActivity(app));
+        return createFragmentGraph(activityGraph, new BenchmarkFragment());
+    }
+
+    @Benchmark
+    public Object inject() {
+        Bindings.InjectionTarget target = new Bindings.InjectionTarget();
+        mActivityGraph.inject(target);
+        return target;
+    }
+
+    private GraphBackend.Graph createApplicationGraph(BenchmarkApplication app) {
+        GraphBackend.Graph graph = mBackend.createGraph(new Object[]{
+                new InjectingApplicationModule(app, app), new BenchmarkModules.AppModule()});
+        graph.inject(app);
+        return graph;
+    }
+
+    private static GraphBackend.Graph createActivityGraph(GraphBackend.Graph appGraph, BenchmarkActivity activity) {
+        GraphBackend.Graph graph = appGraph.plus(new Object[]{
+                new InjectingActivityModule(activity, activity), new BenchmarkModules.ActivityModule()});
+        graph.inject(activity);
+        return graph;
+    }
+
+    private static GraphBackend.Graph createFragmentGraph(GraphBackend.Graph activityGraph,
+            BenchmarkFragment fragment) {
+        GraphBackend.Graph graph = activityGraph.plus(new Object[]{
+                new InjectingFragmentModule(fragment, fragment), new BenchmarkModules.FragmentModule()});
+        graph.inject(fragment);
+        return graph;
+    }
+}
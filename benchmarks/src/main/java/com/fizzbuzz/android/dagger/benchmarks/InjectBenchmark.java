@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.benchmarks;
+
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.AccountingBenchmarkApplication;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkActivity;
+import com.fizzbuzz.android.dagger.benchmarks.BenchmarkComponents.BenchmarkApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Injector.inject and Injector.get throughput for an already-created graph, at application and activity
+ * scope, against calling inject and get on the ObjectGraph itself, which resolves the binding by key each time.  The
+ * batch benchmarks inject a list's worth of rows, and report throughput per row.  The ...WithAccounting benchmarks
+ * measure the cost of {@link com.fizzbuzz.android.dagger.ScopeAccounting}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectBenchmark {
+    private static final int BATCH_SIZE = 32;
+
+    private BenchmarkApplication mApp;
+    private BenchmarkActivity mActivity;
+    private BenchmarkActivity mAccountingActivity;
+    private Bindings.InjectionTarget mTarget;
+    private Object[] mBatch;
+    private List<Object> mBatchList;
+
+    @Setup
+    public void setUp() {
+        mApp = new BenchmarkApplication();
+        mApp.onCreate();
+
+        mActivity = new BenchmarkActivity(mApp);
+        mActivity.create();
+
+        BenchmarkApplication accountingApp = new AccountingBenchmarkApplication();
+        accountingApp.onCreate();
+        mAccountingActivity = new BenchmarkActivity(accountingApp);
+        mAccountingActivity.create();
+
+        mTarget = new Bindings.InjectionTarget();
+        mBatch = new Object[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatch[i] = new Bindings.InjectionTarget();
+        }
+        mBatchList = Arrays.asList(mBatch);
+    }
+
+    @Benchmark
+    public Object injectApplicationScope() {
+        mApp.inject(mTarget);
+        return mTarget;
+    }
+
+    @Benchmark
+    public Object injectApplicationScopeViaGraph() {
+        mApp.getObjectGraph().inject(mTarget);
+        return mTarget;
+    }
+
+    @Benchmark
+    public Object injectActivityScope() {
+        mActivity.inject(mTarget);
+        return mTarget;
+    }
+
+    @Benchmark
+    public Object injectActivityScopeViaGraph() {
+        mActivity.getObjectGraph().inject(mTarget);
+        return mTarget;
+    }
+
+    @Benchmark
+    public Object getActivityScope() {
+        return mActivity.get(Bindings.Presenter.class);
+    }
+
+    @Benchmark
+    public Object getActivityScopeViaGraph() {
+        return mActivity.getObjectGraph().get(Bindings.Presenter.class);
+    }
+
+    @Benchmark
+    public Object injectActivityScopeWithAccounting() {
+        mAccountingActivity.inject(mTarget);
+        return mTarget;
+    }
+
+    @Benchmark
+    public Object getActivityScopeWithAccounting() {
+        return mAccountingActivity.get(Bindings.Presenter.class);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object injectBatchOneByOne() {
+        for (Object target : mBatch) {
+            mActivity.inject(target);
+        }
+        return mBatch;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object injectBatchViaGraph() {
+        for (Object target : mBatch) {
+            mActivity.getObjectGraph().inject(target);
+        }
+        return mBatch;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object injectAllArray() {
+        mActivity.injectAll(mBatch);
+        return mBatch;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object injectAllIterable() {
+        mActivity.injectAll(mBatchList);
+        return mBatchList;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.ContextWrapper;
+import android.os.Bundle;
+
+/**
+ * Plain-JVM stand-in for the Android class of the same name, with only the members used by fb-android-dagger.
+ */
+public class Activity extends ContextWrapper {
+    public final Application getApplication() {
+        return (Application) getApplicationContext();
+    }
+
+    protected void onCreate(Bundle savedInstanceState) {
+    }
+
+    protected void onSaveInstanceState(Bundle outState) {
+    }
+
+    protected void onDestroy() {
+    }
+
+    public void onLowMemory() {
+    }
+
+    public void onTrimMemory(int level) {
+    }
+
+    public boolean isChangingConfigurations() {
+        return false;
+    }
+}
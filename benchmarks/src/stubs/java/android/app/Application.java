@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+/**
+ * Plain-JVM stand-in for the Android class of the same name, with only the members used by fb-android-dagger.
+ */
+public class Application extends ContextWrapper {
+    public void onCreate() {
+    }
+
+    public void onLowMemory() {
+    }
+
+    public void onTrimMemory(int level) {
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+}
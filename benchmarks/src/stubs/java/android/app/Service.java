@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * Plain-JVM stand-in for the Android class of the same name, with only the members used by fb-android-dagger.
+ */
+public abstract class Service extends ContextWrapper {
+    public static final int START_NOT_STICKY = 2;
+
+    public final Application getApplication() {
+        return (Application) getApplicationContext();
+    }
+
+    public void onCreate() {
+    }
+
+    public void onDestroy() {
+    }
+
+    public void onLowMemory() {
+    }
+
+    public void onTrimMemory(int level) {
+    }
+
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_NOT_STICKY;
+    }
+
+    public final void stopSelf(int startId) {
+    }
+
+    public abstract IBinder onBind(Intent intent);
+}
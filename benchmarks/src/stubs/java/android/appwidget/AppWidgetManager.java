@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.appwidget;
+
+import android.content.Context;
+import android.widget.RemoteViews;
+
+/**
+ * Plain-JVM stand-in for the Android class of the same name, with only the members used by fb-android-dagger.
+ */
+public class AppWidgetManager {
+    public static final String ACTION_APPWIDGET_UPDATE = "android.appwidget.action.APPWIDGET_UPDATE";
+    public static final String EXTRA_APPWIDGET_IDS = "appWidgetIds";
+
+    private static final AppWidgetManager sInstance = new AppWidgetManager();
+
+    private AppWidgetManager() {
+    }
+
+    public static AppWidgetManager getInstance(Context context) {
+        return sInstance;
+    }
+
+    public void updateAppWidget(int appWidgetId, RemoteViews views) {
+    }
+}
@@ -0,0 +1,938 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.compiler;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.INJECT;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.LAZY;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.MEMBERS_INJECTOR;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.MODULE;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.PROVIDER;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.PROVIDES;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.SINGLETON;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getAnnotation;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getBoolean;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getEnumName;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getQualifier;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.keyOf;
+
+/**
+ * Generates, for each module that lists {@code injects} classes, an object graph class for fb-android-dagger's
+ * {@code GeneratedGraphBackend}, when run with {@code -Afbdagger.generateGraphs=true}.
+ * <p/>
+ * The graph of a module covers the module, the modules it includes, and the library modules its {@code injects}
+ * classes imply, and extends the graph of the module it is added to.  Each binding it owns becomes a method that calls
+ * the provider method or constructor directly; each singleton is kept in an array, at an index assigned here; and the
+ * members of each {@code injects} class are injected by assigning its fields directly.
+ * <p/>
+ * A binding from a provider method is owned by the graph of the module chain level that declares it.  A binding from
+ * an {@code @Inject} constructor is owned by the outermost graph whose own {@code injects} classes and provider
+ * methods need it, so that, for instance, a singleton needed by the application graph is shared by the activity graphs
+ * that extend it, while one only needed by an activity is created for each activity graph.
+ * <p/>
+ * Set bindings, {@code MembersInjector}, generic or inaccessible classes, and dependency cycles that aren't broken by
+ * a Provider or Lazy aren't supported; a module whose graph would need them gets a warning, and no graph.
+ */
+@SupportedAnnotationTypes(ModuleElements.MODULE)
+@SupportedOptions(GraphGenerationProcessor.GENERATE_GRAPHS)
+public final class GraphGenerationProcessor extends AbstractProcessor {
+    static final String GENERATE_GRAPHS = "fbdagger.generateGraphs";
+
+    private static final String GRAPH_SUFFIX = "$$Graph";
+    private static final String GENERATED_GRAPH = "com.fizzbuzz.android.dagger.GeneratedGraph";
+    private static final String GENERATED_GRAPH_BACKEND = "com.fizzbuzz.android.dagger.GeneratedGraphBackend";
+
+    private ModuleElements mModuleElements;
+    private Elements mElements;
+    private final Set<String> mGenerated = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!Boolean.parseBoolean(processingEnv.getOptions().get(GENERATE_GRAPHS))) {
+            return false;
+        }
+        mElements = processingEnv.getElementUtils();
+        mModuleElements = new ModuleElements(mElements, processingEnv.getTypeUtils());
+
+        TypeElement moduleAnnotation = mElements.getTypeElement(MODULE);
+        if (moduleAnnotation == null) {
+            return false;
+        }
+        for (TypeElement module : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(moduleAnnotation))) {
+            if (!mModuleElements.getTypes(getAnnotation(module, MODULE), "injects").isEmpty()) {
+                generate(module);
+            }
+        }
+
+        // leave the annotation unclaimed, so that dagger's own processor still sees it
+        return false;
+    }
+
+    private void generate(TypeElement module) {
+        Chain chain;
+        try {
+            chain = new Chain(module);
+            chain.link();
+        } catch (UnsupportedGraphException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Not generating a graph for " + module.getQualifiedName() + ": " + e.getMessage(), module);
+            return;
+        }
+
+        // the outermost graphs first, since each graph refers to those it extends
+        for (int i = chain.mLevels.size() - 1; i >= 0; i--) {
+            Level level = chain.mLevels.get(i);
+            if (mGenerated.contains(level.mGraphName) || mElements.getTypeElement(level.mGraphName) != null) {
+                continue;
+            }
+            try {
+                String source = new GraphWriter(chain, level).write();
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(level.mGraphName, level.mModule);
+                Writer writer = file.openWriter();
+                try {
+                    writer.write(source);
+                } finally {
+                    writer.close();
+                }
+                mGenerated.add(level.mGraphName);
+            } catch (UnsupportedGraphException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Not generating a graph for " + level.mModule.getQualifiedName() + ": " + e.getMessage(),
+                        level.mModule);
+                return;
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Could not write the graph for " + level.mModule.getQualifiedName() + ": " + e, level.mModule);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The module chain of a module, from the module itself to the root module it is ultimately added to, with the
+     * bindings each level's graph owns.
+     */
+    private final class Chain {
+        final List<Level> mLevels = new ArrayList<Level>();
+
+        Chain(TypeElement module) {
+            Set<TypeElement> seen = new HashSet<TypeElement>();
+            for (TypeElement levelModule = module; levelModule != null && seen.add(levelModule); ) {
+                mLevels.add(new Level(mLevels.size(), levelModule));
+                levelModule = mModuleElements.getType(getAnnotation(levelModule, MODULE), "addsTo");
+            }
+        }
+
+        /**
+         * Links the bindings of each level, from the root down, so that a level only depends on those above it.
+         */
+        void link() {
+            for (int i = mLevels.size() - 1; i >= 0; i--) {
+                Level level = mLevels.get(i);
+                for (TypeElement injected : level.mInjects) {
+                    checkAccessible(injected, level.mPackage);
+                    linkMembers(level, injected);
+                    linkPending(level);
+
+                    // an injects class can also be got, if it can be provided
+                    Trial trial = new Trial(level);
+                    try {
+                        level.mGettable.put(injected,
+                                resolve(level, dependency(null, injected.asType(), Dependency.INSTANCE)).mBinding);
+                        linkPending(level);
+                    } catch (UnsupportedGraphException e) {
+                        trial.rollBack();
+                    }
+                }
+
+                // graphs that extend this one may use any of its provider methods
+                for (Map.Entry<String, ExecutableElement> entry : level.mProvides.entrySet()) {
+                    Trial trial = new Trial(level);
+                    try {
+                        linkProvides(level, entry.getKey(), entry.getValue());
+                        linkPending(level);
+                    } catch (UnsupportedGraphException e) {
+                        trial.rollBack();
+                        level.mUnusable.put(entry.getKey(), e.getMessage());
+                    }
+                }
+            }
+        }
+
+        private Dependency resolve(Level from, Dependency dependency) {
+            if (dependency.mKind == Dependency.INSTANCE) {
+                dependency.mBinding = resolveBinding(from, dependency);
+            } else {
+                // resolved once the binding that depends on it has been linked, so that it can break a cycle
+                from.mPending.add(dependency);
+            }
+            return dependency;
+        }
+
+        private Binding resolveBinding(Level from, Dependency dependency) {
+            String key = dependency.mKey;
+            from.mReach.add(key);
+
+            for (int i = from.mIndex; i < mLevels.size(); i++) {
+                Level level = mLevels.get(i);
+                ExecutableElement provides = level.mProvides.get(key);
+                if (provides == null) {
+                    continue;
+                }
+                Binding binding = level.mOwned.get(key);
+                if (binding != null) {
+                    return binding;
+                }
+                if (level != from) {
+                    throw new UnsupportedGraphException(level.mUnusable.containsKey(key) ? level.mUnusable.get(key)
+                            : "no binding for " + key + " in " + level.mModule.getQualifiedName());
+                }
+                return linkProvides(from, key, provides);
+            }
+
+            // an implicit binding, owned by the outermost level that links it itself
+            Level owner = from;
+            for (int i = mLevels.size() - 1; i > from.mIndex; i--) {
+                if (mLevels.get(i).mReach.contains(key)) {
+                    owner = mLevels.get(i);
+                    break;
+                }
+            }
+            Binding binding = owner.mOwned.get(key);
+            if (binding != null) {
+                return binding;
+            }
+            if (owner != from) {
+                throw new IllegalStateException("binding for " + key + " wasn't linked by " + owner.mModule);
+            }
+            TypeMirror type = dependency.mType;
+            if (dependency.mQualifier == null && type.getKind() == TypeKind.DECLARED
+                    && ((DeclaredType) type).getTypeArguments().isEmpty()) {
+                TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+                if (mModuleElements.isInjectable(element)) {
+                    return linkInjectable(from, key, element);
+                }
+            }
+            throw new UnsupportedGraphException("no binding for " + mModuleElements.describe(dependency.mQualifier,
+                    type) + " in module chain " + describeChain(from));
+        }
+
+        private Binding linkProvides(Level level, String key, ExecutableElement method) {
+            Binding binding = level.mOwned.get(key);
+            if (binding != null) {
+                return binding;
+            }
+            if ("SET".equals(getEnumName(getAnnotation(method, PROVIDES), "type"))
+                    || "SET_VALUES".equals(getEnumName(getAnnotation(method, PROVIDES), "type"))) {
+                throw new UnsupportedGraphException("set binding " + describeElement(method) + "()");
+            }
+            checkAccessible(method, level.mPackage);
+            checkAccessible(method.getReturnType(), level.mPackage);
+
+            binding = new Binding(key, mModuleElements.typeName(method.getReturnType()), level,
+                    getAnnotation(method, SINGLETON) != null);
+            binding.mProvides = method;
+            beginLinking(level, binding);
+            for (VariableElement parameter : method.getParameters()) {
+                binding.mDependencies.add(resolve(level, dependencyOf(parameter, level.mPackage)));
+            }
+            endLinking(level, binding);
+            return binding;
+        }
+
+        private Binding linkInjectable(Level level, String key, TypeElement type) {
+            checkAccessible(type, level.mPackage);
+            Binding binding = new Binding(key, type.getQualifiedName().toString(), level,
+                    getAnnotation(type, SINGLETON) != null);
+            binding.mInjectable = type;
+            beginLinking(level, binding);
+            ExecutableElement constructor = getInjectConstructor(type);
+            checkAccessible(constructor, level.mPackage);
+            for (VariableElement parameter : constructor.getParameters()) {
+                binding.mDependencies.add(resolve(level, dependencyOf(parameter, level.mPackage)));
+            }
+            if (mModuleElements.hasInjectedMembers(type)) {
+                binding.mMembers = linkMembers(level, type);
+            }
+            endLinking(level, binding);
+            return binding;
+        }
+
+        private void beginLinking(Level level, Binding binding) {
+            if (!level.mLinking.add(binding.mKey)) {
+                throw new UnsupportedGraphException("dependency cycle through " + binding.mKey);
+            }
+        }
+
+        private void endLinking(Level level, Binding binding) {
+            level.mLinking.remove(binding.mKey);
+            level.mOwned.put(binding.mKey, binding);
+        }
+
+        private Members linkMembers(Level level, TypeElement type) {
+            Members members = level.mMembers.get(type);
+            if (members != null) {
+                return members;
+            }
+            members = new Members(type);
+            if (!level.mLinking.add("members/" + type.getQualifiedName())) {
+                throw new UnsupportedGraphException("dependency cycle through members of " + type.getQualifiedName());
+            }
+
+            // superclass members first, as dagger injects them
+            List<TypeElement> classes = new ArrayList<TypeElement>();
+            for (TypeElement cls = type; cls != null; cls = mModuleElements.getSuperclass(cls)) {
+                String name = cls.getQualifiedName().toString();
+                if (name.startsWith("java.") || name.startsWith("android.")) {
+                    break;
+                }
+                classes.add(0, cls);
+            }
+            for (TypeElement cls : classes) {
+                for (Element member : cls.getEnclosedElements()) {
+                    if (getAnnotation(member, INJECT) == null) {
+                        continue;
+                    }
+                    if (member.getKind() == ElementKind.METHOD) {
+                        throw new UnsupportedGraphException("method injection in " + cls.getQualifiedName());
+                    }
+                    if (member.getKind() != ElementKind.FIELD) {
+                        continue;
+                    }
+                    VariableElement field = (VariableElement) member;
+                    if (field.getModifiers().contains(Modifier.STATIC)) {
+                        throw new UnsupportedGraphException("static injection of " + describeElement(field));
+                    }
+                    checkAccessible(cls, level.mPackage);
+                    checkAccessible(field, level.mPackage);
+                    members.mFields.add(field);
+                    members.mDependencies.add(resolve(level, dependencyOf(field, level.mPackage)));
+                }
+            }
+            level.mLinking.remove("members/" + type.getQualifiedName());
+            level.mMembers.put(type, members);
+            return members;
+        }
+
+        private void linkPending(Level level) {
+            while (!level.mPending.isEmpty()) {
+                Dependency dependency = level.mPending.remove(0);
+                dependency.mBinding = resolveBinding(level, dependency);
+            }
+        }
+
+        private Dependency dependencyOf(Element element, String pkg) {
+            AnnotationMirror qualifier = getQualifier(element);
+            TypeMirror type = element.asType();
+            int kind = Dependency.INSTANCE;
+            if (type.getKind() == TypeKind.DECLARED) {
+                DeclaredType declaredType = (DeclaredType) type;
+                String name = ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+                if (declaredType.getTypeArguments().size() == 1 && (name.equals(PROVIDER) || name.equals(LAZY))) {
+                    kind = name.equals(PROVIDER) ? Dependency.PROVIDER : Dependency.LAZY;
+                    type = declaredType.getTypeArguments().get(0);
+                } else if (name.equals(MEMBERS_INJECTOR)) {
+                    throw new UnsupportedGraphException("MembersInjector " + type);
+                }
+            }
+            checkAccessible(type, pkg);
+            return dependency(qualifier, type, kind);
+        }
+
+        private Dependency dependency(AnnotationMirror qualifier, TypeMirror type, int kind) {
+            return new Dependency(qualifier, type, kind, keyOf(qualifier, mModuleElements.typeName(type)));
+        }
+
+        private String describeChain(Level from) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = from.mIndex; i < mLevels.size(); i++) {
+                if (builder.length() > 0) {
+                    builder.append(" -> ");
+                }
+                builder.append(mLevels.get(i).mModule.getQualifiedName());
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * One level of a module chain: a module that lists injects classes, or that one is added to, and the graph that is
+     * generated for it.
+     */
+    private final class Level {
+        final int mIndex;
+        final TypeElement mModule;
+        final String mPackage;
+        final String mGraphName;
+        final List<TypeElement> mInjects;
+        final Set<TypeElement> mModules = new LinkedHashSet<TypeElement>();
+        final Map<String, ExecutableElement> mProvides = new LinkedHashMap<String, ExecutableElement>();
+        // the keys of mProvides that come from modules with overrides = true
+        final Set<String> mOverriding = new HashSet<String>();
+
+        // the keys resolved from this level, and the bindings and members injections it owns, in the order linked
+        final Set<String> mReach = new HashSet<String>();
+        final Map<String, Binding> mOwned = new LinkedHashMap<String, Binding>();
+        final Map<TypeElement, Members> mMembers = new LinkedHashMap<TypeElement, Members>();
+        final Map<TypeElement, Binding> mGettable = new LinkedHashMap<TypeElement, Binding>();
+        // provider methods that can't be linked at this level, and why
+        final Map<String, String> mUnusable = new LinkedHashMap<String, String>();
+        final Set<String> mLinking = new HashSet<String>();
+        final List<Dependency> mPending = new ArrayList<Dependency>();
+
+        Level(int index, TypeElement module) {
+            mIndex = index;
+            mModule = module;
+            mPackage = getPackage(module);
+            String binaryName = mElements.getBinaryName(module).toString();
+            mGraphName = binaryName + GRAPH_SUFFIX;
+            mInjects = mModuleElements.getTypes(getAnnotation(module, MODULE), "injects");
+
+            addModule(module);
+            for (TypeElement injected : mInjects) {
+                TypeElement implicitModule = mModuleElements.getImplicitModule(injected);
+                if (implicitModule != null) {
+                    addModule(implicitModule);
+                }
+            }
+        }
+
+        private void addModule(TypeElement module) {
+            if (!mModules.add(module)) {
+                return;
+            }
+            AnnotationMirror annotation = getAnnotation(module, MODULE);
+            boolean overrides = annotation != null && getBoolean(annotation, "overrides", false);
+            for (ExecutableElement method : ElementFilter.methodsIn(module.getEnclosedElements())) {
+                AnnotationMirror provides = getAnnotation(method, PROVIDES);
+                if (provides != null) {
+                    String type = getEnumName(provides, "type");
+                    String typeName = mModuleElements.typeName(method.getReturnType());
+                    String key = "SET".equals(type)
+                            ? keyOf(getQualifier(method), "java.util.Set<" + typeName + ">")
+                            : keyOf(getQualifier(method), typeName);
+                    addProvides(key, method, overrides, "SET".equals(type) || "SET_VALUES".equals(type));
+                }
+            }
+            if (annotation != null) {
+                for (TypeElement included : mModuleElements.getTypes(annotation, "includes")) {
+                    addModule(included);
+                }
+            }
+        }
+
+        // as dagger does, a binding from an overriding module replaces one from any other, and two bindings for the
+        // same key are an error unless they contribute to a set
+        private void addProvides(String key, ExecutableElement method, boolean overrides, boolean set) {
+            ExecutableElement existing = mProvides.get(key);
+            if (existing == null) {
+                mProvides.put(key, method);
+                if (overrides) {
+                    mOverriding.add(key);
+                }
+            } else if (set) {
+                // set bindings are reported when they are linked
+            } else if (overrides && !mOverriding.contains(key)) {
+                mProvides.put(key, method);
+                mOverriding.add(key);
+            } else if (overrides || !mOverriding.contains(key)) {
+                throw new UnsupportedGraphException("duplicate bindings for " + key + ": "
+                        + describeElement(existing) + "() and " + describeElement(method) + "()");
+            }
+        }
+    }
+
+    /**
+     * The state of a level before an attempt to link something that may fail, to which it can be rolled back.
+     */
+    private static final class Trial {
+        private final Level mLevel;
+        private final Set<String> mReach;
+        private final Set<String> mOwned;
+        private final Set<TypeElement> mMembers;
+
+        Trial(Level level) {
+            mLevel = level;
+            mReach = new HashSet<String>(level.mReach);
+            mOwned = new HashSet<String>(level.mOwned.keySet());
+            mMembers = new HashSet<TypeElement>(level.mMembers.keySet());
+        }
+
+        void rollBack() {
+            mLevel.mReach.retainAll(mReach);
+            mLevel.mOwned.keySet().retainAll(mOwned);
+            mLevel.mMembers.keySet().retainAll(mMembers);
+            mLevel.mLinking.clear();
+            mLevel.mPending.clear();
+        }
+    }
+
+    /**
+     * A binding owned by a level's graph, provided by a provider method or by an @Inject constructor.
+     */
+    private static final class Binding {
+        final String mKey;
+        final String mTypeName;
+        final Level mOwner;
+        final boolean mSingleton;
+        final List<Dependency> mDependencies = new ArrayList<Dependency>();
+        ExecutableElement mProvides;
+        TypeElement mInjectable;
+        Members mMembers;
+
+        Binding(String key, String typeName, Level owner, boolean singleton) {
+            mKey = key;
+            mTypeName = typeName;
+            mOwner = owner;
+            mSingleton = singleton;
+        }
+    }
+
+    /**
+     * The injected fields of a class, in the order they are injected.
+     */
+    private static final class Members {
+        final TypeElement mType;
+        final List<VariableElement> mFields = new ArrayList<VariableElement>();
+        final List<Dependency> mDependencies = new ArrayList<Dependency>();
+
+        Members(TypeElement type) {
+            mType = type;
+        }
+    }
+
+    /**
+     * A dependency of a binding or of an injected field.  A Provider or Lazy dependency is resolved after the binding
+     * that has it.
+     */
+    private static final class Dependency {
+        static final int INSTANCE = 0;
+        static final int PROVIDER = 1;
+        static final int LAZY = 2;
+
+        final AnnotationMirror mQualifier;
+        final TypeMirror mType;
+        final int mKind;
+        final String mKey;
+        Binding mBinding;
+
+        Dependency(AnnotationMirror qualifier, TypeMirror type, int kind, String key) {
+            mQualifier = qualifier;
+            mType = type;
+            mKind = kind;
+            mKey = key;
+        }
+    }
+
+    /**
+     * Writes the source of one level's graph.
+     */
+    private final class GraphWriter {
+        private final Chain mChain;
+        private final Level mLevel;
+        private final StringBuilder mOut = new StringBuilder();
+        private final Map<Binding, Integer> mScopedIndexes = new LinkedHashMap<Binding, Integer>();
+        private final Map<TypeElement, String> mModuleFields = new LinkedHashMap<TypeElement, String>();
+        private final Map<Members, String> mMembersMethods = new LinkedHashMap<Members, String>();
+        private int mIndent;
+
+        GraphWriter(Chain chain, Level level) {
+            mChain = chain;
+            mLevel = level;
+        }
+
+        String write() {
+            Set<String> names = new HashSet<String>();
+            for (Binding binding : mLevel.mOwned.values()) {
+                if (!names.add(accessor(binding))) {
+                    throw new UnsupportedGraphException("bindings with the same method name " + accessor(binding));
+                }
+                if (binding.mSingleton) {
+                    mScopedIndexes.put(binding, mScopedIndexes.size());
+                }
+                if (binding.mProvides != null) {
+                    TypeElement module = (TypeElement) binding.mProvides.getEnclosingElement();
+                    if (!binding.mProvides.getModifiers().contains(Modifier.STATIC)
+                            && !mModuleFields.containsKey(module)) {
+                        checkAccessible(module, mLevel.mPackage);
+                        mModuleFields.put(module, "mModule" + mModuleFields.size());
+                    }
+                }
+            }
+
+            for (Members members : mLevel.mMembers.values()) {
+                mMembersMethods.put(members, "injectMembers" + mMembersMethods.size() + "$"
+                        + members.mType.getSimpleName());
+            }
+
+            String simpleName = mLevel.mGraphName.substring(mLevel.mPackage.isEmpty() ? 0
+                    : mLevel.mPackage.length() + 1);
+            line("// Code generated by fb-android-dagger-compiler.  Do not modify!");
+            if (!mLevel.mPackage.isEmpty()) {
+                line("package " + mLevel.mPackage + ";");
+            }
+            line("");
+            line("/**");
+            line(" * The object graph of {@link " + mLevel.mModule.getQualifiedName() + "}, for "
+                    + GENERATED_GRAPH_BACKEND + ".");
+            line(" */");
+            line("@SuppressWarnings(\"unchecked\")");
+            open("public final class " + simpleName + " extends " + GENERATED_GRAPH);
+            writeRegistration(simpleName);
+            line("");
+            writeFields();
+            writeConstructor(simpleName);
+            for (Binding binding : mLevel.mOwned.values()) {
+                writeAccessor(binding);
+            }
+            for (Members members : mLevel.mMembers.values()) {
+                writeMembersInjection(members);
+            }
+            writeInjectMembers();
+            writeGetInstance();
+            close();
+            return mOut.toString();
+        }
+
+        private void writeRegistration(String simpleName) {
+            String parentGraph = mLevel.mIndex + 1 < mChain.mLevels.size()
+                    ? mChain.mLevels.get(mLevel.mIndex + 1).mGraphName + ".class" : "null";
+            open("static");
+            line(GENERATED_GRAPH_BACKEND + ".register(" + mLevel.mModule.getQualifiedName() + ".class,");
+            mIndent += 2;
+            open("new " + GENERATED_GRAPH + ".Factory(" + parentGraph + ")");
+            line("@Override");
+            open("protected " + GENERATED_GRAPH + " create(" + GENERATED_GRAPH + " parentGraph, Object[] modules)");
+            line("return new " + simpleName + "(parentGraph, modules);");
+            close();
+            mIndent--;
+            line("});");
+            mIndent -= 2;
+            close();
+        }
+
+        private void writeFields() {
+            for (int i = mLevel.mIndex + 1; i < mChain.mLevels.size(); i++) {
+                line("private final " + mChain.mLevels.get(i).mGraphName + " mGraph" + (i - mLevel.mIndex) + ";");
+            }
+            for (Map.Entry<TypeElement, String> entry : mModuleFields.entrySet()) {
+                line("private final " + entry.getKey().getQualifiedName() + " " + entry.getValue() + ";");
+            }
+        }
+
+        private void writeConstructor(String simpleName) {
+            line("");
+            open("private " + simpleName + "(" + GENERATED_GRAPH + " parentGraph, Object[] modules)");
+            line("super(parentGraph, " + mScopedIndexes.size() + ");");
+            for (int i = mLevel.mIndex + 1; i < mChain.mLevels.size(); i++) {
+                int distance = i - mLevel.mIndex;
+                line("mGraph" + distance + " = (" + mChain.mLevels.get(i).mGraphName + ") "
+                        + (distance == 1 ? "parentGraph" : "mGraph" + (distance - 1) + ".getParentGraph()") + ";");
+            }
+            if (mModuleFields.isEmpty()) {
+                close();
+                return;
+            }
+            for (Map.Entry<TypeElement, String> entry : mModuleFields.entrySet()) {
+                line(entry.getKey().getQualifiedName() + " " + local(entry.getValue()) + " = null;");
+            }
+            open("for (Object module : modules)");
+            for (Map.Entry<TypeElement, String> entry : mModuleFields.entrySet()) {
+                String type = entry.getKey().getQualifiedName().toString();
+                open("if (module instanceof " + type + ")");
+                line(local(entry.getValue()) + " = (" + type + ") module;");
+                close();
+            }
+            close();
+            for (Map.Entry<TypeElement, String> entry : mModuleFields.entrySet()) {
+                TypeElement module = entry.getKey();
+                String local = local(entry.getValue());
+                open("if (" + local + " == null)");
+                if (hasAccessibleNoArgConstructor(module, mLevel.mPackage)) {
+                    line(local + " = new " + module.getQualifiedName() + "();");
+                } else {
+                    line("throw new IllegalArgumentException(\"No instance of module " + module.getQualifiedName()
+                            + "\");");
+                }
+                close();
+                line(entry.getValue() + " = " + local + ";");
+            }
+            close();
+        }
+
+        private void writeAccessor(Binding binding) {
+            line("");
+            open("public " + binding.mTypeName + " " + accessor(binding) + "()");
+            Integer index = mScopedIndexes.get(binding);
+            if (index == null) {
+                writeCreation(binding, "return ");
+            } else {
+                line("Object instance = mScoped.get(" + index + ");");
+                open("if (instance == null)");
+                open("synchronized (mScoped)");
+                line("instance = mScoped.get(" + index + ");");
+                open("if (instance == null)");
+                writeCreation(binding, "instance = ");
+                line("mScoped.set(" + index + ", instance);");
+                close();
+                close();
+                close();
+                line("return (" + binding.mTypeName + ") instance;");
+            }
+            close();
+        }
+
+        private void writeCreation(Binding binding, String assignment) {
+            StringBuilder arguments = new StringBuilder();
+            for (int i = 0; i < binding.mDependencies.size(); i++) {
+                if (i > 0) {
+                    arguments.append(", ");
+                }
+                arguments.append(expression(binding.mDependencies.get(i)));
+            }
+
+            if (binding.mProvides != null) {
+                ExecutableElement method = binding.mProvides;
+                String receiver = method.getModifiers().contains(Modifier.STATIC)
+                        ? ((TypeElement) method.getEnclosingElement()).getQualifiedName().toString()
+                        : mModuleFields.get((TypeElement) method.getEnclosingElement());
+                line(assignment + receiver + "." + method.getSimpleName() + "(" + arguments + ");");
+            } else if (binding.mMembers == null) {
+                line(assignment + "new " + binding.mTypeName + "(" + arguments + ");");
+            } else {
+                line(binding.mTypeName + " created = new " + binding.mTypeName + "(" + arguments + ");");
+                line(membersMethod(binding.mMembers) + "(created);");
+                line(assignment + "created;");
+            }
+        }
+
+        private void writeMembersInjection(Members members) {
+            line("");
+            String type = members.mType.getQualifiedName().toString();
+            open("private void " + membersMethod(members) + "(" + type + " instance)");
+            for (int i = 0; i < members.mFields.size(); i++) {
+                VariableElement field = members.mFields.get(i);
+                TypeElement declaringClass = (TypeElement) field.getEnclosingElement();
+                String target = declaringClass.equals(members.mType) ? "instance"
+                        : "((" + declaringClass.getQualifiedName() + ") instance)";
+                line(target + "." + field.getSimpleName() + " = " + expression(members.mDependencies.get(i))
+                        + ";");
+            }
+            close();
+        }
+
+        private void writeInjectMembers() {
+            line("");
+            line("@Override");
+            open("protected boolean injectMembers(Object target)");
+            line("Class<?> type = target.getClass();");
+            for (TypeElement injected : mLevel.mInjects) {
+                String type = injected.getQualifiedName().toString();
+                open("if (type == " + type + ".class)");
+                line(membersMethod(mLevel.mMembers.get(injected)) + "((" + type + ") target);");
+                line("return true;");
+                close();
+            }
+            line("return false;");
+            close();
+        }
+
+        private void writeGetInstance() {
+            line("");
+            line("@Override");
+            open("protected Object getInstance(Class<?> type)");
+            for (Map.Entry<TypeElement, Binding> entry : mLevel.mGettable.entrySet()) {
+                open("if (type == " + entry.getKey().getQualifiedName() + ".class)");
+                line("return " + call(entry.getValue()) + ";");
+                close();
+            }
+            line("return NOT_FOUND;");
+            close();
+        }
+
+        private String expression(Dependency dependency) {
+            String call = call(dependency.mBinding);
+            if (dependency.mKind == Dependency.INSTANCE) {
+                return call;
+            }
+            String type = mModuleElements.typeName(dependency.mType);
+            if (dependency.mKind == Dependency.PROVIDER) {
+                return "new javax.inject.Provider<" + type + ">() { @Override public " + type + " get() { return "
+                        + call + "; } }";
+            }
+            return "new dagger.Lazy<" + type + ">() { private " + type + " mValue; @Override public synchronized "
+                    + type + " get() { if (mValue == null) { mValue = " + call + "; } return mValue; } }";
+        }
+
+        private String call(Binding binding) {
+            int distance = binding.mOwner.mIndex - mLevel.mIndex;
+            return (distance == 0 ? "" : "mGraph" + distance + ".") + accessor(binding) + "()";
+        }
+
+        private String membersMethod(Members members) {
+            return mMembersMethods.get(members);
+        }
+
+        private String local(String field) {
+            return Character.toLowerCase(field.charAt(1)) + field.substring(2);
+        }
+
+        private void open(String declaration) {
+            line(declaration + " {");
+            mIndent++;
+        }
+
+        private void close() {
+            mIndent--;
+            line("}");
+        }
+
+        private void line(String text) {
+            if (!text.isEmpty()) {
+                for (int i = 0; i < mIndent; i++) {
+                    mOut.append("    ");
+                }
+                mOut.append(text);
+            }
+            mOut.append('\n');
+        }
+    }
+
+    // the name of the method that provides a binding, which graphs that extend the owner's call too
+    private static String accessor(Binding binding) {
+        String key = binding.mKey;
+        StringBuilder builder = new StringBuilder("get$");
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            builder.append(Character.isJavaIdentifierPart(c) && c != '$' ? c : '_');
+        }
+        return builder.toString();
+    }
+
+    private ExecutableElement getInjectConstructor(TypeElement type) {
+        ExecutableElement noArgConstructor = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (getAnnotation(constructor, INJECT) != null) {
+                return constructor;
+            }
+            if (constructor.getParameters().isEmpty()) {
+                noArgConstructor = constructor;
+            }
+        }
+        return noArgConstructor;
+    }
+
+    private boolean hasAccessibleNoArgConstructor(TypeElement type, String pkg) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()) {
+                Set<Modifier> modifiers = constructor.getModifiers();
+                return modifiers.contains(Modifier.PUBLIC)
+                        || (!modifiers.contains(Modifier.PRIVATE) && getPackage(type).equals(pkg));
+            }
+        }
+        return false;
+    }
+
+    private void checkAccessible(TypeMirror type, String pkg) {
+        switch (type.getKind()) {
+            case DECLARED:
+                checkAccessible((TypeElement) ((DeclaredType) type).asElement(), pkg);
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    checkAccessible(argument, pkg);
+                }
+                break;
+            case ARRAY:
+                checkAccessible(((ArrayType) type).getComponentType(), pkg);
+                break;
+            case WILDCARD:
+            case TYPEVAR:
+                throw new UnsupportedGraphException("generic type " + type);
+            default:
+                break; // a primitive
+        }
+    }
+
+    private void checkAccessible(Element element, String pkg) {
+        for (Element e = element; e != null && e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            Set<Modifier> modifiers = e.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)
+                    || (!modifiers.contains(Modifier.PUBLIC) && !getPackage(e).equals(pkg))) {
+                throw new UnsupportedGraphException(describeElement(element) + " isn't accessible from package "
+                        + pkg);
+            }
+        }
+    }
+
+    private String getPackage(Element element) {
+        PackageElement pkg = mElements.getPackageOf(element);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    private static String describeElement(Element element) {
+        if (element instanceof TypeElement) {
+            return ((TypeElement) element).getQualifiedName().toString();
+        }
+        return describeElement(element.getEnclosingElement()) + "." + element.getSimpleName();
+    }
+
+    /**
+     * Thrown when a module's graph can't be generated.
+     */
+    private static final class UnsupportedGraphException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedGraphException(String message) {
+            super(message);
+        }
+    }
+}
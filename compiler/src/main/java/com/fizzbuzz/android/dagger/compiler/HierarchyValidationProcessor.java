@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.compiler;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.INJECT;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.LAZY;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.MEMBERS_INJECTOR;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.MODULE;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.PROVIDER;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.PROVIDES;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getAnnotation;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getBoolean;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getEnumName;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.getQualifier;
+import static com.fizzbuzz.android.dagger.compiler.ModuleElements.keyOf;
+
+/**
+ * Validates, at compile time, the hierarchy of object graphs that fb-android-dagger components build at runtime.
+ * <p/>
+ * Every incomplete module ({@code complete = false}) that lists {@code injects} classes is checked together with the
+ * modules it is added to, transitively through {@code addsTo}, and everything those modules include.  This is the
+ * module chain that the graph for an Application, Activity, Fragment, Service, BroadcastReceiver or AppWidgetProvider
+ * is built from.  The modules that the library's base classes add implicitly (e.g. {@code InjectingActivityModule} for
+ * a subclass of {@code InjectingActivity}) are included in the chain too.
+ * <p/>
+ * For each {@code injects} class, every dependency of its injected members is resolved against the chain, followed
+ * transitively through {@code @Provides} method parameters, {@code @Inject} constructors and injected members.  A
+ * dependency that nothing in the chain can satisfy is reported as an error on the module.
+ * <p/>
+ * Dagger's own compiler cannot do this, because it only validates complete modules, and these chains are spread
+ * across modules that are each incomplete.
+ */
+@SupportedAnnotationTypes(ModuleElements.MODULE)
+public final class HierarchyValidationProcessor extends AbstractProcessor {
+    private ModuleElements mModuleElements;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        mModuleElements = new ModuleElements(processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+
+        TypeElement moduleAnnotation = processingEnv.getElementUtils().getTypeElement(MODULE);
+        if (moduleAnnotation == null) {
+            return false;
+        }
+        for (TypeElement module : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(moduleAnnotation))) {
+            AnnotationMirror annotation = getAnnotation(module, MODULE);
+            if (!getBoolean(annotation, "complete", true)
+                    && !mModuleElements.getTypes(annotation, "injects").isEmpty()) {
+                new ChainValidator(module).validate();
+            }
+        }
+
+        // leave the annotation unclaimed, so that dagger's own processor still sees it
+        return false;
+    }
+
+    /**
+     * Validates the module chain rooted at one module.
+     */
+    private final class ChainValidator {
+        private final TypeElement mModule;
+        private final List<TypeElement> mChain = new ArrayList<TypeElement>();
+        private final Map<String, ExecutableElement> mBindings = new HashMap<String, ExecutableElement>();
+        private final Set<String> mResolved = new HashSet<String>();
+        private final Set<String> mMembersChecked = new HashSet<String>();
+
+        ChainValidator(TypeElement module) {
+            mModule = module;
+        }
+
+        void validate() {
+            // collect the chain: this module, then the modules it is added to
+            Set<TypeElement> seen = new HashSet<TypeElement>();
+            for (TypeElement module = mModule; module != null && seen.add(module); ) {
+                mChain.add(module);
+                AnnotationMirror annotation = getAnnotation(module, MODULE);
+                addBindings(module, new HashSet<TypeElement>());
+                for (TypeElement injected : mModuleElements.getTypes(annotation, "injects")) {
+                    TypeElement implicitModule = mModuleElements.getImplicitModule(injected);
+                    if (implicitModule != null) {
+                        addBindings(implicitModule, new HashSet<TypeElement>());
+                    }
+                }
+                module = mModuleElements.getType(annotation, "addsTo");
+            }
+
+            for (TypeElement injected : mModuleElements.getTypes(getAnnotation(mModule, MODULE), "injects")) {
+                checkMembers(injected);
+            }
+        }
+
+        private void addBindings(TypeElement module, Set<TypeElement> seen) {
+            if (!seen.add(module)) {
+                return;
+            }
+            for (ExecutableElement method : ElementFilter.methodsIn(module.getEnclosedElements())) {
+                AnnotationMirror provides = getAnnotation(method, PROVIDES);
+                if (provides == null) {
+                    continue;
+                }
+                TypeMirror type = method.getReturnType();
+                String key = "SET".equals(getEnumName(provides, "type"))
+                        ? keyOf(getQualifier(method), "java.util.Set<" + mModuleElements.typeName(type) + ">")
+                        : keyOf(getQualifier(method), mModuleElements.typeName(type));
+                if (!mBindings.containsKey(key)) {
+                    mBindings.put(key, method);
+                }
+            }
+            AnnotationMirror annotation = getAnnotation(module, MODULE);
+            if (annotation != null) {
+                for (TypeElement included : mModuleElements.getTypes(annotation, "includes")) {
+                    addBindings(included, seen);
+                }
+            }
+        }
+
+        private void checkMembers(TypeElement type) {
+            for (TypeElement cls = type; cls != null; cls = mModuleElements.getSuperclass(cls)) {
+                String name = cls.getQualifiedName().toString();
+                if (name.startsWith("java.") || name.startsWith("android.")) {
+                    break;
+                }
+                if (!mMembersChecked.add(name)) {
+                    continue;
+                }
+                for (VariableElement field : ElementFilter.fieldsIn(cls.getEnclosedElements())) {
+                    if (getAnnotation(field, INJECT) != null) {
+                        resolve(getQualifier(field), field.asType(), name + "." + field.getSimpleName());
+                    }
+                }
+                for (ExecutableElement method : ElementFilter.methodsIn(cls.getEnclosedElements())) {
+                    if (getAnnotation(method, INJECT) != null) {
+                        checkParameters(method, name + "." + method.getSimpleName() + "()");
+                    }
+                }
+            }
+        }
+
+        private void checkParameters(ExecutableElement method, String requiredBy) {
+            for (VariableElement parameter : method.getParameters()) {
+                resolve(getQualifier(parameter), parameter.asType(), requiredBy);
+            }
+        }
+
+        private void resolve(AnnotationMirror qualifier, TypeMirror type, String requiredBy) {
+            String key = keyOf(qualifier, mModuleElements.typeName(type));
+            if (!mResolved.add(key)) {
+                return;
+            }
+
+            ExecutableElement provides = mBindings.get(key);
+            if (provides != null) {
+                checkParameters(provides, ((TypeElement) provides.getEnclosingElement()).getQualifiedName() + "."
+                        + provides.getSimpleName() + "()");
+                return;
+            }
+
+            if (type.getKind() == TypeKind.DECLARED) {
+                DeclaredType declaredType = (DeclaredType) type;
+                TypeElement element = (TypeElement) declaredType.asElement();
+                String name = element.getQualifiedName().toString();
+                List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+
+                // Provider<T> and Lazy<T> are satisfied by whatever satisfies T, MembersInjector<T> by T's members
+                if (typeArguments.size() == 1 && (name.equals(PROVIDER) || name.equals(LAZY))) {
+                    mResolved.remove(key);
+                    resolve(qualifier, typeArguments.get(0), requiredBy);
+                    return;
+                }
+                if (qualifier == null && typeArguments.size() == 1 && name.equals(MEMBERS_INJECTOR)) {
+                    TypeMirror target = typeArguments.get(0);
+                    if (target.getKind() == TypeKind.DECLARED) {
+                        checkMembers((TypeElement) ((DeclaredType) target).asElement());
+                        return;
+                    }
+                }
+
+                // an unqualified class with an @Inject constructor, or with injected members and a no-arg constructor,
+                // is bound implicitly
+                if (qualifier == null && typeArguments.isEmpty() && mModuleElements.isInjectable(element)) {
+                    for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+                        if (getAnnotation(constructor, INJECT) != null) {
+                            checkParameters(constructor, name + "()");
+                        }
+                    }
+                    checkMembers(element);
+                    return;
+                }
+            }
+
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "No binding for " + mModuleElements.describe(qualifier, type) + " required by " + requiredBy
+                            + " in module chain " + describeChain(), mModule);
+        }
+
+        private String describeChain() {
+            StringBuilder builder = new StringBuilder();
+            for (TypeElement module : mChain) {
+                if (builder.length() > 0) {
+                    builder.append(" -> ");
+                }
+                builder.append(module.getQualifiedName());
+            }
+            return builder.toString();
+        }
+    }
+}
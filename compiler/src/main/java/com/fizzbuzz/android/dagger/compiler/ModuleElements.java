@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.compiler;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads dagger modules, and the classes they inject, the way Dagger does at runtime.  Shared by the processors of
+ * this module.
+ */
+final class ModuleElements {
+    static final String MODULE = "dagger.Module";
+    static final String PROVIDES = "dagger.Provides";
+    static final String LAZY = "dagger.Lazy";
+    static final String MEMBERS_INJECTOR = "dagger.MembersInjector";
+    static final String INJECT = "javax.inject.Inject";
+    static final String PROVIDER = "javax.inject.Provider";
+    static final String QUALIFIER = "javax.inject.Qualifier";
+    static final String SINGLETON = "javax.inject.Singleton";
+
+    private static final String LIBRARY_PACKAGE = "com.fizzbuzz.android.dagger.";
+
+    // the modules that the library's component base classes add to their graphs implicitly
+    private static final Map<String, String> IMPLICIT_MODULES = new LinkedHashMap<String, String>();
+
+    static {
+        IMPLICIT_MODULES.put("InjectingApplication", "InjectingApplication.InjectingApplicationModule");
+        IMPLICIT_MODULES.put("InjectingActivity", "InjectingActivityModule");
+        IMPLICIT_MODULES.put("InjectingFragmentActivity", "InjectingActivityModule");
+        IMPLICIT_MODULES.put("InjectingActionBarActivity", "InjectingActivityModule");
+        IMPLICIT_MODULES.put("InjectingPreferenceActivity", "InjectingActivityModule");
+        IMPLICIT_MODULES.put("InjectingFragment", "InjectingFragmentModule");
+        IMPLICIT_MODULES.put("InjectingListFragment", "InjectingFragmentModule");
+        IMPLICIT_MODULES.put("InjectingDialogFragment", "InjectingFragmentModule");
+        IMPLICIT_MODULES.put("InjectingPreferenceFragment", "InjectingFragmentModule");
+        IMPLICIT_MODULES.put("InjectingService", "InjectingService.InjectingServiceModule");
+        IMPLICIT_MODULES.put("InjectingBroadcastReceiver",
+                "InjectingBroadcastReceiver.InjectingBroadcastReceiverModule");
+        IMPLICIT_MODULES.put("InjectingAppWidgetProvider",
+                "InjectingAppWidgetProvider.InjectingAppWidgetProviderModule");
+    }
+
+    private final Elements mElements;
+    private final Types mTypes;
+
+    ModuleElements(Elements elements, Types types) {
+        mElements = elements;
+        mTypes = types;
+    }
+
+    TypeElement getImplicitModule(TypeElement injected) {
+        for (TypeElement cls = injected; cls != null; cls = getSuperclass(cls)) {
+            String name = cls.getQualifiedName().toString();
+            if (name.startsWith(LIBRARY_PACKAGE)) {
+                String moduleName = IMPLICIT_MODULES.get(name.substring(LIBRARY_PACKAGE.length()));
+                if (moduleName != null) {
+                    return mElements.getTypeElement(LIBRARY_PACKAGE + moduleName);
+                }
+            }
+        }
+        return null;
+    }
+
+    TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) mTypes.asElement(superclass) : null;
+    }
+
+    String typeName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            type = mTypes.boxedClass(mTypes.getPrimitiveType(type.getKind())).asType();
+        }
+        return type.toString();
+    }
+
+    static String keyOf(AnnotationMirror qualifier, String typeName) {
+        return qualifier == null ? typeName : qualifier + "/" + typeName;
+    }
+
+    String describe(AnnotationMirror qualifier, TypeMirror type) {
+        return qualifier == null ? typeName(type) : qualifier + " " + typeName(type);
+    }
+
+    static AnnotationMirror getQualifier(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (getAnnotation(annotation.getAnnotationType().asElement(), QUALIFIER) != null) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    static AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    static Object getValue(AnnotationMirror annotation, String name) {
+        if (annotation == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    static boolean getBoolean(AnnotationMirror annotation, String name, boolean defaultValue) {
+        Object value = getValue(annotation, name);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    static String getEnumName(AnnotationMirror annotation, String name) {
+        Object value = getValue(annotation, name);
+        return value instanceof VariableElement ? ((VariableElement) value).getSimpleName().toString() : null;
+    }
+
+    TypeElement getType(AnnotationMirror annotation, String name) {
+        Object value = getValue(annotation, name);
+        if (value instanceof TypeMirror && ((TypeMirror) value).getKind() == TypeKind.DECLARED) {
+            return (TypeElement) mTypes.asElement((TypeMirror) value);
+        }
+        return null; // absent, or void.class
+    }
+
+    List<TypeElement> getTypes(AnnotationMirror annotation, String name) {
+        Object value = getValue(annotation, name);
+        if (!(value instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<TypeElement> result = new ArrayList<TypeElement>();
+        for (Object element : (List<?>) value) {
+            Object type = ((AnnotationValue) element).getValue();
+            if (type instanceof TypeMirror && ((TypeMirror) type).getKind() == TypeKind.DECLARED) {
+                result.add((TypeElement) mTypes.asElement((TypeMirror) type));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a class is bound implicitly: it has an @Inject constructor, or injected members and a no-arg
+     * constructor.
+     */
+    boolean isInjectable(TypeElement element) {
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        boolean hasNoArgConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if (getAnnotation(constructor, INJECT) != null) {
+                return true;
+            }
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasNoArgConstructor = true;
+            }
+        }
+        return hasNoArgConstructor && hasInjectedMembers(element);
+    }
+
+    boolean hasInjectedMembers(TypeElement element) {
+        for (TypeElement cls = element; cls != null; cls = getSuperclass(cls)) {
+            for (Element member : cls.getEnclosedElements()) {
+                if ((member.getKind() == ElementKind.FIELD || member.getKind() == ElementKind.METHOD)
+                        && getAnnotation(member, INJECT) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
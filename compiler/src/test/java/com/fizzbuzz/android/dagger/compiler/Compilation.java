@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.compiler;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs one of this module's processors over in-memory sources, the way javac runs it in a build, and collects what it
+ * reports and generates.  Only annotation processing is done, so sources may refer to library classes that aren't on
+ * the test classpath.
+ */
+final class Compilation {
+    private final List<Diagnostic<? extends JavaFileObject>> mDiagnostics;
+    private final File mSourceOutput;
+
+    private Compilation(List<Diagnostic<? extends JavaFileObject>> diagnostics, File sourceOutput) {
+        mDiagnostics = diagnostics;
+        mSourceOutput = sourceOutput;
+    }
+
+    /**
+     * Processes sources.
+     *
+     * @param processor the processor
+     * @param options the processor options, e.g. "-Afbdagger.generateGraphs=true"
+     * @param sources the sources, as made by {@link #source(String, String...)}
+     */
+    static Compilation process(Processor processor, List<String> options, JavaFileObject... sources)
+            throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT,
+                Charset.forName("UTF-8"));
+        File sourceOutput = Files.createTempDirectory("generated").toFile();
+        try {
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(sourceOutput));
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(sourceOutput));
+
+            List<String> arguments = new ArrayList<String>();
+            arguments.add("-proc:only");
+            arguments.add("-classpath");
+            // surefire runs tests from a manifest-only jar, and passes the real test classpath in a property
+            arguments.add(System.getProperty("surefire.test.class.path", System.getProperty("java.class.path")));
+            arguments.addAll(options);
+
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, arguments, null,
+                    Arrays.asList(sources));
+            task.setProcessors(Collections.singletonList(processor));
+            task.call();
+        } finally {
+            fileManager.close();
+        }
+        return new Compilation(diagnostics.getDiagnostics(), sourceOutput);
+    }
+
+    /**
+     * Makes a source file.
+     *
+     * @param className the fully qualified name of the top-level class it declares
+     * @param lines the source's lines
+     */
+    static JavaFileObject source(String className, String... lines) {
+        final StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+
+    /**
+     * Gets the messages of the given kind that were reported.
+     */
+    List<String> getMessages(Diagnostic.Kind kind) {
+        List<String> result = new ArrayList<String>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics) {
+            if (diagnostic.getKind() == kind) {
+                result.add(diagnostic.getMessage(Locale.ROOT));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets a generated source file.
+     *
+     * @param className the fully qualified name of the class it declares
+     * @return the source, or null if it wasn't generated
+     */
+    String getGeneratedSource(String className) throws IOException {
+        File file = new File(mSourceOutput, className.replace('.', File.separatorChar) + ".java");
+        if (!file.exists()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+    }
+
+    @Override
+    public String toString() {
+        return mDiagnostics.toString();
+    }
+}
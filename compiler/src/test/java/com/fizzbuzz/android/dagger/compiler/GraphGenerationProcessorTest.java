@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.compiler;
+
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.Collections;
+import java.util.List;
+
+import static com.fizzbuzz.android.dagger.compiler.Compilation.source;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphGenerationProcessorTest {
+    private static final List<String> GENERATE_GRAPHS =
+            Collections.singletonList("-A" + GraphGenerationProcessor.GENERATE_GRAPHS + "=true");
+
+    private static final JavaFileObject APP_MODULE = source("test.AppModule",
+            "package test;",
+            "@dagger.Module(injects = AppTarget.class)",
+            "public class AppModule {",
+            "  @dagger.Provides @javax.inject.Singleton String provideName() { return \"app\"; }",
+            "}");
+
+    private static final JavaFileObject APP_TARGET = source("test.AppTarget",
+            "package test;",
+            "public class AppTarget {",
+            "  @javax.inject.Inject String name;",
+            "}");
+
+    @Test
+    public void nothingIsGeneratedUnlessEnabled() throws Exception {
+        Compilation compilation = Compilation.process(new GraphGenerationProcessor(), Collections.<String>emptyList(),
+                APP_MODULE, APP_TARGET);
+
+        assertNull(compilation.getGeneratedSource("test.AppModule$$Graph"));
+        assertTrue(compilation.toString(), compilation.getMessages(Diagnostic.Kind.WARNING).isEmpty());
+    }
+
+    @Test
+    public void rootModuleGetsGraph() throws Exception {
+        Compilation compilation = process(APP_MODULE, APP_TARGET);
+
+        String graph = compilation.getGeneratedSource("test.AppModule$$Graph");
+        assertNotNull(compilation.toString(), graph);
+        assertTrue(graph, graph.contains("extends com.fizzbuzz.android.dagger.GeneratedGraph"));
+        assertTrue(graph, graph.contains("com.fizzbuzz.android.dagger.GeneratedGraphBackend.register("
+                + "test.AppModule.class,"));
+        assertTrue(graph, graph.contains("provideName()"));
+        assertTrue(graph, graph.contains("return NOT_FOUND;"));
+        assertTrue(compilation.toString(), compilation.getMessages(Diagnostic.Kind.WARNING).isEmpty());
+    }
+
+    @Test
+    public void eachLevelOfChainGetsGraph() throws Exception {
+        Compilation compilation = process(APP_MODULE, APP_TARGET,
+                source("test.ActivityModule",
+                        "package test;",
+                        "@dagger.Module(addsTo = AppModule.class, injects = ActivityTarget.class)",
+                        "public class ActivityModule {",
+                        "}"),
+                source("test.ActivityTarget",
+                        "package test;",
+                        "public class ActivityTarget {",
+                        "  @javax.inject.Inject String name;",
+                        "  @javax.inject.Inject javax.inject.Provider<Helper> helper;",
+                        "}"),
+                source("test.Helper",
+                        "package test;",
+                        "public class Helper {",
+                        "  @javax.inject.Inject Helper(String name) {}",
+                        "}"));
+
+        assertNotNull(compilation.toString(), compilation.getGeneratedSource("test.AppModule$$Graph"));
+        String graph = compilation.getGeneratedSource("test.ActivityModule$$Graph");
+        assertNotNull(compilation.toString(), graph);
+        assertTrue(graph, graph.contains("test.AppModule$$Graph"));
+        assertTrue(graph, graph.contains("new test.Helper("));
+        assertTrue(compilation.toString(), compilation.getMessages(Diagnostic.Kind.WARNING).isEmpty());
+    }
+
+    @Test
+    public void overridingModuleReplacesBinding() throws Exception {
+        Compilation compilation = process(
+                source("test.AppModule",
+                        "package test;",
+                        "@dagger.Module(injects = AppTarget.class, includes = TestModule.class)",
+                        "public class AppModule {",
+                        "  @dagger.Provides String provideName() { return \"app\"; }",
+                        "}"),
+                source("test.TestModule",
+                        "package test;",
+                        "@dagger.Module(overrides = true, library = true)",
+                        "public class TestModule {",
+                        "  @dagger.Provides String provideTestName() { return \"test\"; }",
+                        "}"),
+                APP_TARGET);
+
+        String graph = compilation.getGeneratedSource("test.AppModule$$Graph");
+        assertNotNull(compilation.toString(), graph);
+        assertTrue(graph, graph.contains("provideTestName()"));
+        assertFalse(graph, graph.contains("provideName()"));
+    }
+
+    @Test
+    public void duplicateBindingsGetNoGraph() throws Exception {
+        assertNoGraph("duplicate bindings for java.lang.String: test.AppModule.provideName() and"
+                        + " test.OtherModule.provideOtherName()",
+                source("test.AppModule",
+                        "package test;",
+                        "@dagger.Module(injects = AppTarget.class, includes = OtherModule.class)",
+                        "public class AppModule {",
+                        "  @dagger.Provides String provideName() { return \"app\"; }",
+                        "}"),
+                source("test.OtherModule",
+                        "package test;",
+                        "@dagger.Module(library = true)",
+                        "public class OtherModule {",
+                        "  @dagger.Provides String provideOtherName() { return \"other\"; }",
+                        "}"),
+                APP_TARGET);
+    }
+
+    @Test
+    public void setBindingGetsNoGraph() throws Exception {
+        assertNoGraph("set binding test.AppModule.provideName()",
+                source("test.AppModule",
+                        "package test;",
+                        "@dagger.Module(injects = AppTarget.class)",
+                        "public class AppModule {",
+                        "  @dagger.Provides(type = dagger.Provides.Type.SET) String provideName() { return \"app\"; }",
+                        "}"),
+                source("test.AppTarget",
+                        "package test;",
+                        "public class AppTarget {",
+                        "  @javax.inject.Inject java.util.Set<String> names;",
+                        "}"));
+    }
+
+    @Test
+    public void missingBindingGetsNoGraph() throws Exception {
+        assertNoGraph("no binding for java.lang.Long in module chain test.AppModule",
+                source("test.AppModule",
+                        "package test;",
+                        "@dagger.Module(injects = AppTarget.class)",
+                        "public class AppModule {",
+                        "}"),
+                source("test.AppTarget",
+                        "package test;",
+                        "public class AppTarget {",
+                        "  @javax.inject.Inject Long id;",
+                        "}"));
+    }
+
+    @Test
+    public void dependencyCycleGetsNoGraph() throws Exception {
+        assertNoGraph("dependency cycle through test.First",
+                source("test.AppModule",
+                        "package test;",
+                        "@dagger.Module(injects = AppTarget.class)",
+                        "public class AppModule {",
+                        "}"),
+                source("test.AppTarget",
+                        "package test;",
+                        "public class AppTarget {",
+                        "  @javax.inject.Inject First first;",
+                        "}"),
+                source("test.First",
+                        "package test;",
+                        "public class First {",
+                        "  @javax.inject.Inject First(Second second) {}",
+                        "}"),
+                source("test.Second",
+                        "package test;",
+                        "public class Second {",
+                        "  @javax.inject.Inject Second(First first) {}",
+                        "}"));
+    }
+
+    @Test
+    public void methodInjectionGetsNoGraph() throws Exception {
+        assertNoGraph("method injection in test.AppTarget",
+                APP_MODULE,
+                source("test.AppTarget",
+                        "package test;",
+                        "public class AppTarget {",
+                        "  @javax.inject.Inject void setName(String name) {}",
+                        "}"));
+    }
+
+    @Test
+    public void membersInjectorGetsNoGraph() throws Exception {
+        assertNoGraph("MembersInjector dagger.MembersInjector<test.AppTarget>",
+                APP_MODULE,
+                source("test.AppTarget",
+                        "package test;",
+                        "public class AppTarget {",
+                        "  @javax.inject.Inject dagger.MembersInjector<AppTarget> injector;",
+                        "}"));
+    }
+
+    private static void assertNoGraph(String reason, JavaFileObject... sources) throws Exception {
+        Compilation compilation = process(sources);
+
+        assertNull(compilation.getGeneratedSource("test.AppModule$$Graph"));
+        assertEquals(Collections.singletonList("Not generating a graph for test.AppModule: " + reason),
+                compilation.getMessages(Diagnostic.Kind.WARNING));
+    }
+
+    private static Compilation process(JavaFileObject... sources) throws Exception {
+        return Compilation.process(new GraphGenerationProcessor(), GENERATE_GRAPHS, sources);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger.compiler;
+
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.Collections;
+import java.util.List;
+
+import static com.fizzbuzz.android.dagger.compiler.Compilation.source;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchyValidationProcessorTest {
+    private static final JavaFileObject APP_MODULE = source("test.AppModule",
+            "package test;",
+            "@dagger.Module(library = true)",
+            "public class AppModule {",
+            "  @dagger.Provides String provideName() { return \"app\"; }",
+            "}");
+
+    @Test
+    public void chainThatSatisfiesEveryDependencyPasses() throws Exception {
+        Compilation compilation = process(APP_MODULE,
+                source("test.ActivityModule",
+                        "package test;",
+                        "@dagger.Module(addsTo = AppModule.class, complete = false, injects = Target.class)",
+                        "public class ActivityModule {",
+                        "  @dagger.Provides Integer provideCount(String name) { return name.length(); }",
+                        "}"),
+                source("test.Target",
+                        "package test;",
+                        "public class Target {",
+                        "  @javax.inject.Inject Integer count;",
+                        "  @javax.inject.Inject javax.inject.Provider<String> name;",
+                        "  @javax.inject.Inject dagger.Lazy<Helper> helper;",
+                        "}"),
+                source("test.Helper",
+                        "package test;",
+                        "public class Helper {",
+                        "  @javax.inject.Inject Helper(String name) {}",
+                        "}"));
+
+        assertTrue(compilation.toString(), compilation.getMessages(Diagnostic.Kind.ERROR).isEmpty());
+    }
+
+    @Test
+    public void missingBindingIsReportedWithItsChain() throws Exception {
+        Compilation compilation = process(APP_MODULE,
+                source("test.ActivityModule",
+                        "package test;",
+                        "@dagger.Module(addsTo = AppModule.class, complete = false, injects = Target.class)",
+                        "public class ActivityModule {",
+                        "}"),
+                source("test.Target",
+                        "package test;",
+                        "public class Target {",
+                        "  @javax.inject.Inject Long id;",
+                        "}"));
+
+        assertEquals(Collections.singletonList("No binding for java.lang.Long required by test.Target.id in module"
+                        + " chain test.ActivityModule -> test.AppModule"),
+                compilation.getMessages(Diagnostic.Kind.ERROR));
+    }
+
+    @Test
+    public void transitiveDependencyOfProviderMethodIsChecked() throws Exception {
+        Compilation compilation = process(APP_MODULE,
+                source("test.ActivityModule",
+                        "package test;",
+                        "@dagger.Module(addsTo = AppModule.class, complete = false, injects = Target.class)",
+                        "public class ActivityModule {",
+                        "  @dagger.Provides Integer provideCount(Long id) { return 0; }",
+                        "}"),
+                source("test.Target",
+                        "package test;",
+                        "public class Target {",
+                        "  @javax.inject.Inject Integer count;",
+                        "}"));
+
+        assertEquals(Collections.singletonList("No binding for java.lang.Long required by"
+                        + " test.ActivityModule.provideCount() in module chain test.ActivityModule -> test.AppModule"),
+                compilation.getMessages(Diagnostic.Kind.ERROR));
+    }
+
+    @Test
+    public void qualifiedDependencyNeedsQualifiedBinding() throws Exception {
+        Compilation compilation = process(APP_MODULE,
+                source("test.ActivityModule",
+                        "package test;",
+                        "@dagger.Module(addsTo = AppModule.class, complete = false, injects = Target.class)",
+                        "public class ActivityModule {",
+                        "}"),
+                source("test.Target",
+                        "package test;",
+                        "public class Target {",
+                        "  @javax.inject.Inject @javax.inject.Named(\"title\") String title;",
+                        "}"));
+
+        List<String> errors = compilation.getMessages(Diagnostic.Kind.ERROR);
+        assertEquals(compilation.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith("No binding for @javax.inject.Named"));
+    }
+
+    @Test
+    public void implicitLibraryModuleIsPartOfChain() throws Exception {
+        Compilation compilation = process(APP_MODULE,
+                source("com.fizzbuzz.android.dagger.InjectingActivity",
+                        "package com.fizzbuzz.android.dagger;",
+                        "public class InjectingActivity {",
+                        "}"),
+                source("com.fizzbuzz.android.dagger.InjectingActivityModule",
+                        "package com.fizzbuzz.android.dagger;",
+                        "@dagger.Module(library = true)",
+                        "public class InjectingActivityModule {",
+                        "  @dagger.Provides Integer provideActivityCount() { return 0; }",
+                        "}"),
+                source("test.ActivityModule",
+                        "package test;",
+                        "@dagger.Module(addsTo = AppModule.class, complete = false, injects = Target.class)",
+                        "public class ActivityModule {",
+                        "}"),
+                source("test.Target",
+                        "package test;",
+                        "public class Target extends com.fizzbuzz.android.dagger.InjectingActivity {",
+                        "  @javax.inject.Inject Integer count;",
+                        "}"));
+
+        assertTrue(compilation.toString(), compilation.getMessages(Diagnostic.Kind.ERROR).isEmpty());
+    }
+
+    @Test
+    public void completeModulesAreLeftToDagger() throws Exception {
+        Compilation compilation = process(
+                source("test.CompleteModule",
+                        "package test;",
+                        "@dagger.Module(injects = Target.class)",
+                        "public class CompleteModule {",
+                        "}"),
+                source("test.Target",
+                        "package test;",
+                        "public class Target {",
+                        "  @javax.inject.Inject Long id;",
+                        "}"));
+
+        assertTrue(compilation.toString(), compilation.getMessages(Diagnostic.Kind.ERROR).isEmpty());
+    }
+
+    private static Compilation process(JavaFileObject... sources) throws Exception {
+        return Compilation.process(new HierarchyValidationProcessor(), Collections.<String>emptyList(), sources);
+    }
+}
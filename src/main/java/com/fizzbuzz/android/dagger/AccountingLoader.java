@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.internal.Binding;
+import dagger.internal.Linker;
+import dagger.internal.Loader;
+import dagger.internal.ProvidesBinding;
+
+import java.util.Set;
+
+/**
+ * Wraps each binding that provides instances, whether from a module's provider method or from an @Inject constructor,
+ * so that its linking and provisions are counted in the {@link ScopeAccounting} of the graph that links it.
+ */
+final class AccountingLoader extends WrappingLoader {
+    /**
+     * Class constructor.
+     *
+     * @param delegate the loader that loads the bindings
+     */
+    AccountingLoader(Loader delegate) {
+        super(delegate);
+    }
+
+    @Override
+    <T> Binding<T> wrapAtInjectBinding(Binding<T> binding, String className, ClassLoader classLoader) {
+        return new AccountingBinding<T>(binding);
+    }
+
+    @Override
+    <T> ProvidesBinding<T> wrapProvidesBinding(ProvidesBinding<T> binding, Object module) {
+        return new AccountingProvidesBinding<T>(binding);
+    }
+
+    private static final class AccountingBinding<T> extends Binding<T> {
+        private final Binding<T> mDelegate;
+        private final boolean mSingleton;
+        private ScopeAccounting.Counter mCounter;
+
+        AccountingBinding(Binding<T> delegate) {
+            this(delegate, DaggerInternals.isSingleton(delegate));
+        }
+
+        private AccountingBinding(Binding<T> delegate, boolean singleton) {
+            super(delegate.provideKey, delegate.membersKey, singleton, delegate.requiredBy);
+            mDelegate = delegate;
+            mSingleton = singleton;
+        }
+
+        @Override
+        public void attach(Linker linker) {
+            mDelegate.attach(linker);
+            // the linker attaches a binding again if its dependencies weren't all available
+            if (mCounter == null) {
+                mCounter = ScopeAccounting.forLinker(linker).addBinding(provideKey, mSingleton);
+            }
+        }
+
+        @Override
+        public T get() {
+            T instance = mDelegate.get();
+            mCounter.onProvided(instance);
+            return instance;
+        }
+
+        @Override
+        public void injectMembers(T t) {
+            mDelegate.injectMembers(t);
+        }
+
+        @Override
+        public void getDependencies(Set<Binding<?>> getBindings, Set<Binding<?>> injectMembersBindings) {
+            mDelegate.getDependencies(getBindings, injectMembersBindings);
+        }
+
+        @Override
+        public String toString() {
+            return mDelegate.toString();
+        }
+    }
+
+    private static final class AccountingProvidesBinding<T> extends ProvidesBinding<T> {
+        private final ProvidesBinding<T> mDelegate;
+        private final boolean mSingleton;
+        private ScopeAccounting.Counter mCounter;
+
+        AccountingProvidesBinding(ProvidesBinding<T> delegate) {
+            this(delegate, DaggerInternals.isSingleton(delegate));
+        }
+
+        private AccountingProvidesBinding(ProvidesBinding<T> delegate, boolean singleton) {
+            super(delegate.provideKey, singleton, getModuleClassName(delegate), getMethodName(delegate));
+            mDelegate = delegate;
+            mSingleton = singleton;
+        }
+
+        @Override
+        public void attach(Linker linker) {
+            mDelegate.attach(linker);
+            if (mCounter == null) {
+                mCounter = ScopeAccounting.forLinker(linker).addBinding(provideKey, mSingleton);
+            }
+        }
+
+        @Override
+        public T get() {
+            T instance = mDelegate.get();
+            mCounter.onProvided(instance);
+            return instance;
+        }
+
+        @Override
+        public void getDependencies(Set<Binding<?>> getBindings, Set<Binding<?>> injectMembersBindings) {
+            mDelegate.getDependencies(getBindings, injectMembersBindings);
+        }
+
+        @Override
+        public String toString() {
+            return mDelegate.toString();
+        }
+    }
+}
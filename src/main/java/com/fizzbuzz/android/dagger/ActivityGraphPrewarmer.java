@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.os.MessageQueue;
+import dagger.ObjectGraph;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prepares the object graphs of the activities that are likely to be launched next, while the main thread is idle, so
+ * that their onCreate can adopt a prepared graph instead of constructing modules and extending the application-scope
+ * graph itself.
+ * <p/>
+ * Only activities that opt in (see {@link InjectingActivity#isObjectGraphPrewarmable()}) take part.  When such an
+ * activity creates its graph, the classes of its modules are recorded, along with the activity it was launched from.
+ * The likely next activities are then the ones {@link #declareNextActivity(Class, Class) declared} for the current
+ * activity, followed by the ones most often launched from it before.  A graph can be prepared for an activity only if
+ * its modules are known (recorded, or {@link #declareModules(Class, Class[]) declared}) and, apart from
+ * {@link InjectingActivityModule}, can all be constructed with a no-arg constructor.  The activity's
+ * InjectingActivityModule is bound to the activity when the graph is adopted.
+ * <p/>
+ * Prepared graphs are discarded when the application-scope graph changes, and under memory pressure (see
+ * {@link #evict()}).  All methods must be called on the main thread.
+ */
+public final class ActivityGraphPrewarmer {
+    /**
+     * The maximum number of graphs held prepared at once.
+     */
+    public static final int MAX_PREPARED_GRAPHS = 2;
+
+    private static final ActivityGraphPrewarmer sInstance = new ActivityGraphPrewarmer();
+
+    private final Map<Class<?>, Class<?>[]> mModuleClasses = new HashMap<Class<?>, Class<?>[]>();
+    private final Map<Class<?>, Set<Class<?>>> mDeclaredNext = new HashMap<Class<?>, Set<Class<?>>>();
+    private final Map<Class<?>, Map<Class<?>, Integer>> mLaunchCounts = new HashMap<Class<?>, Map<Class<?>, Integer>>();
+    private final Map<Class<?>, PreparedGraph> mPrepared = new LinkedHashMap<Class<?>, PreparedGraph>();
+    private final List<Class<?>> mPending = new ArrayList<Class<?>>();
+    private Class<?> mLastActivityClass;
+    private ObjectGraph mParentGraph;
+    private boolean mIdleHandlerQueued;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            // prepare one graph per idle period, so as not to hold up the main thread for long
+            if (!mPending.isEmpty()) {
+                prepare(mPending.remove(0), mParentGraph);
+            }
+            mIdleHandlerQueued = !mPending.isEmpty();
+            return mIdleHandlerQueued;
+        }
+    };
+
+    private ActivityGraphPrewarmer() {
+    }
+
+    /**
+     * Gets the prewarmer.
+     *
+     * @return the prewarmer
+     */
+    public static ActivityGraphPrewarmer getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Declares that an activity is likely to be launched from another.  Declared activities are prepared ahead of
+     * those learned from navigation history.
+     *
+     * @param fromActivityClass the activity launched from
+     * @param nextActivityClass the activity likely to be launched next
+     */
+    public void declareNextActivity(Class<? extends Activity> fromActivityClass,
+            Class<? extends Activity> nextActivityClass) {
+        Set<Class<?>> next = mDeclaredNext.get(fromActivityClass);
+        if (next == null) {
+            next = new LinkedHashSet<Class<?>>();
+            mDeclaredNext.put(fromActivityClass, next);
+        }
+        next.add(nextActivityClass);
+    }
+
+    /**
+     * Declares the classes of the modules returned by an activity's getModules(), so that its graph can be prepared
+     * before it has been launched for the first time.
+     *
+     * @param activityClass the activity
+     * @param moduleClasses the module classes, in order
+     */
+    public void declareModules(Class<? extends Activity> activityClass, Class<?>... moduleClasses) {
+        mModuleClasses.put(activityClass, moduleClasses.clone());
+    }
+
+    /**
+     * Discards all prepared graphs, and any preparation still pending.  InjectingApplication calls this from
+     * onTrimMemory and onLowMemory.
+     */
+    public void evict() {
+        mPrepared.clear();
+        mPending.clear();
+    }
+
+    /**
+     * Takes the graph prepared for an activity, binding its InjectingActivityModule to the activity, which must be an
+     * Injector.
+     *
+     * @return the graph, or null if none was prepared from parentGraph
+     */
+    PreparedGraph adopt(Activity activity, ObjectGraph parentGraph) {
+        PreparedGraph prepared = take(activity.getClass(), parentGraph);
+        if (prepared != null) {
+            prepared.activityModule.bind(activity, (Injector) activity);
+        }
+        return prepared;
+    }
+
+    /**
+     * Removes the graph prepared for an activity.
+     *
+     * @return the graph, or null if none was prepared for the activity from parentGraph
+     */
+    PreparedGraph take(Class<?> activityClass, ObjectGraph parentGraph) {
+        PreparedGraph prepared = mPrepared.remove(activityClass);
+        if (prepared == null || prepared.parentGraph != parentGraph) {
+            return null;
+        }
+        return prepared;
+    }
+
+    /**
+     * Records that an activity has created (or adopted) its graph, and schedules preparation of the graphs for the
+     * activities likely to be launched from it.
+     *
+     * @param modules the activity's modules, or null if it adopted a prepared graph
+     */
+    void onObjectGraphCreated(Activity activity, ObjectGraph parentGraph, Object[] modules) {
+        Class<?> activityClass = activity.getClass();
+        if (modules != null) {
+            Class<?>[] moduleClasses = new Class<?>[modules.length];
+            for (int i = 0; i < modules.length; i++) {
+                moduleClasses[i] = modules[i].getClass();
+            }
+            mModuleClasses.put(activityClass, moduleClasses);
+        }
+        if (mLastActivityClass != null && mLastActivityClass != activityClass) {
+            Map<Class<?>, Integer> counts = mLaunchCounts.get(mLastActivityClass);
+            if (counts == null) {
+                counts = new HashMap<Class<?>, Integer>();
+                mLaunchCounts.put(mLastActivityClass, counts);
+            }
+            Integer count = counts.get(activityClass);
+            counts.put(activityClass, count == null ? 1 : count + 1);
+        }
+        mLastActivityClass = activityClass;
+
+        if (mParentGraph != parentGraph) {
+            mParentGraph = parentGraph;
+            mPrepared.clear();
+        }
+        mPending.clear();
+        for (Class<?> nextActivityClass : getLikelyNext(activityClass)) {
+            if (mModuleClasses.containsKey(nextActivityClass) && !mPrepared.containsKey(nextActivityClass)) {
+                mPending.add(nextActivityClass);
+            }
+        }
+        if (!mPending.isEmpty() && !mIdleHandlerQueued) {
+            mIdleHandlerQueued = true;
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    }
+
+    private List<Class<?>> getLikelyNext(Class<?> activityClass) {
+        Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+        Set<Class<?>> declared = mDeclaredNext.get(activityClass);
+        if (declared != null) {
+            result.addAll(declared);
+        }
+        final Map<Class<?>, Integer> counts = mLaunchCounts.get(activityClass);
+        if (counts != null) {
+            List<Class<?>> learned = new ArrayList<Class<?>>(counts.keySet());
+            Collections.sort(learned, new Comparator<Class<?>>() {
+                @Override
+                public int compare(Class<?> lhs, Class<?> rhs) {
+                    return counts.get(rhs) - counts.get(lhs);
+                }
+            });
+            result.addAll(learned);
+        }
+        result.remove(activityClass);
+        List<Class<?>> likelyNext = new ArrayList<Class<?>>(result);
+        return likelyNext.size() > MAX_PREPARED_GRAPHS ? likelyNext.subList(0, MAX_PREPARED_GRAPHS) : likelyNext;
+    }
+
+    /**
+     * Prepares the graph for an activity whose module classes are known.
+     */
+    void prepare(Class<?> activityClass, ObjectGraph parentGraph) {
+        Class<?>[] moduleClasses = mModuleClasses.get(activityClass);
+        if (moduleClasses == null || parentGraph == null) {
+            return;
+        }
+
+        Object[] modules = new Object[moduleClasses.length];
+        InjectingActivityModule activityModule = null;
+        try {
+            for (int i = 0; i < moduleClasses.length; i++) {
+                if (moduleClasses[i] == InjectingActivityModule.class) {
+                    activityModule = new InjectingActivityModule(null, null);
+                    modules[i] = activityModule;
+                } else {
+                    Constructor<?> constructor = moduleClasses[i].getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    modules[i] = constructor.newInstance();
+                }
+            }
+        } catch (Exception e) {
+            // a module can't be constructed without its activity; don't try again
+            mModuleClasses.remove(activityClass);
+            return;
+        }
+        if (activityModule == null) {
+            mModuleClasses.remove(activityClass);
+            return;
+        }
+
+        ObjectGraph objectGraph = parentGraph.plus(modules);
+        while (mPrepared.size() >= MAX_PREPARED_GRAPHS) {
+            mPrepared.remove(mPrepared.keySet().iterator().next());
+        }
+        mPrepared.put(activityClass, new PreparedGraph(parentGraph, objectGraph, activityModule));
+    }
+
+    static final class PreparedGraph {
+        final ObjectGraph parentGraph;
+        final ObjectGraph objectGraph;
+        final InjectingActivityModule activityModule;
+
+        PreparedGraph(ObjectGraph parentGraph, ObjectGraph objectGraph, InjectingActivityModule activityModule) {
+            this.parentGraph = parentGraph;
+            this.objectGraph = objectGraph;
+            this.activityModule = activityModule;
+        }
+    }
+}
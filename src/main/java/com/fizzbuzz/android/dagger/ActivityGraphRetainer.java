@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Bundle;
+import dagger.ObjectGraph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Carries an activity's object graph across a configuration change, on behalf of the Injecting...Activity classes.
+ * <p/>
+ * When the activity is destroyed because its configuration is changing, its graph is kept, under a token saved in its
+ * instance state, with its {@link InjectingActivityModule} unbound from it.  The recreated activity looks the graph up
+ * by that token, binds the module to itself, and adopts the graph, so activity-scope singletons are not created again.
+ * A graph is only kept if it was built with an InjectingActivityModule, and is discarded if the application-scope graph
+ * has changed, or the activity looking it up is of a different class, by the time it is looked up.  All methods must be
+ * called on the main thread.
+ * <p/>
+ * Tokens are random UUIDs, so a token restored from the instance state of an earlier process never matches a graph
+ * kept by this one.  The graph is not carried in the activity's non-configuration instance because that belongs to the
+ * activity's subclasses (and is final in FragmentActivity).
+ */
+final class ActivityGraphRetainer {
+    // graphs that are never claimed (e.g. the recreated activity failed) are dropped once this many are kept
+    static final int MAX_RETAINED_GRAPHS = 4;
+    private static final String TOKEN_KEY = "com.fizzbuzz.android.dagger.RETAINED_OBJECT_GRAPH";
+
+    private static final Map<String, RetainedGraph> sRetainedGraphs = new LinkedHashMap<String, RetainedGraph>();
+
+    private final Activity mActivity;
+    private String mToken;
+    private InjectingActivityModule mActivityModule;
+
+    /**
+     * Class constructor.
+     *
+     * @param activity the activity, which must be an Injector
+     */
+    ActivityGraphRetainer(Activity activity) {
+        mActivity = activity;
+    }
+
+    /**
+     * Reads the token of the graph retained for this activity, if any, from its saved instance state.
+     */
+    void onCreate(Bundle savedInstanceState) {
+        if (savedInstanceState != null) {
+            mToken = savedInstanceState.getString(TOKEN_KEY);
+        }
+    }
+
+    /**
+     * Takes the graph retained for this activity, binding its InjectingActivityModule to the activity.
+     *
+     * @return the graph, or null if none was retained from parentGraph
+     */
+    ObjectGraph adopt(ObjectGraph parentGraph) {
+        RetainedGraph retained = mToken != null ? take(mToken, mActivity.getClass(), parentGraph) : null;
+        if (retained == null) {
+            return null;
+        }
+        retained.activityModule.bind(mActivity, (Injector) mActivity);
+        mActivityModule = retained.activityModule;
+        return retained.objectGraph;
+    }
+
+    /**
+     * Records the activity's InjectingActivityModule, from the modules its graph was just built with.
+     *
+     * @param modules the modules, or null if the graph was adopted
+     */
+    void onObjectGraphCreated(Object[] modules) {
+        if (modules != null) {
+            mActivityModule = (InjectingActivityModule) ObjectGraphCache.findModule(modules,
+                    InjectingActivityModule.class);
+        }
+    }
+
+    /**
+     * Records the activity's InjectingActivityModule, from a graph that {@link ActivityGraphPrewarmer} prepared and the
+     * activity adopted, so that the graph can be retained like one the activity built.
+     */
+    void onPrewarmedObjectGraphAdopted(InjectingActivityModule activityModule) {
+        mActivityModule = activityModule;
+    }
+
+    /**
+     * Saves the token under which this activity's graph will be retained.
+     */
+    void onSaveInstanceState(Bundle outState) {
+        outState.putString(TOKEN_KEY, getToken());
+    }
+
+    /**
+     * Gets the token under which this activity's graph will be retained, choosing it if it hasn't been yet.
+     */
+    String getToken() {
+        if (mToken == null) {
+            mToken = UUID.randomUUID().toString();
+        }
+        return mToken;
+    }
+
+    /**
+     * Keeps the activity's graph for the activity that replaces it, if the activity is being destroyed because its
+     * configuration is changing.
+     *
+     * @return true if the graph was kept, in which case it must not be torn down
+     */
+    boolean retain(ObjectGraph objectGraph) {
+        if (!isChangingConfigurations()) {
+            return false;
+        }
+        return retain(objectGraph, mActivity.getClass(), ((Injector) mActivity.getApplication()).getObjectGraph());
+    }
+
+    /**
+     * Keeps the activity's graph for the activity that replaces it, given that its configuration is changing.
+     *
+     * @return true if the graph was kept
+     */
+    boolean retain(ObjectGraph objectGraph, Class<?> activityClass, ObjectGraph parentGraph) {
+        if (objectGraph == null || mActivityModule == null || mToken == null) {
+            return false;
+        }
+        mActivityModule.bind(null, null);
+        put(mToken, new RetainedGraph(activityClass, parentGraph, objectGraph, mActivityModule));
+        mActivityModule = null;
+        return true;
+    }
+
+    /**
+     * Keeps a graph under a token, dropping the eldest kept graph if there are too many.
+     */
+    static void put(String token, RetainedGraph retained) {
+        sRetainedGraphs.put(token, retained);
+        if (sRetainedGraphs.size() > MAX_RETAINED_GRAPHS) {
+            Iterator<RetainedGraph> eldest = sRetainedGraphs.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Removes the graph kept under a token.
+     *
+     * @return the graph, or null if none was kept under the token, or it was kept by an activity of a different class
+     * or from a different parent graph
+     */
+    static RetainedGraph take(String token, Class<?> activityClass, ObjectGraph parentGraph) {
+        RetainedGraph retained = sRetainedGraphs.remove(token);
+        if (retained == null || retained.parentGraph != parentGraph || retained.activityClass != activityClass) {
+            return null;
+        }
+        return retained;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private boolean isChangingConfigurations() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && mActivity.isChangingConfigurations();
+    }
+
+    static final class RetainedGraph {
+        final Class<?> activityClass;
+        final ObjectGraph parentGraph;
+        final ObjectGraph objectGraph;
+        final InjectingActivityModule activityModule;
+
+        RetainedGraph(Class<?> activityClass, ObjectGraph parentGraph, ObjectGraph objectGraph,
+                InjectingActivityModule activityModule) {
+            this.activityClass = activityClass;
+            this.parentGraph = parentGraph;
+            this.objectGraph = objectGraph;
+            this.activityModule = activityModule;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.app.Activity;
+import android.os.Bundle;
+import dagger.ObjectGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.fizzbuzz.android.dagger.InjectionScope.ACTIVITY;
+
+/**
+ * The {@link InjectionDelegate} of the Injecting...Activity classes, which holds everything they have in common: graph
+ * retention, prewarming, memory trimming and the default modules.  Each activity subclasses this to forward the hooks
+ * it lets its own subclasses override, and forwards its lifecycle callbacks and Injector methods to it.
+ */
+abstract class ActivityInjectionDelegate
+        extends InjectionDelegate {
+    private final Activity mActivity;
+    private final Class<? extends Activity> mBaseClass;
+    private final ActivityGraphRetainer mGraphRetainer;
+
+    /**
+     * Class constructor.
+     *
+     * @param activity the activity, which must be an Injector
+     * @param baseClass the Injecting...Activity class that the activity extends
+     */
+    ActivityInjectionDelegate(Activity activity, Class<? extends Activity> baseClass) {
+        super(activity, ACTIVITY);
+        mActivity = activity;
+        mBaseClass = baseClass;
+        mGraphRetainer = new ActivityGraphRetainer(activity);
+    }
+
+    abstract boolean isObjectGraphLazy();
+
+    abstract boolean isObjectGraphPrewarmable();
+
+    abstract boolean isObjectGraphRetained();
+
+    abstract boolean isModuleRecyclingEnabled();
+
+    abstract List<Object> getModules();
+
+    @Override
+    final Injector getParent() {
+        return (Injector) mActivity.getApplication();
+    }
+
+    @Override
+    final ObjectGraph adoptObjectGraph(ObjectGraph parentGraph) {
+        ObjectGraph objectGraph = isObjectGraphRetained() ? mGraphRetainer.adopt(parentGraph) : null;
+        if (objectGraph == null && isObjectGraphPrewarmable()) {
+            ActivityGraphPrewarmer.PreparedGraph prepared =
+                    ActivityGraphPrewarmer.getInstance().adopt(mActivity, parentGraph);
+            if (prepared != null) {
+                // the retainer needs the prepared graph's activity module to retain it like one the activity built
+                if (isObjectGraphRetained()) {
+                    mGraphRetainer.onPrewarmedObjectGraphAdopted(prepared.activityModule);
+                }
+                objectGraph = prepared.objectGraph;
+            }
+        }
+        return objectGraph;
+    }
+
+    @Override
+    final void onObjectGraphCreated(ObjectGraph parentGraph, Object[] modules) {
+        if (isObjectGraphRetained()) {
+            mGraphRetainer.onObjectGraphCreated(modules);
+        }
+        if (isObjectGraphPrewarmable()) {
+            ActivityGraphPrewarmer.getInstance().onObjectGraphCreated(mActivity, parentGraph, modules);
+        }
+    }
+
+    /**
+     * Adds the modules that the activity's collectModules adds by default: those returned by its getModules if it
+     * overrides it, and otherwise its InjectingActivityModule, followed by its {@link StaticModules}.
+     */
+    final void addDefaultModules(ModuleCollector collector) {
+        if (ModuleCollector.overridesGetModules(mActivity.getClass(), mBaseClass)) {
+            collector.addAll(getModules());
+        } else if (isModuleRecyclingEnabled()) {
+            collector.add(recycleOnDestroy(InjectingActivityModule.obtain(mActivity, (Injector) mActivity)));
+        } else {
+            collector.add(new InjectingActivityModule(mActivity, (Injector) mActivity));
+        }
+        collector.addStaticModules(mActivity.getClass());
+    }
+
+    /**
+     * Gets the modules that the activity's getModules returns by default.
+     */
+    final List<Object> getDefaultModules() {
+        List<Object> result = new ArrayList<Object>();
+        result.add(new InjectingActivityModule(mActivity, (Injector) mActivity));
+        return result;
+    }
+
+    /**
+     * Called from the activity's onCreate, before calling through to super.onCreate, so that the injecting fragments
+     * it restores can extend its graph when they are attached.
+     */
+    final void onCreate(Bundle savedInstanceState) {
+        if (isObjectGraphRetained()) {
+            mGraphRetainer.onCreate(savedInstanceState);
+        }
+
+        // unless the graph is created lazily, extend the application-scope graph and inject the activity now
+        if (!isObjectGraphLazy()) {
+            attach();
+        }
+    }
+
+    /**
+     * Called from the activity's onSaveInstanceState.
+     */
+    final void onSaveInstanceState(Bundle outState) {
+        if (isObjectGraphRetained()) {
+            mGraphRetainer.onSaveInstanceState(outState);
+        }
+    }
+
+    /**
+     * Called from the activity's onDestroy, before calling through to super.onDestroy.
+     */
+    final void onDestroy() {
+        // a graph retained across a configuration change lives on in the activity that replaces this one
+        if (isObjectGraphRetained() && mGraphRetainer.retain(peekObjectGraph())) {
+            release();
+        } else {
+            destroy();
+        }
+    }
+
+    /**
+     * Called from the activity's onTrimMemory.
+     */
+    final void onTrimMemory(int level) {
+        MemoryTrimming.onTrimMemory(peekObjectGraph(), level);
+    }
+
+    /**
+     * Called from the activity's onLowMemory.
+     */
+    final void onLowMemory() {
+        MemoryTrimming.onLowMemory(peekObjectGraph());
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+import dagger.internal.Binding;
+import dagger.internal.Keys;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the bindings an object graph resolves for members injection and for {@link Injector#get(Class)}, by class.
+ * <p/>
+ * On each call, Dagger's ObjectGraph.inject and ObjectGraph.get build a string key from the class name, look up the
+ * binding by that key, and link it.  Once a class's binding has been resolved here, later calls for the same class go
+ * straight to the binding instead.  The binding is resolved through the graph's private getInjectableTypeBinding
+ * method; if that isn't available (e.g. it was renamed by ProGuard, or this isn't a graph created by Dagger), the
+ * cache falls back to ObjectGraph.inject and ObjectGraph.get.
+ * <p/>
+ * Lookups take no locks; only resolving a binding takes Dagger's linker lock.  A cache can be {@link #freeze() frozen}
+ * to resolve up front the bindings of every class its graph was declared to inject, so that threads sharing the graph
+ * don't contend for that lock afterwards.
+ */
+final class BindingCache {
+    private static final Class<?> sDaggerObjectGraphClass;
+    private static final Method sGetInjectableTypeBinding;
+    private static final Field sInjectableTypes;
+    private static final String MEMBERS_KEY_PREFIX = "members/";
+
+    static {
+        Class<?> graphClass = null;
+        Method method = null;
+        try {
+            graphClass = Class.forName("dagger.ObjectGraph$DaggerObjectGraph");
+            method = graphClass.getDeclaredMethod("getInjectableTypeBinding", ClassLoader.class, String.class,
+                    String.class);
+            method.setAccessible(true);
+        } catch (Exception e) {
+            // not the Dagger version this was written against; fall back to the public API
+            method = null;
+        }
+        sDaggerObjectGraphClass = graphClass;
+        sGetInjectableTypeBinding = method;
+
+        Field field = null;
+        if (graphClass != null) {
+            try {
+                field = graphClass.getDeclaredField("injectableTypes");
+                field.setAccessible(true);
+            } catch (Exception e) {
+                // bindings can still be cached, just not resolved up front
+                field = null;
+            }
+        }
+        sInjectableTypes = field;
+    }
+
+    private final ObjectGraph mObjectGraph;
+    private final boolean mEnabled;
+    // concurrency level 1: bindings are resolved rarely, and looked up without locking
+    private final ConcurrentHashMap<Class<?>, Binding<?>> mMembersBindings =
+            new ConcurrentHashMap<Class<?>, Binding<?>>(16, 0.75f, 1);
+    private final ConcurrentHashMap<Class<?>, Binding<?>> mProvisionBindings =
+            new ConcurrentHashMap<Class<?>, Binding<?>>(16, 0.75f, 1);
+
+    /**
+     * Class constructor.
+     *
+     * @param objectGraph the graph whose bindings are cached
+     */
+    BindingCache(ObjectGraph objectGraph) {
+        mObjectGraph = objectGraph;
+        mEnabled = sGetInjectableTypeBinding != null && sDaggerObjectGraphClass.isInstance(objectGraph);
+    }
+
+    /**
+     * Gets the graph whose bindings are cached.
+     */
+    ObjectGraph getObjectGraph() {
+        return mObjectGraph;
+    }
+
+    /**
+     * Resolves the members-injection bindings of the classes listed in the injects of the graph's own modules (not
+     * those of the graphs it extends).  Classes whose bindings can't be resolved are left to be resolved, and to report
+     * their errors, on first use.
+     */
+    @SuppressWarnings("unchecked")
+    void freeze() {
+        if (!mEnabled || sInjectableTypes == null) {
+            return;
+        }
+        Map<String, Class<?>> injectableTypes;
+        try {
+            injectableTypes = (Map<String, Class<?>>) sInjectableTypes.get(mObjectGraph);
+        } catch (IllegalAccessException e) {
+            return;
+        }
+        for (Map.Entry<String, Class<?>> entry : injectableTypes.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(MEMBERS_KEY_PREFIX)) {
+                continue; // an interface, which can only be got, not injected
+            }
+            try {
+                getMembersBinding(Class.forName(key.substring(MEMBERS_KEY_PREFIX.length()), false,
+                        entry.getValue().getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                // left to first use
+            } catch (RuntimeException e) {
+                // left to first use
+            }
+        }
+    }
+
+    /**
+     * Injects a target object's members, as ObjectGraph.inject does.
+     */
+    void inject(Object target) {
+        if (!mEnabled) {
+            mObjectGraph.inject(target);
+            return;
+        }
+        getMembersBinding(target.getClass()).injectMembers(target);
+    }
+
+    /**
+     * Injects the members of each of an array of target objects.  Consecutive targets of the same class share one
+     * binding lookup.
+     */
+    void injectAll(Object[] targets) {
+        Class<?> lastClass = null;
+        Binding<Object> binding = null;
+        for (Object target : targets) {
+            if (!mEnabled) {
+                mObjectGraph.inject(target);
+                continue;
+            }
+            Class<?> targetClass = target.getClass();
+            if (targetClass != lastClass) {
+                binding = getMembersBinding(targetClass);
+                lastClass = targetClass;
+            }
+            binding.injectMembers(target);
+        }
+    }
+
+    /**
+     * Injects the members of each of a collection of target objects.  Consecutive targets of the same class share one
+     * binding lookup.
+     */
+    void injectAll(Iterable<?> targets) {
+        Class<?> lastClass = null;
+        Binding<Object> binding = null;
+        for (Object target : targets) {
+            if (!mEnabled) {
+                mObjectGraph.inject(target);
+                continue;
+            }
+            Class<?> targetClass = target.getClass();
+            if (targetClass != lastClass) {
+                binding = getMembersBinding(targetClass);
+                lastClass = targetClass;
+            }
+            binding.injectMembers(target);
+        }
+    }
+
+    /**
+     * Gets an instance of a type, as ObjectGraph.get does.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(Class<T> type) {
+        if (!mEnabled) {
+            return mObjectGraph.get(type);
+        }
+        Binding<T> binding = (Binding<T>) mProvisionBindings.get(type);
+        if (binding == null) {
+            String key = Keys.get(type);
+            String injectableTypeKey = type.isInterface() ? key : Keys.getMembersKey(type);
+            binding = (Binding<T>) resolve(type.getClassLoader(), injectableTypeKey, key);
+            mProvisionBindings.put(type, binding);
+        }
+        return binding.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Binding<Object> getMembersBinding(Class<?> targetClass) {
+        Binding<Object> binding = (Binding<Object>) mMembersBindings.get(targetClass);
+        if (binding == null) {
+            String membersKey = Keys.getMembersKey(targetClass);
+            binding = (Binding<Object>) resolve(targetClass.getClassLoader(), membersKey, membersKey);
+            mMembersBindings.put(targetClass, binding);
+        }
+        return binding;
+    }
+
+    private Binding<?> resolve(ClassLoader classLoader, String injectableTypeKey, String key) {
+        try {
+            return (Binding<?>) sGetInjectableTypeBinding.invoke(mObjectGraph, classLoader, injectableTypeKey, key);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
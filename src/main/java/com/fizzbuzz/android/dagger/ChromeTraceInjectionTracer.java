@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.os.Process;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An {@link InjectionTracer} that records phases in memory and writes them out in the Chrome trace-event JSON format,
+ * which can be loaded into chrome://tracing (or any compatible viewer) offline.  Each phase is recorded as a pair of
+ * begin/end events named after the phase, with the component class, scope, and scope level as arguments.
+ * <p/>
+ * Events are recorded until the configured capacity is reached; later events are dropped.  Room is kept for the end
+ * event of every section whose begin event was recorded, so that the sections in the trace always match up, and the
+ * end event of a section whose begin event was dropped is dropped too.
+ */
+public class ChromeTraceInjectionTracer
+        implements InjectionTracer {
+    private static final int DEFAULT_CAPACITY = 16384;
+    // sections nested deeper than this on a thread are dropped
+    private static final int MAX_DEPTH = 64;
+
+    private final int mPid = Process.myPid();
+
+    // parallel arrays, to avoid allocating an event object per section
+    private final long[] mTimestamps;
+    private final long[] mThreadIds;
+    private final boolean[] mBegins;
+    private final Class<?>[] mComponentClasses;
+    private final InjectionScope[] mScopes;
+    private final InjectionPhase[] mPhases;
+    private int mCount;
+    // the number of sections whose begin event was recorded, but not yet their end event
+    private int mOpenSections;
+    // incremented by clear(), so that sections open at the time are forgotten
+    private int mGeneration;
+    private final ThreadLocal<SectionStack> mSectionStacks = new ThreadLocal<SectionStack>() {
+        @Override
+        protected SectionStack initialValue() {
+            return new SectionStack();
+        }
+    };
+
+    /**
+     * Class constructor, with a default capacity.
+     */
+    public ChromeTraceInjectionTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity the maximum number of events (two per phase) to record
+     */
+    public ChromeTraceInjectionTracer(int capacity) {
+        mTimestamps = new long[capacity];
+        mThreadIds = new long[capacity];
+        mBegins = new boolean[capacity];
+        mComponentClasses = new Class<?>[capacity];
+        mScopes = new InjectionScope[capacity];
+        mPhases = new InjectionPhase[capacity];
+    }
+
+    @Override
+    public void beginSection(Class<?> componentClass, InjectionScope scope, InjectionPhase phase) {
+        record(true, componentClass, scope, phase);
+    }
+
+    @Override
+    public void endSection(Class<?> componentClass, InjectionScope scope, InjectionPhase phase) {
+        record(false, componentClass, scope, phase);
+    }
+
+    private synchronized void record(boolean begin, Class<?> componentClass, InjectionScope scope,
+            InjectionPhase phase) {
+        SectionStack stack = mSectionStacks.get();
+        if (stack.generation != mGeneration) {
+            stack.recorded = 0;
+            stack.generation = mGeneration;
+        }
+        if (begin) {
+            // record a begin event only if there is room for it, its end event, and the end events of the sections
+            // already open
+            int depth = stack.depth++;
+            if (depth >= MAX_DEPTH || mCount + mOpenSections + 2 > mTimestamps.length) {
+                return;
+            }
+            stack.recorded |= 1L << depth;
+            mOpenSections++;
+        } else {
+            if (stack.depth == 0) {
+                return; // the tracer was installed part way through the section
+            }
+            int depth = --stack.depth;
+            long bit = depth < MAX_DEPTH ? 1L << depth : 0;
+            if ((stack.recorded & bit) == 0) {
+                return; // its begin event was dropped
+            }
+            stack.recorded &= ~bit;
+            mOpenSections--;
+        }
+        mTimestamps[mCount] = System.nanoTime() / 1000;
+        mThreadIds[mCount] = Thread.currentThread().getId();
+        mBegins[mCount] = begin;
+        mComponentClasses[mCount] = componentClass;
+        mScopes[mCount] = scope;
+        mPhases[mCount] = phase;
+        mCount++;
+    }
+
+    /**
+     * Discards all recorded events.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mComponentClasses[i] = null;
+        }
+        mCount = 0;
+        mOpenSections = 0;
+        mGeneration++;
+    }
+
+    /**
+     * Writes the recorded events to a file, replacing its contents.
+     *
+     * @param file the file
+     * @throws IOException if the file could not be written
+     */
+    public void writeTo(File file) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writeTo(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the recorded events as a JSON trace-event document.
+     *
+     * @param writer the destination; it is not closed
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeTo(Writer writer) throws IOException {
+        writer.write("{\"traceEvents\":[");
+        for (int i = 0; i < mCount; i++) {
+            if (i > 0) {
+                writer.write(",");
+            }
+            writer.write("\n{\"name\":\"");
+            writer.write(mPhases[i].name());
+            writer.write("\",\"cat\":\"injection\",\"ph\":\"");
+            writer.write(mBegins[i] ? "B" : "E");
+            writer.write("\",\"ts\":");
+            writer.write(Long.toString(mTimestamps[i]));
+            writer.write(",\"pid\":");
+            writer.write(Integer.toString(mPid));
+            writer.write(",\"tid\":");
+            writer.write(Long.toString(mThreadIds[i]));
+            writer.write(",\"args\":{\"component\":\"");
+            writer.write(mComponentClasses[i].getName());
+            writer.write("\",\"scope\":\"");
+            writer.write(mScopes[i].name());
+            writer.write("\",\"level\":");
+            writer.write(Integer.toString(mScopes[i].getLevel()));
+            writer.write("}}");
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    // per thread: the depth of the open sections, and which of them had their begin event recorded, by depth
+    private static final class SectionStack {
+        int depth;
+        long recorded;
+        int generation;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+
+import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+
+/**
+ * A {@link GraphBackend} that creates Dagger's own object graphs, which load the adapters of their modules and classes
+ * by name, and link their bindings at runtime.  Lookups for injection and get go through the same binding cache as
+ * the Injecting... components use.
+ */
+public final class DaggerGraphBackend
+        implements GraphBackend {
+
+    @Override
+    public Graph createGraph(Object[] modules) {
+        return new DaggerGraph(ObjectGraph.create(modules));
+    }
+
+    /**
+     * Gets the object graph of a component as a {@link GraphBackend.Graph}, so that it can be extended, or injected
+     * from, in the same way as the graphs of any backend.
+     *
+     * @param injector the component, whose object graph must have been created
+     * @return the graph
+     */
+    public static DaggerGraph graphOf(Injector injector) {
+        ObjectGraph objectGraph = injector.getObjectGraph();
+        checkState(objectGraph != null, "component's object graph has not been created");
+        return new DaggerGraph(objectGraph);
+    }
+
+    /**
+     * A graph created by a {@link DaggerGraphBackend}.
+     */
+    public static final class DaggerGraph
+            implements Graph {
+        private final BindingCache mBindingCache;
+
+        DaggerGraph(ObjectGraph objectGraph) {
+            this(new BindingCache(objectGraph));
+        }
+
+        // shares the binding cache of a component's graph
+        DaggerGraph(BindingCache bindingCache) {
+            mBindingCache = bindingCache;
+        }
+
+        /**
+         * Gets the Dagger object graph this graph wraps.
+         *
+         * @return the object graph
+         */
+        public ObjectGraph getObjectGraph() {
+            return mBindingCache.getObjectGraph();
+        }
+
+        @Override
+        public DaggerGraph plus(Object[] modules) {
+            return new DaggerGraph(mBindingCache.getObjectGraph().plus(modules));
+        }
+
+        @Override
+        public void inject(Object target) {
+            mBindingCache.inject(target);
+        }
+
+        @Override
+        public <T> T get(Class<T> type) {
+            return mBindingCache.get(type);
+        }
+
+        @Override
+        public void validate() {
+            mBindingCache.getObjectGraph().validate();
+        }
+    }
+}
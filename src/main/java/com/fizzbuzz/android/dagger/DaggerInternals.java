@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+import dagger.internal.Binding;
+import dagger.internal.Loader;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reaches the parts of Dagger's object graphs that its public API doesn't expose: the singletons a graph has
+ * instantiated, and the graph's linker and loader.  Written against Dagger 1.2; if the members it uses aren't there
+ * (e.g. they were renamed by ProGuard), graphs appear to have no singletons, and can't be created with a loader of
+ * their own.
+ */
+final class DaggerInternals {
+    private static final Class<?> sDaggerObjectGraphClass;
+    private static final Class<?> sSingletonBindingClass;
+    private static final Field sLinker;
+    private static final Field sPlugin;
+    private static final Field sBindings;
+    private static final Field sOnlyInstance;
+    private static final Object sUninitialized;
+    private static final Method sCreateWith;
+    private static final Method sIsSingleton;
+
+    static {
+        Class<?> graphClass = null;
+        Class<?> singletonBindingClass = null;
+        Field linker = null;
+        Field plugin = null;
+        Field bindings = null;
+        Field onlyInstance = null;
+        Object uninitialized = null;
+        Method createWith = null;
+        Method isSingleton = null;
+        try {
+            graphClass = Class.forName("dagger.ObjectGraph$DaggerObjectGraph");
+            linker = accessibleField(graphClass, "linker");
+            plugin = accessibleField(graphClass, "plugin");
+            Class<?> linkerClass = Class.forName("dagger.internal.Linker");
+            bindings = accessibleField(linkerClass, "bindings");
+            uninitialized = accessibleField(linkerClass, "UNINITIALIZED").get(null);
+            singletonBindingClass = Class.forName("dagger.internal.Linker$SingletonBinding");
+            onlyInstance = accessibleField(singletonBindingClass, "onlyInstance");
+            createWith = ObjectGraph.class.getDeclaredMethod("createWith", Loader.class, Object[].class);
+            createWith.setAccessible(true);
+            isSingleton = Binding.class.getDeclaredMethod("isSingleton");
+            isSingleton.setAccessible(true);
+        } catch (Exception e) {
+            // not the Dagger version this was written against
+            graphClass = null;
+        }
+        sDaggerObjectGraphClass = graphClass;
+        sSingletonBindingClass = singletonBindingClass;
+        sLinker = linker;
+        sPlugin = plugin;
+        sBindings = bindings;
+        sOnlyInstance = onlyInstance;
+        sUninitialized = uninitialized;
+        sCreateWith = createWith;
+        sIsSingleton = isSingleton;
+    }
+
+    private DaggerInternals() {
+    }
+
+    /**
+     * Gets the singletons that have been instantiated by a graph itself, not by the graphs it extends.
+     *
+     * @param objectGraph the graph
+     * @return the singleton instances, by the key of the binding that provides them
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> getSingletons(ObjectGraph objectGraph) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        if (sDaggerObjectGraphClass == null || !sDaggerObjectGraphClass.isInstance(objectGraph)) {
+            return result;
+        }
+        try {
+            Object linker = sLinker.get(objectGraph);
+            List<Binding<?>> bindings;
+            // the linker guards its bindings with its own monitor
+            synchronized (linker) {
+                bindings = new ArrayList<Binding<?>>(((Map<String, Binding<?>>) sBindings.get(linker)).values());
+            }
+            for (Binding<?> binding : bindings) {
+                if (sSingletonBindingClass.isInstance(binding)) {
+                    Object instance = sOnlyInstance.get(binding);
+                    if (instance != sUninitialized && instance != null && binding.provideKey != null) {
+                        result.put(binding.provideKey, instance);
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a graph whose bindings, and those of the graphs that extend it, are loaded by the given loader.
+     *
+     * @return the graph, or null if graphs can't be created with a loader
+     */
+    static ObjectGraph createWith(Loader loader, Object[] modules) {
+        if (sDaggerObjectGraphClass == null) {
+            return null;
+        }
+        try {
+            return (ObjectGraph) sCreateWith.invoke(null, loader, modules);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Gets the linker of a graph, which is unique to it, and resolves the bindings it doesn't inherit.
+     *
+     * @return the linker, or null if it isn't available
+     */
+    static Object getLinker(ObjectGraph objectGraph) {
+        return getField(sLinker, objectGraph);
+    }
+
+    /**
+     * Gets the loader of a graph, which it shares with the graphs it extends.
+     *
+     * @return the loader, or null if it isn't available
+     */
+    static Loader getLoader(ObjectGraph objectGraph) {
+        return (Loader) getField(sPlugin, objectGraph);
+    }
+
+    /**
+     * Returns whether a binding is scoped as a singleton.  Only valid if {@link #createWith} succeeded.
+     */
+    static boolean isSingleton(Binding<?> binding) {
+        try {
+            return (Boolean) sIsSingleton.invoke(binding);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw propagate(e);
+        }
+    }
+
+    private static Object getField(Field field, ObjectGraph objectGraph) {
+        if (sDaggerObjectGraphClass == null || !sDaggerObjectGraphClass.isInstance(objectGraph)) {
+            return null;
+        }
+        try {
+            return field.get(objectGraph);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static RuntimeException propagate(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private static Field accessibleField(Class<?> cls, String name) throws NoSuchFieldException {
+        Field field = cls.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.content.ComponentCallbacks2;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a singleton, either a @Singleton class with an @Inject constructor or a @Singleton @Provides method, as one
+ * that can be rebuilt on demand, such as a cache.  When the component that owns the singleton's graph is asked to trim
+ * its memory at or above the singleton's trim level, or is told that memory is low, the graph drops the singleton, and
+ * creates a new one the next time it is needed.
+ * <p/>
+ * Objects that were injected with the singleton keep the old instance; inject a Provider of it instead to always get
+ * the current one.  Singletons are evicted from the graph of the application, activity, fragment or service whose
+ * onTrimMemory or onLowMemory is called.  Eviction requires the graph to be created by an {@link InjectingApplication};
+ * otherwise the annotation is ignored.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({TYPE, METHOD})
+public @interface Evictable {
+    /**
+     * The lowest trim level, as passed to onTrimMemory, at which the singleton is dropped.  The default is
+     * ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, at which the process has moved to the background LRU list.
+     */
+    int trimLevel() default ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+}
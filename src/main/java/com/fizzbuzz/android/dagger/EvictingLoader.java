@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+import dagger.internal.Binding;
+import dagger.internal.Linker;
+import dagger.internal.Loader;
+import dagger.internal.ProvidesBinding;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replaces the bindings of {@link Evictable} singletons with bindings that hold their instance themselves, rather than
+ * leaving it to dagger, so that it can be dropped safely while other threads are using the graph.
+ */
+final class EvictingLoader extends WrappingLoader {
+    private static final int NOT_EVICTABLE = -1;
+
+    // by linker, which is unique to each graph
+    private static final Map<Object, List<Slot>> sSlots = new WeakHashMap<Object, List<Slot>>();
+
+    // trim levels, or NOT_EVICTABLE, by class name
+    private final Map<String, Integer> mClassTrimLevels = new ConcurrentHashMap<String, Integer>();
+    // trim levels of a module's evictable provider methods, by method name
+    private final Map<Class<?>, Map<String, Integer>> mMethodTrimLevels =
+            new ConcurrentHashMap<Class<?>, Map<String, Integer>>();
+
+    /**
+     * Class constructor.
+     *
+     * @param delegate the loader that loads the bindings
+     */
+    EvictingLoader(Loader delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Drops the evictable singletons of a graph, not of the graphs it extends, whose trim level is at most level.
+     */
+    static void evict(ObjectGraph objectGraph, int level) {
+        for (Slot slot : getSlots(objectGraph)) {
+            if (level >= slot.trimLevel) {
+                slot.evict();
+            }
+        }
+    }
+
+    /**
+     * Gets the singletons that have been instantiated by a graph itself, not by the graphs it extends, including the
+     * evictable ones it currently holds.
+     *
+     * @return the singleton instances, by the key of the binding that provides them
+     */
+    static Map<String, Object> getSingletons(ObjectGraph objectGraph) {
+        Map<String, Object> result = DaggerInternals.getSingletons(objectGraph);
+        for (Slot slot : getSlots(objectGraph)) {
+            Object instance = slot.instance;
+            if (instance != null) {
+                result.put(slot.key, instance);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    <T> Binding<T> wrapAtInjectBinding(Binding<T> binding, String className, ClassLoader classLoader) {
+        Integer trimLevel = mClassTrimLevels.get(className);
+        if (trimLevel == null) {
+            trimLevel = NOT_EVICTABLE;
+            try {
+                Evictable evictable = Class.forName(className, false, classLoader).getAnnotation(Evictable.class);
+                if (evictable != null) {
+                    trimLevel = evictable.trimLevel();
+                }
+            } catch (ClassNotFoundException e) {
+                // leave it to dagger
+            }
+            mClassTrimLevels.put(className, trimLevel);
+        }
+        if (trimLevel == NOT_EVICTABLE || !DaggerInternals.isSingleton(binding)) {
+            return binding;
+        }
+        return new EvictableBinding<T>(binding, trimLevel);
+    }
+
+    @Override
+    boolean wrapsProvidesBindings(Class<?> moduleClass) {
+        return !getMethodTrimLevels(moduleClass).isEmpty();
+    }
+
+    @Override
+    <T> ProvidesBinding<T> wrapProvidesBinding(ProvidesBinding<T> binding, Object module) {
+        Integer trimLevel = getMethodTrimLevels(module.getClass()).get(getMethodName(binding));
+        if (trimLevel == null || !DaggerInternals.isSingleton(binding)) {
+            return binding;
+        }
+        return new EvictableProvidesBinding<T>(binding, trimLevel);
+    }
+
+    private Map<String, Integer> getMethodTrimLevels(Class<?> moduleClass) {
+        Map<String, Integer> trimLevels = mMethodTrimLevels.get(moduleClass);
+        if (trimLevels == null) {
+            trimLevels = new HashMap<String, Integer>();
+            for (Method method : moduleClass.getDeclaredMethods()) {
+                Evictable evictable = method.getAnnotation(Evictable.class);
+                if (evictable != null) {
+                    trimLevels.put(method.getName(), evictable.trimLevel());
+                }
+            }
+            mMethodTrimLevels.put(moduleClass, trimLevels);
+        }
+        return trimLevels;
+    }
+
+    private static List<Slot> getSlots(ObjectGraph objectGraph) {
+        Object linker = DaggerInternals.getLinker(objectGraph);
+        synchronized (sSlots) {
+            List<Slot> slots = linker != null ? sSlots.get(linker) : null;
+            return slots != null ? new ArrayList<Slot>(slots) : Collections.<Slot>emptyList();
+        }
+    }
+
+    private static void addSlot(Linker linker, Slot slot) {
+        synchronized (sSlots) {
+            List<Slot> slots = sSlots.get(linker);
+            if (slots == null) {
+                slots = new ArrayList<Slot>();
+                sSlots.put(linker, slots);
+            }
+            slots.add(slot);
+        }
+    }
+
+    /**
+     * Holds an evictable singleton.  Unlike dagger's singleton bindings, it reads its instance once per call, so that a
+     * concurrent eviction can't make it return nothing.
+     */
+    private static final class Slot {
+        final String key;
+        final int trimLevel;
+        volatile Object instance;
+        boolean attached;
+
+        Slot(String key, int trimLevel) {
+            this.key = key;
+            this.trimLevel = trimLevel;
+        }
+
+        void attach(Linker linker) {
+            // the linker attaches a binding again if its dependencies weren't all available
+            if (!attached) {
+                attached = true;
+                addSlot(linker, this);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T get(Binding<T> binding) {
+            Object result = instance;
+            if (result == null) {
+                synchronized (this) {
+                    result = instance;
+                    if (result == null) {
+                        result = binding.get();
+                        instance = result;
+                    }
+                }
+            }
+            return (T) result;
+        }
+
+        void evict() {
+            instance = null;
+        }
+    }
+
+    // not a singleton as far as dagger is concerned, so that dagger doesn't hold the instance too
+    private static final class EvictableBinding<T> extends Binding<T> {
+        private final Binding<T> mDelegate;
+        private final Slot mSlot;
+
+        EvictableBinding(Binding<T> delegate, int trimLevel) {
+            super(delegate.provideKey, delegate.membersKey, NOT_SINGLETON, delegate.requiredBy);
+            mDelegate = delegate;
+            mSlot = new Slot(delegate.provideKey, trimLevel);
+        }
+
+        @Override
+        public void attach(Linker linker) {
+            mDelegate.attach(linker);
+            mSlot.attach(linker);
+        }
+
+        @Override
+        public T get() {
+            return mSlot.get(mDelegate);
+        }
+
+        @Override
+        public void injectMembers(T t) {
+            mDelegate.injectMembers(t);
+        }
+
+        @Override
+        public void getDependencies(Set<Binding<?>> getBindings, Set<Binding<?>> injectMembersBindings) {
+            mDelegate.getDependencies(getBindings, injectMembersBindings);
+        }
+
+        @Override
+        public String toString() {
+            return mDelegate.toString();
+        }
+    }
+
+    private static final class EvictableProvidesBinding<T> extends ProvidesBinding<T> {
+        private final ProvidesBinding<T> mDelegate;
+        private final Slot mSlot;
+
+        EvictableProvidesBinding(ProvidesBinding<T> delegate, int trimLevel) {
+            super(delegate.provideKey, NOT_SINGLETON, getModuleClassName(delegate), getMethodName(delegate));
+            mDelegate = delegate;
+            mSlot = new Slot(delegate.provideKey, trimLevel);
+        }
+
+        @Override
+        public void attach(Linker linker) {
+            mDelegate.attach(linker);
+            mSlot.attach(linker);
+        }
+
+        @Override
+        public T get() {
+            return mSlot.get(mDelegate);
+        }
+
+        @Override
+        public void getDependencies(Set<Binding<?>> getBindings, Set<Binding<?>> injectMembersBindings) {
+            mDelegate.getDependencies(getBindings, injectMembersBindings);
+        }
+
+        @Override
+        public String toString() {
+            return mDelegate.toString();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * An {@link Injector} with the further calls that the Injecting... components support.  They are kept out of Injector
+ * itself so that existing implementations of it outside this library still compile.
+ */
+public interface ExtendedInjector
+        extends Injector {
+    /**
+     * Injects each of an array of target objects using this component's object graph.  Bindings are looked up once
+     * per run of targets of the same class, which makes this cheaper than injecting them one at a time.
+     * @param targets the target objects
+     */
+    public void injectAll(Object[] targets);
+
+    /**
+     * Injects each of a collection of target objects using this component's object graph.  Bindings are looked up
+     * once per run of targets of the same class, which makes this cheaper than injecting them one at a time.
+     * @param targets the target objects
+     */
+    public void injectAll(Iterable<?> targets);
+
+    /**
+     * Gets an instance of a type from this component's object graph.  The binding for the type is cached, so repeated
+     * calls for the same type are cheaper than calling get on the object graph itself.
+     * @param type the type
+     * @return the instance
+     */
+    public <T> T get(Class<T> type);
+
+    /**
+     * Gets this component's graph as created by the application's {@link GraphBackend} (see
+     * {@link InjectingApplication#getGraphBackend()}).  With the default backend, this wraps {@link #getObjectGraph()};
+     * with any other, getObjectGraph returns null and this is the only way to reach the graph.
+     * @return the graph
+     */
+    public GraphBackend.Graph getGraph();
+}
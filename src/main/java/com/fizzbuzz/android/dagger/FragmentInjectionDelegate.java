@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.app.Activity;
+import dagger.ObjectGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.fizzbuzz.android.dagger.InjectionScope.FRAGMENT;
+
+/**
+ * The {@link InjectionDelegate} of the Injecting...Fragment classes, which holds everything they have in common:
+ * attaching to the hosting activity's graph, memory trimming and the default modules.  Each fragment subclasses this to
+ * forward the hooks it lets its own subclasses override, and forwards its lifecycle callbacks and Injector methods to
+ * it.
+ * <p/>
+ * The fragment is either a support library Fragment or, from Honeycomb on, a framework one.
+ */
+abstract class FragmentInjectionDelegate
+        extends InjectionDelegate {
+    private final Injector mFragment;
+    private final Class<? extends Injector> mBaseClass;
+
+    /**
+     * Class constructor.
+     *
+     * @param fragment the fragment
+     * @param baseClass the Injecting...Fragment class that the fragment extends
+     */
+    FragmentInjectionDelegate(Injector fragment, Class<? extends Injector> baseClass) {
+        super(fragment, FRAGMENT);
+        mFragment = fragment;
+        mBaseClass = baseClass;
+    }
+
+    abstract Activity getActivity();
+
+    abstract boolean isObjectGraphLazy();
+
+    abstract boolean isModuleRecyclingEnabled();
+
+    abstract List<Object> getModules();
+
+    @Override
+    final Injector getParent() {
+        return (Injector) getActivity();
+    }
+
+    /**
+     * Adds the modules that the fragment's collectModules adds by default: those returned by its getModules if it
+     * overrides it, and otherwise its InjectingFragmentModule, followed by its {@link StaticModules}.
+     */
+    final void addDefaultModules(ModuleCollector collector) {
+        if (ModuleCollector.overridesGetModules(mFragment.getClass(), mBaseClass)) {
+            collector.addAll(getModules());
+        } else if (isModuleRecyclingEnabled()) {
+            collector.add(recycleOnDestroy(obtainFragmentModule()));
+        } else {
+            collector.add(newFragmentModule());
+        }
+        collector.addStaticModules(mFragment.getClass());
+    }
+
+    /**
+     * Gets the modules that the fragment's getModules returns by default.
+     */
+    final List<Object> getDefaultModules() {
+        List<Object> result = new ArrayList<Object>();
+        result.add(newFragmentModule());
+        return result;
+    }
+
+    private InjectingFragmentModule newFragmentModule() {
+        if (mFragment instanceof android.support.v4.app.Fragment) {
+            return new InjectingFragmentModule((android.support.v4.app.Fragment) mFragment, mFragment);
+        }
+        return new InjectingFragmentModule((android.app.Fragment) mFragment, mFragment);
+    }
+
+    private InjectingFragmentModule obtainFragmentModule() {
+        if (mFragment instanceof android.support.v4.app.Fragment) {
+            return InjectingFragmentModule.obtain((android.support.v4.app.Fragment) mFragment, mFragment);
+        }
+        return InjectingFragmentModule.obtain((android.app.Fragment) mFragment, mFragment);
+    }
+
+    /**
+     * Called from the fragment's onAttach, after calling through to super.onAttach.
+     */
+    final void onAttach() {
+        // unless the graph is created lazily and hasn't been yet, attach it to the activity graph and inject the
+        // fragment
+        if (peekObjectGraph() != null || !isObjectGraphLazy()) {
+            attach();
+        }
+    }
+
+    /**
+     * Called from the fragment's onDestroy, before calling through to super.onDestroy.
+     */
+    final void onDestroy() {
+        destroy();
+    }
+
+    /**
+     * Called from the fragment's onTrimMemory.
+     */
+    final void onTrimMemory(int level) {
+        MemoryTrimming.onTrimMemory(peekObjectGraph(), level);
+    }
+
+    /**
+     * Called from the fragment's onLowMemory.
+     */
+    final void onLowMemory() {
+        MemoryTrimming.onLowMemory(peekObjectGraph());
+    }
+}
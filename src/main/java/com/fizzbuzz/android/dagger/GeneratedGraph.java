@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The base class of the object graphs that fb-android-dagger-compiler generates for {@link GeneratedGraphBackend}.
+ * Not intended to be subclassed by hand.
+ * <p/>
+ * A generated graph is the graph of one module that lists injects classes, together with the modules it includes and
+ * the library module its injects classes imply (e.g. {@code InjectingActivityModule} for an activity).  It holds a
+ * reference to each of its modules, and the singletons it owns in an array, each at an index assigned at compile
+ * time.  Members are injected by assigning fields directly, and instances provided by calling provider methods and
+ * constructors directly; nothing is looked up by name, and nothing is linked, at runtime.
+ */
+public abstract class GeneratedGraph
+        implements GraphBackend.Graph {
+    /**
+     * Returned by {@link #getInstance(Class)} for a type that isn't listed, since null is a valid instance: a provider
+     * method may return it.
+     */
+    protected static final Object NOT_FOUND = new Object();
+
+    /**
+     * The singletons this graph owns, by index; an element is null until its singleton is first provided.
+     */
+    protected final AtomicReferenceArray<Object> mScoped;
+    private final GeneratedGraph mParentGraph;
+
+    /**
+     * Class constructor.
+     *
+     * @param parentGraph the graph this graph extends, or null for a root graph
+     * @param scopedCount the number of singletons this graph owns
+     */
+    protected GeneratedGraph(GeneratedGraph parentGraph, int scopedCount) {
+        mParentGraph = parentGraph;
+        mScoped = new AtomicReferenceArray<Object>(scopedCount);
+    }
+
+    /**
+     * Gets the graph this graph extends.
+     *
+     * @return the parent graph, or null for a root graph
+     */
+    public final GeneratedGraph getParentGraph() {
+        return mParentGraph;
+    }
+
+    @Override
+    public final GraphBackend.Graph plus(Object[] modules) {
+        return GeneratedGraphBackend.createGraph(this, modules);
+    }
+
+    /**
+     * Injects a target object, whose class is listed in the injects of this graph's module or of the module of a graph
+     * it extends.
+     */
+    @Override
+    public final void inject(Object target) {
+        for (GeneratedGraph graph = this; graph != null; graph = graph.mParentGraph) {
+            if (graph.injectMembers(target)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No inject registered for " + target.getClass().getName()
+                + ". You must explicitly add it to the 'injects' option in one of your modules.");
+    }
+
+    /**
+     * Gets an instance of a type that is listed in the injects of this graph's module or of the module of a graph it
+     * extends.
+     */
+    @Override
+    public final <T> T get(Class<T> type) {
+        for (GeneratedGraph graph = this; graph != null; graph = graph.mParentGraph) {
+            Object instance = graph.getInstance(type);
+            if (instance != NOT_FOUND) {
+                return type.cast(instance);
+            }
+        }
+        throw new IllegalArgumentException("No inject registered for " + type.getName()
+                + ". You must explicitly add it to the 'injects' option in one of your modules.");
+    }
+
+    /**
+     * Does nothing: a generated graph's bindings were all resolved when it was generated.
+     */
+    @Override
+    public final void validate() {
+    }
+
+    /**
+     * Injects the members of a target object, if its class is listed in the injects of this graph's module.
+     *
+     * @param target the target object
+     * @return true if the target was injected, false if its class isn't listed
+     */
+    protected abstract boolean injectMembers(Object target);
+
+    /**
+     * Gets an instance of a type, if it is listed in the injects of this graph's module.
+     *
+     * @param type the type
+     * @return the instance, or {@link #NOT_FOUND} if the type isn't listed
+     */
+    protected abstract Object getInstance(Class<?> type);
+
+    /**
+     * Creates the graphs generated for one module.  Each generated graph registers its factory with
+     * {@link GeneratedGraphBackend#register(Class, Factory)} when its class is initialized.
+     */
+    public abstract static class Factory {
+        private final Class<? extends GeneratedGraph> mParentGraphClass;
+
+        /**
+         * Class constructor.
+         *
+         * @param parentGraphClass the class of the graphs that the generated graph extends, or null for a root graph
+         */
+        protected Factory(Class<? extends GeneratedGraph> parentGraphClass) {
+            mParentGraphClass = parentGraphClass;
+        }
+
+        /**
+         * Gets the class of the graphs that the generated graph extends.
+         *
+         * @return the parent graph class, or null for a root graph
+         */
+        public final Class<? extends GeneratedGraph> getParentGraphClass() {
+            return mParentGraphClass;
+        }
+
+        /**
+         * Creates a graph.
+         *
+         * @param parentGraph the graph to extend, which is an instance of the parent graph class, or null for a root
+         * graph
+         * @param modules the module instances; modules of the graph that aren't among them, and that have a no-arg
+         * constructor, are created
+         * @return the graph
+         */
+        protected abstract GeneratedGraph create(GeneratedGraph parentGraph, Object[] modules);
+    }
+}
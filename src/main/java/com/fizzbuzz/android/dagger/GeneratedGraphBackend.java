@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link GraphBackend} that creates the object graphs generated at compile time by fb-android-dagger-compiler, when
+ * it is run with {@code -Afbdagger.generateGraphs=true}.  A graph is generated for each module that lists injects
+ * classes, as {@code <module class name>$$Graph}; see {@link GeneratedGraph}.
+ * <p/>
+ * Creating or extending a graph finds, among the modules passed in, the one module that a graph was generated for.
+ * The generated class is loaded, and registers itself, the first time one of its graphs is created; after that,
+ * nothing is loaded, looked up by name or linked, and injection and get call generated code directly.
+ */
+public final class GeneratedGraphBackend
+        implements GraphBackend {
+    private static final String GRAPH_SUFFIX = "$$Graph";
+
+    // the factory of each module's generated graph, or NO_FACTORY for modules that have none
+    private static final ConcurrentHashMap<Class<?>, Object> sFactories = new ConcurrentHashMap<Class<?>, Object>();
+    private static final Object NO_FACTORY = new Object();
+
+    @Override
+    public Graph createGraph(Object[] modules) {
+        return createGraph(null, modules);
+    }
+
+    /**
+     * Registers the factory of a generated graph.  Called by the generated graph class when it is initialized.
+     *
+     * @param moduleClass the module that the graph was generated for
+     * @param factory the factory
+     */
+    public static void register(Class<?> moduleClass, GeneratedGraph.Factory factory) {
+        sFactories.put(moduleClass, factory);
+    }
+
+    /**
+     * Creates a graph from modules, one of which must have a generated graph that extends the parent graph.
+     */
+    static GeneratedGraph createGraph(GeneratedGraph parentGraph, Object[] modules) {
+        GeneratedGraph.Factory factory = null;
+        Class<?> factoryModuleClass = null;
+        for (Object module : modules) {
+            GeneratedGraph.Factory moduleFactory = getFactory(module.getClass());
+            if (moduleFactory != null) {
+                if (factory != null) {
+                    throw new IllegalArgumentException("Modules " + factoryModuleClass.getName() + " and "
+                            + module.getClass().getName() + " both have a generated graph");
+                }
+                factory = moduleFactory;
+                factoryModuleClass = module.getClass();
+            }
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("None of the modules has a generated graph; was "
+                    + "fb-android-dagger-compiler run with -Afbdagger.generateGraphs=true?");
+        }
+
+        Class<?> parentGraphClass = parentGraph == null ? null : parentGraph.getClass();
+        if (factory.getParentGraphClass() != parentGraphClass) {
+            throw new IllegalArgumentException("The generated graph of " + factoryModuleClass.getName()
+                    + (factory.getParentGraphClass() == null ? " is a root graph" : " extends "
+                    + factory.getParentGraphClass().getName()) + ", not "
+                    + (parentGraphClass == null ? "a root graph" : parentGraphClass.getName()));
+        }
+        return factory.create(parentGraph, modules);
+    }
+
+    private static GeneratedGraph.Factory getFactory(Class<?> moduleClass) {
+        Object factory = sFactories.get(moduleClass);
+        if (factory == null) {
+            try {
+                // initializing the generated class registers its factory
+                Class.forName(moduleClass.getName() + GRAPH_SUFFIX, true, moduleClass.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                // not a module that lists injects classes
+            }
+            factory = sFactories.get(moduleClass);
+            if (factory == null) {
+                sFactories.putIfAbsent(moduleClass, NO_FACTORY);
+                factory = NO_FACTORY;
+            }
+        }
+        return factory == NO_FACTORY ? null : (GeneratedGraph.Factory) factory;
+    }
+}
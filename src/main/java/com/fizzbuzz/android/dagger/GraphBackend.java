@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * Creates the object graphs that objects are injected from, independently of the library that implements them.  A
+ * graph is created from an array of module instances, and extended for a narrower scope with more modules, as a
+ * component extends its parent's graph.
+ * <p/>
+ * Two backends are provided: {@link DaggerGraphBackend}, which creates Dagger's own object graphs and resolves their
+ * bindings at runtime, and {@link GeneratedGraphBackend}, which creates graphs generated at compile time by
+ * fb-android-dagger-compiler.
+ */
+public interface GraphBackend {
+    /**
+     * Creates a root object graph.
+     *
+     * @param modules the module instances
+     * @return the graph
+     */
+    public Graph createGraph(Object[] modules);
+
+    /**
+     * An object graph created by a {@link GraphBackend}.
+     */
+    public interface Graph {
+        /**
+         * Creates a graph that extends this one with more modules.
+         *
+         * @param modules the module instances
+         * @return the new graph
+         */
+        public Graph plus(Object[] modules);
+
+        /**
+         * Injects the members of a target object.
+         *
+         * @param target the target object, whose class is listed in the injects of one of this graph's modules
+         */
+        public void inject(Object target);
+
+        /**
+         * Gets an instance of a type.
+         *
+         * @param type the type, which is listed in the injects of one of this graph's modules
+         * @return the instance
+         */
+        public <T> T get(Class<T> type);
+
+        /**
+         * Checks that every binding this graph needs can be satisfied.
+         *
+         * @throws IllegalStateException if a binding can't be satisfied
+         */
+        public void validate();
+    }
+}
@@ -19,7 +19,6 @@ import dagger.Module;
 import dagger.Provides;
 
 import javax.inject.Qualifier;
-import javax.inject.Singleton;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
@@ -35,6 +34,9 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 @Module(library = true)
 public class InjectingActivityModule {
+    private static final ModulePool<InjectingActivityModule> sPool =
+            new ModulePool<InjectingActivityModule>(ModulePool.DEFAULT_CAPACITY);
+
     private android.app.Activity mActivity;
     private Injector mInjector;
 
@@ -49,13 +51,38 @@ public class InjectingActivityModule {
         mInjector = injector;
     }
 
+    // graphs prepared by ActivityGraphPrewarmer are built before their activity exists, and bound to it on adoption
+    void bind(android.app.Activity activity, Injector injector) {
+        mActivity = activity;
+        mInjector = injector;
+    }
+
+    /**
+     * Gets a module for an activity, reusing a recycled one if there is one.
+     */
+    static InjectingActivityModule obtain(android.app.Activity activity, Injector injector) {
+        InjectingActivityModule module = sPool.acquire();
+        if (module == null) {
+            return new InjectingActivityModule(activity, injector);
+        }
+        module.bind(activity, injector);
+        return module;
+    }
+
+    /**
+     * Releases this module's references and returns it to the pool.  The graph it was part of must no longer be used.
+     */
+    void recycle() {
+        bind(null, null);
+        sPool.release(this);
+    }
+
     /**
      * Provides the Activity Context
      *
      * @return the Activity Context
      */
     @Provides
-    @Singleton
     @Activity
     public android.content.Context provideActivityContext() {
         return (Context)mActivity;
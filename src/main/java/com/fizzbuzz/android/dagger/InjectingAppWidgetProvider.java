@@ -19,7 +19,7 @@ import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+import static com.fizzbuzz.android.dagger.InjectionScope.APP_WIDGET_PROVIDER;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
@@ -31,28 +31,91 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 public class InjectingAppWidgetProvider
         extends AppWidgetProvider
-        implements Injector {
+        implements ExtendedInjector {
+    private final InjectionDelegate mDelegate = new InjectionDelegate(this, APP_WIDGET_PROVIDER) {
+        @Override
+        Injector getParent() {
+            return mContext != null ? (Injector) mContext.getApplicationContext() : null;
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            InjectingAppWidgetProvider.this.collectModules(collector);
+        }
+    };
 
     private Context mContext;
-    private ObjectGraph mObjectGraph;
 
     /**
      * Creates an object graph for this AppWidgetProvider by extending the application-scope object graph with the
      * modules returned by {@link #getModules()}.
      * <p/>
      * Injects this AppWidgetProvider using the created graph.
+     * <p/>
+     * If {@link #isObjectGraphCacheEnabled()} returns true, the graph is reused from an earlier broadcast where
+     * possible, and the references to the Context and graph are released once the broadcast has been dispatched.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
         mContext = context;
 
-        // extend the application-scope object graph with the modules for this AppWidgetProvider
-        mObjectGraph = ((Injector) context.getApplicationContext()).getObjectGraph().plus(getModules().toArray());
+        if (isObjectGraphCacheEnabled()) {
+            ObjectGraphCache.Entry entry = mDelegate.getCachedObjectGraph(CachedAppWidgetProviderModule.class);
+            CachedAppWidgetProviderModule module = (CachedAppWidgetProviderModule) entry.componentModule;
+            synchronized (entry) {
+                if (module != null) {
+                    module.bind(context, this, this);
+                }
+                try {
+                    mDelegate.injectComponent(entry);
+                    super.onReceive(context, intent);
+                } finally {
+                    if (module != null) {
+                        module.bind(null, null, null);
+                    }
+                    mContext = null;
+                    mDelegate.destroy();
+                }
+            }
+            return;
+        }
 
-        // then inject ourselves
-        mObjectGraph.inject(this);
+        // each broadcast gets a new graph; unless it is created lazily, extend the application-scope graph and inject
+        // ourselves now
+        mDelegate.destroy();
+        if (!isObjectGraphLazy()) {
+            mDelegate.attach();
+        }
 
         super.onReceive(context, intent);
+
+        if (isModuleRecyclingEnabled()) {
+            mDelegate.destroy();
+        }
+    }
+
+    /**
+     * Returns whether the object graph for this AppWidgetProvider class should be cached and reused across
+     * broadcasts.  When enabled, modules are only collected when the graph is first built (or when the
+     * application-scope graph has changed), so its modules must not hold per-broadcast state.  The Context,
+     * AppWidgetProvider, and Injector qualified with {@link InjectingAppWidgetProviderModule.AppWidgetProvider} are
+     * swapped in for each broadcast, and are not singletons.  The object graph is only available while the broadcast
+     * is being dispatched to onUpdate, onDeleted, etc.
+     * <p/>
+     * AppWidgetProvider-scope singletons, on the other hand, are shared by all the broadcasts that reuse the graph:
+     * they are created for the first broadcast that needs them, and live as long as the cached graph.  They must
+     * therefore not keep the Context, AppWidgetProvider or Injector of the broadcast they were created for; inject a
+     * Provider of these instead.
+     * <p/>
+     * The graph is only cached if its modules are collected by {@link #collectModules(ModuleCollector)}'s default
+     * implementation; if a subclass overrides {@link #getModules()}, each broadcast gets a new graph.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to cache the object graph
+     */
+    protected boolean isObjectGraphCacheEnabled() {
+        return false;
     }
 
     /**
@@ -62,7 +125,7 @@ public class InjectingAppWidgetProvider
      */
     @Override
     public ObjectGraph getObjectGraph() {
-        return mObjectGraph;
+        return mDelegate.getObjectGraph(isObjectGraphLazy());
     }
 
     /**
@@ -71,13 +134,106 @@ public class InjectingAppWidgetProvider
      * @param target the target object
      */
     public void inject(Object target) {
-        checkState(mObjectGraph != null, "object graph must be initialized prior to calling inject");
-        mObjectGraph.inject(target);
+        mDelegate.inject(target, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of an array of target objects using this AppWidgetProvider's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Object[] targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of a collection of target objects using this AppWidgetProvider's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Iterable<?> targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets an instance of a type from this AppWidgetProvider's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    public <T> T get(Class<T> type) {
+        return mDelegate.get(type, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets this AppWidgetProvider's graph as created by the application's {@link GraphBackend}.
+     *
+     * @return the graph
+     */
+    public GraphBackend.Graph getGraph() {
+        return mDelegate.getGraph(isObjectGraphLazy());
+    }
+
+    /**
+     * Returns whether this AppWidgetProvider's object graph should be created on first use rather than in
+     * onReceive.  When enabled, the graph is created, and this AppWidgetProvider is injected, the first time {@link
+     * #getObjectGraph()} or {@link #inject(Object)} is called while a broadcast is being handled.  Lazy creation does
+     * not apply when {@link #isObjectGraphCacheEnabled()} returns true.  Subclasses that use their own injected fields
+     * should call {@code inject(this)} before doing so.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to create the object graph on first use
+     */
+    protected boolean isObjectGraphLazy() {
+        return false;
+    }
+
+    /**
+     * Returns whether this AppWidgetProvider's own module should be taken from, and returned to, a bounded pool of
+     * module instances, rather than allocated for each instance.  The module is recycled once onReceive has dispatched
+     * the broadcast, after which neither this AppWidgetProvider's object graph nor anything holding a reference to it
+     * may be used.  When the object graph is cached (see {@link #isObjectGraphCacheEnabled()}), its module is already
+     * reused, and this has no effect.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to recycle this AppWidgetProvider's module
+     */
+    protected boolean isModuleRecyclingEnabled() {
+        return false;
+    }
+
+    /**
+     * Adds the dagger modules to be included in this AppWidgetProvider's object graph to a collector.  Subclasses that
+     * override this method should call super.collectModules(collector) and then add their own modules.  Unlike {@link
+     * #getModules()}, this allocates no list, and the collector is reused from one graph to the next.
+     * <p/>
+     * The default implementation adds the modules returned by getModules() if a subclass overrides it, and otherwise an
+     * InjectingAppWidgetProviderModule (or, when the object graph is cached, a module providing the same bindings for
+     * whichever broadcast is being handled), followed by the modules declared with {@link StaticModules} on this
+     * class.
+     *
+     * @param collector the collector
+     */
+    protected void collectModules(ModuleCollector collector) {
+        if (ModuleCollector.overridesGetModules(getClass(), InjectingAppWidgetProvider.class)) {
+            collector.addAll(getModules());
+        } else if (isObjectGraphCacheEnabled()) {
+            collector.add(new CachedAppWidgetProviderModule(mContext, this, this));
+        } else if (isModuleRecyclingEnabled()) {
+            collector.add(mDelegate.recycleOnDestroy(InjectingAppWidgetProviderModule.obtain(mContext, this, this)));
+        } else {
+            collector.add(new InjectingAppWidgetProviderModule(mContext, this, this));
+        }
+        collector.addStaticModules(getClass());
     }
 
     /**
      * Returns the list of dagger modules to be included in this AppWidgetProvider's object graph.  Subclasses that
      * override this method should add to the list returned by super.getModules().
+     * <p/>
+     * Subclasses may override {@link #collectModules(ModuleCollector)} instead.
      *
      * @return the list of modules
      */
@@ -92,6 +248,9 @@ public class InjectingAppWidgetProvider
      */
     @Module(library = true)
     public static class InjectingAppWidgetProviderModule {
+        private static final ModulePool<InjectingAppWidgetProviderModule> sPool =
+                new ModulePool<InjectingAppWidgetProviderModule>(ModulePool.DEFAULT_CAPACITY);
+
         Context mContext;
         android.appwidget.AppWidgetProvider mAppWidgetProvider;
         Injector mInjector;
@@ -107,6 +266,30 @@ public class InjectingAppWidgetProvider
             mInjector = injector;
         }
 
+        // swaps in the references for the current broadcast when this module is recycled
+        void bind(Context context, android.appwidget.AppWidgetProvider appWidgetProvider, Injector injector) {
+            mContext = context;
+            mAppWidgetProvider = appWidgetProvider;
+            mInjector = injector;
+        }
+
+        // gets a module for a broadcast, reusing a recycled one if there is one
+        static InjectingAppWidgetProviderModule obtain(Context context,
+                android.appwidget.AppWidgetProvider appWidgetProvider, Injector injector) {
+            InjectingAppWidgetProviderModule module = sPool.acquire();
+            if (module == null) {
+                return new InjectingAppWidgetProviderModule(context, appWidgetProvider, injector);
+            }
+            module.bind(context, appWidgetProvider, injector);
+            return module;
+        }
+
+        // releases this module's references and returns it to the pool; the graph it was part of must no longer be used
+        void recycle() {
+            bind(null, null, null);
+            sPool.release(this);
+        }
+
         /**
          * Provides the Context for the AppWidgetProvider associated with this graph.
          *
@@ -153,4 +336,47 @@ public class InjectingAppWidgetProvider
         public @interface AppWidgetProvider {
         }
     }
+
+    /**
+     * Provides the same bindings as {@link InjectingAppWidgetProviderModule} to a cached object graph, for whichever
+     * broadcast is currently being handled.
+     */
+    @Module(library = true)
+    static class CachedAppWidgetProviderModule {
+        private Context mContext;
+        private android.appwidget.AppWidgetProvider mAppWidgetProvider;
+        private Injector mInjector;
+
+        CachedAppWidgetProviderModule(Context context, android.appwidget.AppWidgetProvider appWidgetProvider,
+                Injector injector) {
+            bind(context, appWidgetProvider, injector);
+        }
+
+        // swaps in the references for the current broadcast
+        void bind(Context context, android.appwidget.AppWidgetProvider appWidgetProvider, Injector injector) {
+            mContext = context;
+            mAppWidgetProvider = appWidgetProvider;
+            mInjector = injector;
+        }
+
+        // note: the bindings below are deliberately not singletons, so that they reflect whatever references are
+        // currently bound.
+
+        @Provides
+        @InjectingAppWidgetProviderModule.AppWidgetProvider
+        Context provideAppWidgetProviderContext() {
+            return mContext;
+        }
+
+        @Provides
+        android.appwidget.AppWidgetProvider provideAppWidgetProvider() {
+            return mAppWidgetProvider;
+        }
+
+        @Provides
+        @InjectingAppWidgetProviderModule.AppWidgetProvider
+        Injector provideAppWidgetProviderInjector() {
+            return mInjector;
+        }
+    }
 }
\ No newline at end of file
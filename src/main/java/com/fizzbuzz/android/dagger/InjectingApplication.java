@@ -16,10 +16,11 @@ package com.fizzbuzz.android.dagger;
 
 import android.app.Application;
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
 import dagger.Module;
 import dagger.ObjectGraph;
 import dagger.Provides;
+import dagger.internal.FailoverLoader;
+import dagger.internal.Loader;
 
 import javax.inject.Qualifier;
 import javax.inject.Singleton;
@@ -28,7 +29,13 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import static com.fizzbuzz.android.dagger.InjectionPhase.CREATE_GRAPH;
+import static com.fizzbuzz.android.dagger.InjectionPhase.GET_MODULES;
+import static com.fizzbuzz.android.dagger.InjectionPhase.INJECT;
+import static com.fizzbuzz.android.dagger.InjectionPhase.VALIDATE;
+import static com.fizzbuzz.android.dagger.InjectionScope.APPLICATION;
 import static com.fizzbuzz.android.dagger.Preconditions.checkState;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
@@ -40,10 +47,18 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 public abstract class InjectingApplication
         extends Application
-        implements Injector {
+        implements ExtendedInjector {
+
+    private static final long DEFAULT_OBJECT_GRAPH_TIMEOUT_MILLIS = 10000;
 
     private List<Object> mSeedModules = new ArrayList<Object>();
-    private ObjectGraph mObjectGraph;
+    private final ObjectGraphGate mObjectGraphGate = new ObjectGraphGate();
+    private volatile ObjectGraph mObjectGraph;
+    private volatile BindingCache mBindingCache;
+    // the graph, when it is created by a GraphBackend other than Dagger's
+    private volatile GraphBackend.Graph mGraph;
+    // the thread creating the object graph asynchronously, which uses the graph before the gate opens
+    private volatile Thread mObjectGraphThread;
 
     public void addSeedModules(List<Object> modules) {
         mSeedModules.addAll(modules);
@@ -52,30 +67,221 @@ public abstract class InjectingApplication
     /**
      * Creates an object graph for this Application using the modules returned by {@link #getModules()}.
      * <p/>
-     * Injects this Application using the created graph.
+     * Injects this Application using the created graph, and then starts instantiating the singletons whose provider
+     * methods are marked {@link WarmUp}.
+     * <p/>
+     * If {@link #isAsyncObjectGraphCreationEnabled()} returns true, the graph is created and this Application is
+     * injected on a background thread, and this method returns without waiting for it.
      */
     @Override
     public void onCreate() {
         super.onCreate();
 
+        if (isAsyncObjectGraphCreationEnabled()) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        createObjectGraph();
+                    } catch (Throwable t) {
+                        mObjectGraphGate.fail(t);
+                    }
+                }
+            }, "InjectingApplication-graph");
+            mObjectGraphThread = thread;
+            thread.start();
+        } else {
+            createObjectGraph();
+        }
+    }
+
+    /**
+     * Discards activity graphs prepared by {@link ActivityGraphPrewarmer}, passes the callback on to the application
+     * graph's singletons that implement ComponentCallbacks2, and drops its {@link Evictable} singletons whose trim
+     * level is at most level.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        ActivityGraphPrewarmer.getInstance().evict();
+        MemoryTrimming.onTrimMemory(mObjectGraph, level);
+        super.onTrimMemory(level);
+    }
+
+    /**
+     * Discards activity graphs prepared by {@link ActivityGraphPrewarmer}, passes the callback on to the application
+     * graph's singletons that implement ComponentCallbacks, and drops all its {@link Evictable} singletons.
+     */
+    @Override
+    public void onLowMemory() {
+        ActivityGraphPrewarmer.getInstance().evict();
+        MemoryTrimming.onLowMemory(mObjectGraph);
+        super.onLowMemory();
+    }
+
+    private void createObjectGraph() {
+        GraphBackend backend = getGraphBackend();
+        if (!(backend instanceof DaggerGraphBackend)) {
+            createBackendGraph(backend);
+            return;
+        }
+
         // initialize object graph and inject this
-        mObjectGraph = ObjectGraph.create(getModules().toArray());
-        mObjectGraph.inject(this);
+        ObjectGraph objectGraph;
+        WarmingLoader warmingLoader = null;
+        ModuleCollector collector = ModuleCollector.obtain();
+        try {
+            Object[] modules = gatherModules(collector);
+
+            InjectionTracing.begin(this, APPLICATION, CREATE_GRAPH);
+            try {
+                Loader loader = new FailoverLoader();
+                if (isScopeAccountingEnabled()) {
+                    loader = new AccountingLoader(loader);
+                }
+                warmingLoader = new WarmingLoader(loader);
+                objectGraph = DaggerInternals.createWith(new EvictingLoader(warmingLoader), modules);
+                if (objectGraph == null) {
+                    warmingLoader = null;
+                    objectGraph = ObjectGraph.create(modules);
+                }
+            } finally {
+                InjectionTracing.end(this, APPLICATION, CREATE_GRAPH);
+            }
+        } finally {
+            collector.recycle();
+        }
+
+        // publish the graph before injecting this, since the objects being injected may use this as their Injector;
+        // other threads waiting for the graph are let through once this has been injected
+        BindingCache bindingCache = new BindingCache(objectGraph);
+        mBindingCache = bindingCache;
+        mObjectGraph = objectGraph;
+
+        InjectionTracing.begin(this, APPLICATION, INJECT);
+        try {
+            objectGraph.inject(this);
+        } finally {
+            InjectionTracing.end(this, APPLICATION, INJECT);
+        }
+
+        if (isObjectGraphValidationEnabled()) {
+            InjectionTracing.begin(this, APPLICATION, VALIDATE);
+            try {
+                objectGraph.validate(); // validate dagger's object graph
+            } finally {
+                InjectionTracing.end(this, APPLICATION, VALIDATE);
+            }
+        }
 
-        // debug mode stuff
-        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 1) {
-            mObjectGraph.validate(); // validate dagger's object graph
+        if (isConcurrentInjectionEnabled()) {
+            bindingCache.freeze();
+        }
+        mObjectGraphThread = null;
+        mObjectGraphGate.open(objectGraph);
+        ObjectGraphLeakTracker.getInstance().track(this, objectGraph);
+
+        if (warmingLoader != null) {
+            warmingLoader.warmUp(objectGraph);
+        }
+    }
+
+    // creates the graph with a GraphBackend other than Dagger's, in which case there is no object graph
+    private void createBackendGraph(GraphBackend backend) {
+        GraphBackend.Graph graph;
+        ModuleCollector collector = ModuleCollector.obtain();
+        try {
+            Object[] modules = gatherModules(collector);
+
+            InjectionTracing.begin(this, APPLICATION, CREATE_GRAPH);
+            try {
+                graph = backend.createGraph(modules);
+            } finally {
+                InjectionTracing.end(this, APPLICATION, CREATE_GRAPH);
+            }
+        } finally {
+            collector.recycle();
+        }
+        mGraph = graph;
+
+        InjectionTracing.begin(this, APPLICATION, INJECT);
+        try {
+            graph.inject(this);
+        } finally {
+            InjectionTracing.end(this, APPLICATION, INJECT);
+        }
+
+        if (isObjectGraphValidationEnabled()) {
+            InjectionTracing.begin(this, APPLICATION, VALIDATE);
+            try {
+                graph.validate();
+            } finally {
+                InjectionTracing.end(this, APPLICATION, VALIDATE);
+            }
+        }
+
+        mObjectGraphThread = null;
+        mObjectGraphGate.open(null);
+    }
+
+    private Object[] gatherModules(ModuleCollector collector) {
+        InjectionTracing.begin(this, APPLICATION, GET_MODULES);
+        try {
+            collectModules(collector);
+            return collector.borrowArray();
+        } finally {
+            InjectionTracing.end(this, APPLICATION, GET_MODULES);
         }
     }
 
     /**
-     * Gets this Application's object graph.
+     * Gets this Application's object graph.  If the graph is being created asynchronously and is not ready yet, this
+     * method blocks until it is, for up to {@link #getObjectGraphTimeoutMillis()} milliseconds.  The graph is ready
+     * once this Application has been injected; until then, it is only available to the objects being injected.
      *
-     * @return the object graph
+     * @return the object graph, or null if it is created by a {@link GraphBackend} other than Dagger's
+     * @throws IllegalStateException if the graph could not be created, or was not ready before the timeout
      */
     @Override
     public ObjectGraph getObjectGraph() {
-        return mObjectGraph;
+        ObjectGraph objectGraph = mObjectGraph;
+        if (isAsyncObjectGraphCreationEnabled() && !mObjectGraphGate.isOpen()
+                && Thread.currentThread() != mObjectGraphThread) {
+            try {
+                objectGraph = mObjectGraphGate.await(getObjectGraphTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the object graph", e);
+            }
+            checkState(mObjectGraphGate.isOpen(), "timed out waiting for the object graph");
+        }
+        return objectGraph;
+    }
+
+    /**
+     * Gets this Application's graph as created by {@link #getGraphBackend()}, waiting for it as
+     * {@link #getObjectGraph()} does.
+     *
+     * @return the graph
+     * @throws IllegalStateException if the graph could not be created, or was not ready before the timeout
+     */
+    @Override
+    public GraphBackend.Graph getGraph() {
+        ObjectGraph objectGraph = getObjectGraph();
+        GraphBackend.Graph graph = mGraph;
+        if (graph == null && objectGraph != null) {
+            graph = new DaggerGraphBackend.DaggerGraph(mBindingCache);
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the readiness gate for this Application's object graph, which can be used to wait for or be notified of
+     * the completion of asynchronous graph creation.
+     *
+     * @return the gate
+     */
+    public ObjectGraphGate getObjectGraphGate() {
+        return mObjectGraphGate;
     }
 
     /**
@@ -84,13 +290,178 @@ public abstract class InjectingApplication
      * @param target the target object
      */
     public void inject(Object target) {
-        checkState(mObjectGraph != null, "object graph must be initialized prior to calling inject");
-        mObjectGraph.inject(target);
+        ObjectGraph objectGraph = getObjectGraph();
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            graph.inject(target);
+            return;
+        }
+        checkState(objectGraph != null, "object graph must be initialized prior to calling inject");
+        mBindingCache.inject(target);
+    }
+
+    /**
+     * Injects each of an array of target objects using this Application's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Object[] targets) {
+        ObjectGraph objectGraph = getObjectGraph();
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            for (Object target : targets) {
+                graph.inject(target);
+            }
+            return;
+        }
+        checkState(objectGraph != null, "object graph must be initialized prior to calling injectAll");
+        mBindingCache.injectAll(targets);
+    }
+
+    /**
+     * Injects each of a collection of target objects using this Application's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Iterable<?> targets) {
+        ObjectGraph objectGraph = getObjectGraph();
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            for (Object target : targets) {
+                graph.inject(target);
+            }
+            return;
+        }
+        checkState(objectGraph != null, "object graph must be initialized prior to calling injectAll");
+        mBindingCache.injectAll(targets);
+    }
+
+    /**
+     * Gets an instance of a type from this Application's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    public <T> T get(Class<T> type) {
+        ObjectGraph objectGraph = getObjectGraph();
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            return graph.get(type);
+        }
+        checkState(objectGraph != null, "object graph must be initialized prior to calling get");
+        return mBindingCache.get(type);
+    }
+
+    /**
+     * Returns whether this Application's object graph should be created on a background thread, so that
+     * {@link #onCreate()} returns without waiting for it.  Components that need the graph wait for it to become ready
+     * when they call {@link #getObjectGraph()}.  Subclasses that enable this must make sure that {@link #getModules()}
+     * and the construction of their modules are safe to run off the main thread.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to create the object graph asynchronously
+     */
+    protected boolean isAsyncObjectGraphCreationEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns whether this Application's object graph is used to inject objects from many threads at once.  When
+     * enabled, the bindings of all the classes listed in the injects of this Application's modules are resolved as
+     * soon as the graph has been created, so that {@link #inject(Object)}, {@link #injectAll(Object[])} and
+     * {@link #get(Class)} don't contend for dagger's linker lock when those classes are first injected.  See also
+     * {@link PerThreadObjectGraph}, for bindings that must not be shared between threads.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to resolve bindings up front
+     */
+    protected boolean isConcurrentInjectionEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns whether this Application's object graph should be validated at runtime, once it has been created.
+     * Runtime validation only sees the application-scope graph, not the activity, fragment, service and receiver graphs
+     * that extend it, and it adds to startup time.  The fb-android-dagger-compiler annotation processor validates the
+     * whole hierarchy of module chains at compile time instead.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to call {@link ObjectGraph#validate()} on the object graph
+     */
+    protected boolean isObjectGraphValidationEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns whether the object graph, and the graphs of all components, count the bindings they link and the
+     * instances they provide, for {@link ScopeAccounting#of(Injector)}.  Counting adds a little to the cost of every
+     * provision, so this is meant for debug and profiling builds.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to enable scope accounting
+     */
+    protected boolean isScopeAccountingEnabled() {
+        return false;
+    }
+
+    /**
+     * Gets the backend that creates this Application's graph, and through it the graphs of all the components that
+     * extend it.
+     * <p/>
+     * With a {@link DaggerGraphBackend}, the graphs are Dagger object graphs.  With any other backend, such as
+     * {@link GeneratedGraphBackend}, {@link #getObjectGraph()} returns null and the graphs are reached through {@link
+     * #getGraph()}; injection and get still work through the Injecting... components, but the features that depend on
+     * Dagger's object graphs are not available: scope accounting, {@link WarmUp} singletons, {@link Evictable}
+     * singletons, concurrent injection, leak tracking, cached receiver graphs, retained and prewarmed activity graphs,
+     * {@link InjectingRequestService} and {@link PerThreadObjectGraph}.
+     * <p/>
+     * The default implementation returns a DaggerGraphBackend.
+     *
+     * @return the graph backend
+     */
+    protected GraphBackend getGraphBackend() {
+        return new DaggerGraphBackend();
+    }
+
+    /**
+     * Returns the maximum time that {@link #getObjectGraph()} waits for an asynchronously created object graph.
+     *
+     * @return the timeout, in milliseconds
+     */
+    protected long getObjectGraphTimeoutMillis() {
+        return DEFAULT_OBJECT_GRAPH_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Adds the dagger modules to be included in this Application's object graph to a collector.  Subclasses that
+     * override this method should call super.collectModules(collector) and then add their own modules.  Unlike {@link
+     * #getModules()}, this allocates no list, and the collector is reused from one graph to the next.
+     * <p/>
+     * The default implementation adds the modules returned by getModules() if a subclass overrides it, and otherwise
+     * the seed modules and an InjectingApplicationModule, followed by the modules declared with {@link StaticModules}
+     * on this class.
+     *
+     * @param collector the collector
+     */
+    protected void collectModules(ModuleCollector collector) {
+        if (ModuleCollector.overridesGetModules(getClass(), InjectingApplication.class)) {
+            collector.addAll(getModules());
+        } else {
+            collector.addAll(mSeedModules);
+            collector.add(new InjectingApplicationModule(this, this));
+        }
+        collector.addStaticModules(getClass());
     }
 
     /**
      * Returns the list of dagger modules to be included in this Application's object graph.  Subclasses that override
      * this method should add to the list returned by super.getModules().
+     * <p/>
+     * Subclasses may override {@link #collectModules(ModuleCollector)} instead.
      *
      * @return the list of modules
      */
@@ -155,6 +526,17 @@ public abstract class InjectingApplication
             return mInjector;
         }
 
+        /**
+         * Provides the registry of injection metrics, so that its snapshots can be exported
+         *
+         * @return the metrics registry
+         */
+        @Provides
+        @Singleton
+        public InjectionMetrics provideInjectionMetrics() {
+            return InjectionMetrics.getInstance();
+        }
+
         /**
          * Defines an qualifier annotation which can be used in conjunction with a type to identify dependencies within
          * this module's object graph.
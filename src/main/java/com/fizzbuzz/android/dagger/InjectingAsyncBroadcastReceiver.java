@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzbuzz.android.dagger.InjectionScope.BROADCAST_RECEIVER;
+
+/**
+ * An {@link InjectingBroadcastReceiver} that keeps its broadcasts off the main thread.  On API 11 and later, onReceive
+ * calls goAsync, and then extends the application-scope graph, injects this BroadcastReceiver and calls {@link
+ * #onReceiveInjected(Context, Intent)} on a background thread, finishing the broadcast when that returns.  Earlier
+ * versions do all of this on the main thread, as InjectingBroadcastReceiver does.
+ * <p/>
+ * Each broadcast has a time budget, {@link #getReceiveBudgetMillis()}.  If it is handled within the budget, it is
+ * finished as soon as onReceiveInjected returns; otherwise it is finished when the budget runs out, so that the system
+ * doesn't consider the receiver hung, and the thread handling it is interrupted.  How much of its budget each broadcast
+ * used is recorded in {@link InjectionMetrics}, when enabled, as the budget histogram of this receiver's class.
+ * <p/>
+ * An exception thrown while handling a broadcast in the background is rethrown on the main thread, just as it would
+ * have been had the broadcast been handled there, unless the broadcast had already run out of its budget and been
+ * interrupted, in which case it is logged.
+ * <p/>
+ * Because the broadcast is handled after goAsync, the result of an ordered broadcast can't be set, read or aborted
+ * from onReceiveInjected on API 11 and later: setResultCode, getResultData, abortBroadcast and the like are not
+ * available once goAsync has been called.  Receivers of ordered broadcasts whose result matters should extend
+ * InjectingBroadcastReceiver instead.
+ * <p/>
+ * Broadcasts delivered to the same receiver instance, as to a receiver registered with registerReceiver, are handled
+ * one at a time.  Unless the object graph is cached, each broadcast's graph and Context are released as soon as
+ * onReceiveInjected returns, so they are not kept by the receiver once its broadcast has been finished.
+ */
+public abstract class InjectingAsyncBroadcastReceiver
+        extends InjectingBroadcastReceiver {
+    private static final long DEFAULT_RECEIVE_BUDGET_MILLIS = 8000;
+
+    private static ExecutorService sExecutor;
+
+    /**
+     * Handles the broadcast on a background thread, in {@link #onReceiveInjected(Context, Intent)}, after creating the
+     * object graph and injecting this BroadcastReceiver as
+     * {@link InjectingBroadcastReceiver#onReceive(Context, Intent)} does.
+     */
+    @Override
+    public final void onReceive(Context context, Intent intent) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            receive(context, intent);
+            return;
+        }
+        receiveAsync(context, intent);
+    }
+
+    /**
+     * Called on a background thread, once this BroadcastReceiver has been injected, to handle the broadcast.  Since the
+     * broadcast is finished when its budget runs out, long-running work should check for interruption.  On API 11 and
+     * later, implementations must not set, get or abort the result of an ordered broadcast.
+     *
+     * @param context the Context in which the receiver is running
+     * @param intent the Intent being received
+     */
+    @Override
+    protected abstract void onReceiveInjected(Context context, Intent intent);
+
+    /**
+     * Returns how long a broadcast may take before it is finished without waiting for it.  It should leave some room
+     * below the system's own timeout, which is 10 seconds for foreground broadcasts.
+     * <p/>
+     * The default implementation returns 8000.
+     *
+     * @return the budget, in milliseconds
+     */
+    protected long getReceiveBudgetMillis() {
+        return DEFAULT_RECEIVE_BUDGET_MILLIS;
+    }
+
+    /**
+     * Gets the executor on which broadcasts are handled.
+     * <p/>
+     * The default implementation returns a pool of background threads, one per available processor, shared by all
+     * InjectingAsyncBroadcastReceivers.
+     *
+     * @return the executor
+     */
+    protected ExecutorService getReceiveExecutor() {
+        synchronized (InjectingAsyncBroadcastReceiver.class) {
+            if (sExecutor == null) {
+                sExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                        new NamedThreadFactory("InjectingAsyncBroadcastReceiver-", true));
+            }
+            return sExecutor;
+        }
+    }
+
+    // runs in the calling thread; broadcasts to the same instance are serialized, since they share its graph
+    private synchronized void receive(Context context, Intent intent) {
+        super.onReceive(context, intent);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void receiveAsync(final Context context, final Intent intent) {
+        final PendingResult result = goAsync();
+        receiveAsync(getClass(), intent, new Runnable() {
+            @Override
+            public void run() {
+                receive(context, intent);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(getReceiveBudgetMillis()), getReceiveExecutor(),
+                PendingBroadcast.getWatchdog(), PendingBroadcast.MAIN_THREAD);
+    }
+
+    /**
+     * Handles a broadcast on an executor, finishing it when its handling returns or its budget runs out, whichever
+     * comes first.
+     *
+     * @param receiverClass the class of the receiver, under which budget use is recorded
+     * @param intent the Intent being received
+     * @param receive handles the broadcast
+     * @param finish finishes the broadcast
+     * @param budgetNanos the budget
+     * @param executor the executor on which the broadcast is handled
+     * @param watchdog the executor on which the broadcast is finished if its budget runs out
+     * @param mainThread the executor on which a failure to handle the broadcast is rethrown
+     */
+    static void receiveAsync(Class<?> receiverClass, final Intent intent, final Runnable receive, Runnable finish,
+            long budgetNanos, ExecutorService executor, ScheduledExecutorService watchdog, final Executor mainThread) {
+        final PendingBroadcast pending = new PendingBroadcast(finish, receiverClass, BROADCAST_RECEIVER, budgetNanos);
+        final Future<?> work = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Throwable failure = null;
+                try {
+                    receive.run();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                boolean finishedInTime = pending.finish();
+                boolean interrupted = Thread.interrupted();
+                if (failure == null) {
+                    return;
+                }
+                if (finishedInTime || !interrupted) {
+                    PendingBroadcast.rethrow(mainThread, failure);
+                } else {
+                    // the watchdog gave up on the broadcast and interrupted us, which is likely what made it fail
+                    Log.w(LoggingManager.TAG, "broadcast failed after running out of its budget: " + intent, failure);
+                }
+            }
+        });
+        pending.watch(watchdog, new Runnable() {
+            @Override
+            public void run() {
+                work.cancel(true);
+            }
+        });
+    }
+}
@@ -28,8 +28,9 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+import static com.fizzbuzz.android.dagger.InjectionScope.BROADCAST_RECEIVER;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
@@ -41,26 +42,138 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 public class InjectingBroadcastReceiver
         extends BroadcastReceiver
-        implements Injector {
+        implements ExtendedInjector {
+    private static final ConcurrentHashMap<Class<?>, Boolean> sOverridesOnReceiveInjected =
+            new ConcurrentHashMap<Class<?>, Boolean>();
+
+    private final InjectionDelegate mDelegate = new InjectionDelegate(this, BROADCAST_RECEIVER) {
+        @Override
+        Injector getParent() {
+            return mContext != null ? (Injector) mContext.getApplicationContext() : null;
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            InjectingBroadcastReceiver.this.collectModules(collector);
+        }
+    };
 
     private Context mContext;
-    private ObjectGraph mObjectGraph;
 
     /**
      * Creates an object graph for this BroadcastReceiver by extending the application-scope object graph with the
      * modules returned by {@link #getModules()}.
      * <p/>
      * Injects this BroadcastReceiver using the created graph.
+     * <p/>
+     * If a subclass overrides {@link #onReceiveInjected(Context, Intent)}, it is then called to handle the broadcast,
+     * and the references to the Context and graph are released before this method returns.  Otherwise they are kept
+     * until the next broadcast, so that a subclass that overrides this method can use the graph once this
+     * implementation returns; a receiver registered with registerReceiver that does so keeps its last broadcast's graph
+     * and Context for as long as it stays registered.
+     * <p/>
+     * If {@link #isObjectGraphCacheEnabled()} returns true, the graph is reused from an earlier broadcast where
+     * possible, onReceiveInjected is always called, and the references are always released.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
         mContext = context;
 
-        // extend the application-scope object graph with the modules for this broadcast receiver
-        mObjectGraph = ((Injector) context.getApplicationContext()).getObjectGraph().plus(getModules().toArray());
+        if (isObjectGraphCacheEnabled()) {
+            ObjectGraphCache.Entry entry = mDelegate.getCachedObjectGraph(CachedBroadcastReceiverModule.class);
+            CachedBroadcastReceiverModule module = (CachedBroadcastReceiverModule) entry.componentModule;
+            synchronized (entry) {
+                if (module != null) {
+                    module.bind(context, this, this);
+                }
+                try {
+                    mDelegate.injectComponent(entry);
+                    onReceiveInjected(context, intent);
+                } finally {
+                    if (module != null) {
+                        module.bind(null, null, null);
+                    }
+                    mContext = null;
+                    mDelegate.destroy();
+                }
+            }
+            return;
+        }
+
+        // each broadcast gets a new graph; unless it is created lazily, extend the application-scope graph and inject
+        // ourselves now
+        mDelegate.destroy();
+        if (!isObjectGraphLazy()) {
+            mDelegate.attach();
+        }
 
-        // then inject ourselves
-        mObjectGraph.inject(this);
+        if (overridesOnReceiveInjected(getClass())) {
+            try {
+                onReceiveInjected(context, intent);
+            } finally {
+                mContext = null;
+                mDelegate.destroy();
+            }
+        }
+    }
+
+    /**
+     * Called by {@link #onReceive(Context, Intent)} after this BroadcastReceiver has been injected.  Subclasses should
+     * handle the broadcast here rather than in an override of onReceive, since the object graph, and the Context it
+     * provides, are then released as soon as this call returns.  Subclasses that enable the cache must do so.
+     * <p/>
+     * The default implementation does nothing.
+     *
+     * @param context the Context in which the receiver is running
+     * @param intent the Intent being received
+     */
+    protected void onReceiveInjected(Context context, Intent intent) {
+    }
+
+    /**
+     * Returns whether a receiver class, or one of its superclasses below InjectingBroadcastReceiver, overrides
+     * onReceiveInjected, and so handles its broadcasts there rather than in an override of onReceive.
+     */
+    static boolean overridesOnReceiveInjected(Class<?> receiverClass) {
+        Boolean result = sOverridesOnReceiveInjected.get(receiverClass);
+        if (result == null) {
+            result = Boolean.FALSE;
+            for (Class<?> cls = receiverClass; cls != InjectingBroadcastReceiver.class && cls != null;
+                    cls = cls.getSuperclass()) {
+                try {
+                    cls.getDeclaredMethod("onReceiveInjected", Context.class, Intent.class);
+                    result = Boolean.TRUE;
+                    break;
+                } catch (NoSuchMethodException e) {
+                    // keep looking
+                }
+            }
+            sOverridesOnReceiveInjected.put(receiverClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the object graph for this BroadcastReceiver class should be cached and reused across
+     * broadcasts.  When enabled, modules are only collected when the graph is first built (or when the
+     * application-scope graph has changed), so its modules must not hold per-broadcast state.  The Context,
+     * BroadcastReceiver, and Injector qualified with {@link InjectingBroadcastReceiverModule.BroadcastReceiver} are
+     * swapped in for each broadcast, and are not singletons.
+     * <p/>
+     * Receiver-scope singletons, on the other hand, are shared by all the broadcasts that reuse the graph: they are
+     * created for the first broadcast that needs them, and live as long as the cached graph.  They must therefore not
+     * keep the Context, BroadcastReceiver or Injector of the broadcast they were created for; inject a Provider of
+     * these instead.
+     * <p/>
+     * The graph is only cached if its modules are collected by {@link #collectModules(ModuleCollector)}'s default
+     * implementation; if a subclass overrides {@link #getModules()}, each broadcast gets a new graph.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to cache the object graph
+     */
+    protected boolean isObjectGraphCacheEnabled() {
+        return false;
     }
 
     /**
@@ -70,7 +183,7 @@ public class InjectingBroadcastReceiver
      */
     @Override
     public ObjectGraph getObjectGraph() {
-        return mObjectGraph;
+        return mDelegate.getObjectGraph(isObjectGraphLazy());
     }
 
     /**
@@ -79,13 +192,89 @@ public class InjectingBroadcastReceiver
      * @param target the target object
      */
     public void inject(Object target) {
-        checkState(mObjectGraph != null, "object graph must be initialized prior to calling inject");
-        mObjectGraph.inject(target);
+        mDelegate.inject(target, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of an array of target objects using this BroadcastReceiver's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Object[] targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of a collection of target objects using this BroadcastReceiver's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Iterable<?> targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets an instance of a type from this BroadcastReceiver's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    public <T> T get(Class<T> type) {
+        return mDelegate.get(type, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets this BroadcastReceiver's graph as created by the application's {@link GraphBackend}.
+     *
+     * @return the graph
+     */
+    public GraphBackend.Graph getGraph() {
+        return mDelegate.getGraph(isObjectGraphLazy());
+    }
+
+    /**
+     * Returns whether this BroadcastReceiver's object graph should be created on first use rather than in
+     * onReceive.  When enabled, the graph is created, and this BroadcastReceiver is injected, the first time {@link
+     * #getObjectGraph()} or {@link #inject(Object)} is called while a broadcast is being handled.  Lazy creation does
+     * not apply when {@link #isObjectGraphCacheEnabled()} returns true.  Subclasses that use their own injected fields
+     * should call {@code inject(this)} before doing so.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to create the object graph on first use
+     */
+    protected boolean isObjectGraphLazy() {
+        return false;
+    }
+
+    /**
+     * Adds the dagger modules to be included in this BroadcastReceiver's object graph to a collector.  Subclasses that
+     * override this method should call super.collectModules(collector) and then add their own modules.  Unlike {@link
+     * #getModules()}, this allocates no list, and the collector is reused from one graph to the next.
+     * <p/>
+     * The default implementation adds the modules returned by getModules() if a subclass overrides it, and otherwise an
+     * InjectingBroadcastReceiverModule (or, when the object graph is cached, a module providing the same bindings for
+     * whichever broadcast is being handled), followed by the modules declared with {@link StaticModules} on this
+     * class.
+     *
+     * @param collector the collector
+     */
+    protected void collectModules(ModuleCollector collector) {
+        if (ModuleCollector.overridesGetModules(getClass(), InjectingBroadcastReceiver.class)) {
+            collector.addAll(getModules());
+        } else if (isObjectGraphCacheEnabled()) {
+            collector.add(new CachedBroadcastReceiverModule(mContext, this, this));
+        } else {
+            collector.add(new InjectingBroadcastReceiverModule(mContext, this, this));
+        }
+        collector.addStaticModules(getClass());
     }
 
     /**
      * Returns the list of dagger modules to be included in this BroadcastReceiver's object graph.  Subclasses that
      * override this method should add to the list returned by super.getModules().
+     * <p/>
+     * Subclasses may override {@link #collectModules(ModuleCollector)} instead.
      *
      * @return the list of modules
      */
@@ -161,4 +350,46 @@ public class InjectingBroadcastReceiver
         public @interface BroadcastReceiver {
         }
     }
+
+    /**
+     * Provides the same bindings as {@link InjectingBroadcastReceiverModule} to a cached object graph, for whichever
+     * broadcast is currently being handled.
+     */
+    @Module(library = true)
+    static class CachedBroadcastReceiverModule {
+        private Context mContext;
+        private android.content.BroadcastReceiver mReceiver;
+        private Injector mInjector;
+
+        CachedBroadcastReceiverModule(Context context, android.content.BroadcastReceiver receiver, Injector injector) {
+            bind(context, receiver, injector);
+        }
+
+        // swaps in the references for the current broadcast
+        void bind(Context context, android.content.BroadcastReceiver receiver, Injector injector) {
+            mContext = context;
+            mReceiver = receiver;
+            mInjector = injector;
+        }
+
+        // note: the bindings below are deliberately not singletons, so that they reflect whatever references are
+        // currently bound.
+
+        @Provides
+        @InjectingBroadcastReceiverModule.BroadcastReceiver
+        Context provideBroadcastReceiverContext() {
+            return mContext;
+        }
+
+        @Provides
+        android.content.BroadcastReceiver provideBroadcastReceiver() {
+            return mReceiver;
+        }
+
+        @Provides
+        @InjectingBroadcastReceiverModule.BroadcastReceiver
+        Injector provideBroadcastReceiverInjector() {
+            return mInjector;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.widget.RemoteViews;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzbuzz.android.dagger.InjectionScope.APP_WIDGET_PROVIDER;
+
+/**
+ * An {@link InjectingAppWidgetProvider} that coalesces bursts of update broadcasts, and builds the RemoteViews of its
+ * app widgets in parallel, off the main thread.
+ * <p/>
+ * On API 11 and later, onReceive calls goAsync for each ACTION_APPWIDGET_UPDATE broadcast, and holds it for {@link
+ * #getUpdateCoalescingWindowMillis()}.  The app widget ids of all the update broadcasts that arrive for this provider
+ * class within that window are then updated in a single pass, on a background thread, with a single object graph:
+ * the graph is created and this AppWidgetProvider injected, as InjectingAppWidgetProvider does for each broadcast,
+ * and then the RemoteViews of each app widget are built by {@link #onBuildRemoteViews(Context, int)} on a pool of
+ * worker threads.  The pass is dispatched a copy of the first broadcast's Intent, with all of its extras, whose
+ * EXTRA_APPWIDGET_IDS holds the ids of every broadcast in the pass; the other broadcasts' extras are not seen.  The
+ * broadcasts are finished once every app widget has been updated.  Other broadcasts, and all broadcasts before API
+ * 11, are handled as InjectingAppWidgetProvider handles them, except that the RemoteViews are still built in parallel.
+ * <p/>
+ * Each update broadcast has a time budget, {@link #getUpdateBudgetMillis()}, counted from when it is received.  A
+ * broadcast whose pass hasn't completed within its budget is finished when the budget runs out, so that the system
+ * doesn't consider the provider hung; the pass carries on, but the process may then be killed before it completes.
+ * How much of its budget each broadcast used is recorded in {@link InjectionMetrics}, when enabled, as the budget
+ * histogram of this provider's class.
+ * <p/>
+ * Passes for the same provider class run one at a time, as do the passes of all coalescing providers.  An exception
+ * thrown by a pass is rethrown on the main thread, once its broadcasts have been finished, just as it would have been
+ * had the broadcasts been handled there.
+ */
+public abstract class InjectingCoalescingAppWidgetProvider
+        extends InjectingAppWidgetProvider {
+    private static final long DEFAULT_UPDATE_COALESCING_WINDOW_MILLIS = 250;
+    private static final long DEFAULT_UPDATE_BUDGET_MILLIS = 8000;
+
+    // the pass that is collecting update broadcasts, by provider class
+    private static final Map<Class<?>, UpdatePass> sCollectingPasses = new HashMap<Class<?>, UpdatePass>();
+    private static ScheduledExecutorService sPassExecutor;
+    private static ExecutorService sBuildExecutor;
+
+    /**
+     * Coalesces update broadcasts into a pass, and handles other broadcasts as
+     * {@link InjectingAppWidgetProvider#onReceive(Context, Intent)} does.
+     */
+    @Override
+    public final void onReceive(Context context, Intent intent) {
+        int[] appWidgetIds = AppWidgetManager.ACTION_APPWIDGET_UPDATE.equals(intent.getAction())
+                ? intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS) : null;
+        if (appWidgetIds == null || appWidgetIds.length == 0
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            super.onReceive(context, intent);
+            return;
+        }
+        coalesce(context, intent, appWidgetIds);
+    }
+
+    /**
+     * Builds the RemoteViews of each app widget in parallel, on a pool of worker threads, and updates the app widget
+     * with them.  Returns once every app widget has been updated.
+     */
+    @Override
+    public final void onUpdate(final Context context, final AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        updateAll(appWidgetIds, getBuildExecutor(), new AppWidgetUpdate() {
+            @Override
+            public void update(int appWidgetId) {
+                RemoteViews views = onBuildRemoteViews(context, appWidgetId);
+                if (views != null) {
+                    appWidgetManager.updateAppWidget(appWidgetId, views);
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the RemoteViews for one app widget.  Called on worker threads, for several app widgets at once, once this
+     * AppWidgetProvider has been injected; implementations must be safe to call concurrently.
+     *
+     * @param context the Context in which the provider is running
+     * @param appWidgetId the id of the app widget to update
+     * @return the views, or null to leave the app widget as it is
+     */
+    protected abstract RemoteViews onBuildRemoteViews(Context context, int appWidgetId);
+
+    /**
+     * Returns how long update broadcasts are held, from the first one, so that those arriving meanwhile are handled in
+     * the same pass.
+     * <p/>
+     * The default implementation returns 250.
+     *
+     * @return the window, in milliseconds
+     */
+    protected long getUpdateCoalescingWindowMillis() {
+        return DEFAULT_UPDATE_COALESCING_WINDOW_MILLIS;
+    }
+
+    /**
+     * Returns how long an update broadcast may be held before it is finished without waiting for its pass.  It should
+     * leave some room below the system's own timeout, which is 10 seconds for foreground broadcasts, and must be longer
+     * than the coalescing window.
+     * <p/>
+     * The default implementation returns 8000.
+     *
+     * @return the budget, in milliseconds
+     */
+    protected long getUpdateBudgetMillis() {
+        return DEFAULT_UPDATE_BUDGET_MILLIS;
+    }
+
+    /**
+     * Updates app widgets on an executor, all but one at once, and returns once they have all been updated.
+     *
+     * @param appWidgetIds the ids of the app widgets
+     * @param executor the executor
+     * @param update updates one app widget
+     */
+    static void updateAll(int[] appWidgetIds, ExecutorService executor, final AppWidgetUpdate update) {
+        if (appWidgetIds.length == 1) {
+            update.update(appWidgetIds[0]);
+            return;
+        }
+
+        List<Future<?>> updates = new ArrayList<Future<?>>(appWidgetIds.length);
+        for (final int appWidgetId : appWidgetIds) {
+            updates.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    update.update(appWidgetId);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : updates) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void coalesce(final Context context, final Intent intent, int[] appWidgetIds) {
+        final PendingResult result = goAsync();
+        coalesce(getClass(), appWidgetIds, new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        }, new PassRunner() {
+            @Override
+            public void run(int[] passAppWidgetIds) {
+                // creates the graph, injects this provider, and dispatches the update, as for a single broadcast
+                Intent passIntent = new Intent(intent);
+                passIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, passAppWidgetIds);
+                runPass(context, passIntent);
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(getUpdateCoalescingWindowMillis()),
+                TimeUnit.MILLISECONDS.toNanos(getUpdateBudgetMillis()), getPassExecutor(),
+                PendingBroadcast.getWatchdog(), PendingBroadcast.MAIN_THREAD);
+    }
+
+    /**
+     * Adds an update broadcast to the pass that is collecting them for a provider class, or starts a pass with it.
+     *
+     * @param providerClass the class of the provider, under which budget use is recorded
+     * @param appWidgetIds the ids of the app widgets to update
+     * @param finish finishes the broadcast
+     * @param runner runs the pass, if the broadcast starts one
+     * @param windowNanos how long a pass collects broadcasts
+     * @param budgetNanos the broadcast's budget
+     * @param passExecutor the executor on which passes run
+     * @param watchdog the executor on which the broadcast is finished if its budget runs out
+     * @param mainThread the executor on which a failure of the pass is rethrown
+     */
+    static void coalesce(Class<?> providerClass, int[] appWidgetIds, Runnable finish, PassRunner runner,
+            long windowNanos, long budgetNanos, ScheduledExecutorService passExecutor,
+            ScheduledExecutorService watchdog, Executor mainThread) {
+        PendingBroadcast broadcast = new PendingBroadcast(finish, providerClass, APP_WIDGET_PROVIDER, budgetNanos);
+        broadcast.watch(watchdog, null);
+        UpdatePass pass;
+        synchronized (sCollectingPasses) {
+            pass = sCollectingPasses.get(providerClass);
+            if (pass != null) {
+                pass.add(appWidgetIds, broadcast);
+                return;
+            }
+            pass = new UpdatePass(providerClass, runner, mainThread);
+            pass.add(appWidgetIds, broadcast);
+            sCollectingPasses.put(providerClass, pass);
+        }
+        passExecutor.schedule(pass, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void runPass(Context context, Intent intent) {
+        super.onReceive(context, intent);
+    }
+
+    private static synchronized ScheduledExecutorService getPassExecutor() {
+        if (sPassExecutor == null) {
+            sPassExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("InjectingCoalescingAppWidgetProvider-pass-", true));
+        }
+        return sPassExecutor;
+    }
+
+    private static synchronized ExecutorService getBuildExecutor() {
+        if (sBuildExecutor == null) {
+            sBuildExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new NamedThreadFactory("InjectingCoalescingAppWidgetProvider-build-", true));
+        }
+        return sBuildExecutor;
+    }
+
+    /**
+     * Updates one app widget.
+     */
+    interface AppWidgetUpdate {
+        void update(int appWidgetId);
+    }
+
+    /**
+     * Runs a pass over the app widgets of the broadcasts it collected.
+     */
+    interface PassRunner {
+        void run(int[] appWidgetIds);
+    }
+
+    /**
+     * The update broadcasts collected for one provider class, handled by the provider instance that received the first
+     * of them.
+     */
+    private static final class UpdatePass implements Runnable {
+        private final Class<?> mProviderClass;
+        private final PassRunner mRunner;
+        private final Executor mMainThread;
+        // guarded by sCollectingPasses
+        private final Set<Integer> mAppWidgetIds = new LinkedHashSet<Integer>();
+        private final List<PendingBroadcast> mBroadcasts = new ArrayList<PendingBroadcast>();
+
+        UpdatePass(Class<?> providerClass, PassRunner runner, Executor mainThread) {
+            mProviderClass = providerClass;
+            mRunner = runner;
+            mMainThread = mainThread;
+        }
+
+        void add(int[] appWidgetIds, PendingBroadcast broadcast) {
+            for (int appWidgetId : appWidgetIds) {
+                mAppWidgetIds.add(appWidgetId);
+            }
+            mBroadcasts.add(broadcast);
+        }
+
+        @Override
+        public void run() {
+            int[] appWidgetIds;
+            synchronized (sCollectingPasses) {
+                // broadcasts that arrive from now on start the next pass
+                sCollectingPasses.remove(mProviderClass);
+                appWidgetIds = new int[mAppWidgetIds.size()];
+                int i = 0;
+                for (Integer appWidgetId : mAppWidgetIds) {
+                    appWidgetIds[i++] = appWidgetId;
+                }
+            }
+            Throwable failure = null;
+            try {
+                mRunner.run(appWidgetIds);
+            } catch (Throwable t) {
+                failure = t;
+            }
+            // broadcasts that ran out of their budget meanwhile have already been finished
+            for (PendingBroadcast broadcast : mBroadcasts) {
+                broadcast.finish();
+            }
+            // the pass's Future is never read, so a failure thrown out of run would be lost
+            if (failure != null) {
+                PendingBroadcast.rethrow(mMainThread, failure);
+            }
+        }
+    }
+}
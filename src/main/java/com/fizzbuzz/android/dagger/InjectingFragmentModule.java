@@ -46,6 +46,9 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 @Module(library = true)
 public class InjectingFragmentModule {
+    private static final ModulePool<InjectingFragmentModule> sPool =
+            new ModulePool<InjectingFragmentModule>(ModulePool.DEFAULT_CAPACITY);
+
     private android.support.v4.app.Fragment mSupportV4Fragment;
     private android.app.Fragment mFragment;
     private Injector mInjector;
@@ -70,6 +73,42 @@ public class InjectingFragmentModule {
         mInjector = injector;
     }
 
+    /**
+     * Gets a module for a Support v4 Fragment, reusing a recycled one if there is one.
+     */
+    static InjectingFragmentModule obtain(android.support.v4.app.Fragment fragment, Injector injector) {
+        InjectingFragmentModule module = sPool.acquire();
+        if (module == null) {
+            return new InjectingFragmentModule(fragment, injector);
+        }
+        module.mSupportV4Fragment = fragment;
+        module.mInjector = injector;
+        return module;
+    }
+
+    /**
+     * Gets a module for a Fragment, reusing a recycled one if there is one.
+     */
+    static InjectingFragmentModule obtain(android.app.Fragment fragment, Injector injector) {
+        InjectingFragmentModule module = sPool.acquire();
+        if (module == null) {
+            return new InjectingFragmentModule(fragment, injector);
+        }
+        module.mFragment = fragment;
+        module.mInjector = injector;
+        return module;
+    }
+
+    /**
+     * Releases this module's references and returns it to the pool.  The graph it was part of must no longer be used.
+     */
+    void recycle() {
+        mSupportV4Fragment = null;
+        mFragment = null;
+        mInjector = null;
+        sPool.release(this);
+    }
+
     /**
      * Provides a Support v4 Fragment
      *
@@ -32,20 +32,42 @@ import android.app.Activity;
 import android.support.v4.app.ListFragment;
 import dagger.ObjectGraph;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import static com.fizzbuzz.android.dagger.Preconditions.checkState;
-
 /**
  * Manages an ObjectGraph on behalf of an ListFragment.  This graph is created by extending the hosting Activity's graph
  * with Fragment-specific module(s).
  */
 public class InjectingListFragment
         extends ListFragment
-        implements Injector {
-    private ObjectGraph mObjectGraph;
-    private boolean mFirstAttach = true;
+        implements ExtendedInjector {
+    private final FragmentInjectionDelegate mDelegate =
+            new FragmentInjectionDelegate(this, InjectingListFragment.class) {
+        @Override
+        Activity getActivity() {
+            return InjectingListFragment.this.getActivity();
+        }
+
+        @Override
+        boolean isObjectGraphLazy() {
+            return InjectingListFragment.this.isObjectGraphLazy();
+        }
+
+        @Override
+        boolean isModuleRecyclingEnabled() {
+            return InjectingListFragment.this.isModuleRecyclingEnabled();
+        }
+
+        @Override
+        List<Object> getModules() {
+            return InjectingListFragment.this.getModules();
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            InjectingListFragment.this.collectModules(collector);
+        }
+    };
 
     /**
      * Creates an object graph for this Fragment by extending the hosting Activity's object graph with the modules
@@ -56,29 +78,25 @@ public class InjectingListFragment
     @Override
     public void onAttach(final Activity activity) {
         super.onAttach(activity);
-
-        // expand the activity graph with the fragment-specific module(s)
-        ObjectGraph appGraph = ((Injector) activity).getObjectGraph();
-        List<Object> fragmentModules = getModules();
-        mObjectGraph = appGraph.plus(fragmentModules.toArray());
-
-        // make sure it's the first time through; we don't want to re-inject a retained fragment that is going
-        // through a detach/attach sequence.
-        if (mFirstAttach) {
-            inject(this);
-            mFirstAttach = false;
-        }
+        mDelegate.onAttach();
     }
 
     @Override
     public void onDestroy() {
-        // Eagerly clear the reference to the object graph to allow it to be garbage collected as
-        // soon as possible.
-        mObjectGraph = null;
-
+        mDelegate.onDestroy();
         super.onDestroy();
     }
 
+    /**
+     * Passes the callback on to the singletons of this ListFragment's object graph that implement ComponentCallbacks,
+     * and drops all its {@link Evictable} singletons.
+     */
+    @Override
+    public void onLowMemory() {
+        mDelegate.onLowMemory();
+        super.onLowMemory();
+    }
+
     // implement Injector interface
 
     /**
@@ -88,7 +106,7 @@ public class InjectingListFragment
      */
     @Override
     public final ObjectGraph getObjectGraph() {
-        return mObjectGraph;
+        return mDelegate.getObjectGraph(isObjectGraphLazy());
     }
 
     /**
@@ -98,19 +116,100 @@ public class InjectingListFragment
      */
     @Override
     public void inject(Object target) {
-        checkState(mObjectGraph != null, "object graph must be assigned prior to calling inject");
-        mObjectGraph.inject(target);
+        mDelegate.inject(target, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of an array of target objects using this ListFragment's object graph.
+     *
+     * @param targets the target objects
+     */
+    @Override
+    public void injectAll(Object[] targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of a collection of target objects using this ListFragment's object graph.
+     *
+     * @param targets the target objects
+     */
+    @Override
+    public void injectAll(Iterable<?> targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets an instance of a type from this ListFragment's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    @Override
+    public <T> T get(Class<T> type) {
+        return mDelegate.get(type, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets this ListFragment's graph as created by the application's {@link GraphBackend}.
+     *
+     * @return the graph
+     */
+    @Override
+    public GraphBackend.Graph getGraph() {
+        return mDelegate.getGraph(isObjectGraphLazy());
+    }
+
+    /**
+     * Returns whether this ListFragment's object graph should be created on first use rather than in onAttach.  When
+     * enabled, the graph is created, and this ListFragment is injected, the first time {@link #getObjectGraph()} or
+     * {@link #inject(Object)} is called while it is attached.  Subclasses that use their own injected fields should call
+     * {@code inject(this)} before doing so.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to create the object graph on first use
+     */
+    protected boolean isObjectGraphLazy() {
+        return false;
+    }
+
+    /**
+     * Returns whether this ListFragment's own module should be taken from, and returned to, a bounded pool of module
+     * instances, rather than allocated for each instance.  The module is recycled in onDestroy, after which neither
+     * this ListFragment's object graph nor anything holding a reference to it may be used.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to recycle this ListFragment's module
+     */
+    protected boolean isModuleRecyclingEnabled() {
+        return false;
+    }
+
+    /**
+     * Adds the dagger modules to be included in this ListFragment's object graph to a collector.  Subclasses that
+     * override this method should call super.collectModules(collector) and then add their own modules.  Unlike {@link
+     * #getModules()}, this allocates no list, and the collector is reused from one graph to the next.
+     * <p/>
+     * The default implementation adds the modules returned by getModules() if a subclass overrides it, and otherwise an
+     * InjectingFragmentModule, followed by the modules declared with {@link StaticModules} on this class.
+     *
+     * @param collector the collector
+     */
+    protected void collectModules(ModuleCollector collector) {
+        mDelegate.addDefaultModules(collector);
     }
 
     /**
      * Returns the list of dagger modules to be included in this ListFragment's object graph.  Subclasses that override
      * this method should add to the list returned by super.getModules().
+     * <p/>
+     * Subclasses may override {@link #collectModules(ModuleCollector)} instead.
      *
      * @return the list of modules
      */
     protected List<Object> getModules() {
-        List<Object> result = new ArrayList<Object>();
-        result.add(new InjectingFragmentModule(this, this));
-        return result;
+        return mDelegate.getDefaultModules();
     }
 }
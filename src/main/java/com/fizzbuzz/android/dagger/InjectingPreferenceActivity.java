@@ -31,19 +31,47 @@ package com.fizzbuzz.android.dagger;
 import android.preference.PreferenceActivity;
 import dagger.ObjectGraph;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import static com.fizzbuzz.android.dagger.Preconditions.checkState;
-
 /**
  * Manages an ObjectGraph on behalf of a PreferenceActivity.  This graph is created by extending the
  * application-scope graph with Activity-specific module(s).
  */
 public class InjectingPreferenceActivity
         extends PreferenceActivity
-        implements Injector {
-    private ObjectGraph mObjectGraph;
+        implements ExtendedInjector {
+    private final ActivityInjectionDelegate mDelegate =
+            new ActivityInjectionDelegate(this, InjectingPreferenceActivity.class) {
+        @Override
+        boolean isObjectGraphLazy() {
+            return InjectingPreferenceActivity.this.isObjectGraphLazy();
+        }
+
+        @Override
+        boolean isObjectGraphPrewarmable() {
+            return InjectingPreferenceActivity.this.isObjectGraphPrewarmable();
+        }
+
+        @Override
+        boolean isObjectGraphRetained() {
+            return InjectingPreferenceActivity.this.isObjectGraphRetained();
+        }
+
+        @Override
+        boolean isModuleRecyclingEnabled() {
+            return InjectingPreferenceActivity.this.isModuleRecyclingEnabled();
+        }
+
+        @Override
+        List<Object> getModules() {
+            return InjectingPreferenceActivity.this.getModules();
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            InjectingPreferenceActivity.this.collectModules(collector);
+        }
+    };
 
     /**
      * Gets this PreferenceActivity's object graph.
@@ -52,7 +80,7 @@ public class InjectingPreferenceActivity
      */
     @Override
     public final ObjectGraph getObjectGraph() {
-        return mObjectGraph;
+        return mDelegate.getObjectGraph(isObjectGraphLazy());
     }
 
     /**
@@ -62,8 +90,48 @@ public class InjectingPreferenceActivity
      */
     @Override
     public void inject(Object target) {
-        checkState(mObjectGraph != null, "object graph must be assigned prior to calling inject");
-        mObjectGraph.inject(target);
+        mDelegate.inject(target, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of an array of target objects using this PreferenceActivity's object graph.
+     *
+     * @param targets the target objects
+     */
+    @Override
+    public void injectAll(Object[] targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of a collection of target objects using this PreferenceActivity's object graph.
+     *
+     * @param targets the target objects
+     */
+    @Override
+    public void injectAll(Iterable<?> targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets an instance of a type from this PreferenceActivity's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    @Override
+    public <T> T get(Class<T> type) {
+        return mDelegate.get(type, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets this PreferenceActivity's graph as created by the application's {@link GraphBackend}.
+     *
+     * @return the graph
+     */
+    @Override
+    public GraphBackend.Graph getGraph() {
+        return mDelegate.getGraph(isObjectGraphLazy());
     }
 
     /**
@@ -74,13 +142,7 @@ public class InjectingPreferenceActivity
      */
     @Override
     protected void onCreate(android.os.Bundle savedInstanceState) {
-        // expand the application graph with the activity-specific module(s)
-        ObjectGraph appGraph = ((Injector) getApplication()).getObjectGraph();
-        List<Object> activityModules = getModules();
-        mObjectGraph = appGraph.plus(activityModules.toArray());
-
-        // now we can inject ourselves
-        inject(this);
+        mDelegate.onCreate(savedInstanceState);
 
         // note: we do the graph setup and injection before calling super.onCreate so that InjectingFragments
         // associated with this InjectingActivity can do their graph setup and injection in their
@@ -89,23 +151,116 @@ public class InjectingPreferenceActivity
     }
 
     @Override
-    protected void onDestroy() {
-        // Eagerly clear the reference to the activity graph to allow it to be garbage collected as
-        // soon as possible.
-        mObjectGraph = null;
+    protected void onSaveInstanceState(android.os.Bundle outState) {
+        super.onSaveInstanceState(outState);
+        mDelegate.onSaveInstanceState(outState);
+    }
 
+    @Override
+    protected void onDestroy() {
+        mDelegate.onDestroy();
         super.onDestroy();
     }
 
+    /**
+     * Passes the callback on to the singletons of this PreferenceActivity's object graph that implement
+     * ComponentCallbacks2, and drops its {@link Evictable} singletons whose trim level is at most level.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        mDelegate.onTrimMemory(level);
+        super.onTrimMemory(level);
+    }
+
+    /**
+     * Passes the callback on to the singletons of this PreferenceActivity's object graph that implement
+     * ComponentCallbacks, and drops all its {@link Evictable} singletons.
+     */
+    @Override
+    public void onLowMemory() {
+        mDelegate.onLowMemory();
+        super.onLowMemory();
+    }
+
+    /**
+     * Returns whether this PreferenceActivity's object graph should be created on first use rather than in onCreate.
+     * When enabled, the graph is created, and this PreferenceActivity is injected, the first time {@link
+     * #getObjectGraph()} or {@link #inject(Object)} is called (for instance, when an injecting Fragment is attached).
+     * Subclasses that use their own injected fields should call {@code inject(this)} before doing so.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to create the object graph on first use
+     */
+    protected boolean isObjectGraphLazy() {
+        return false;
+    }
+
+    /**
+     * Returns whether this PreferenceActivity takes part in graph prewarming (see {@link ActivityGraphPrewarmer}).
+     * When enabled, this PreferenceActivity adopts a graph prepared ahead of time if there is one, in which case its
+     * modules are not collected.  Subclasses that enable this must use modules that, apart from {@link
+     * InjectingActivityModule}, have no-arg constructors and hold no per-instance state.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to adopt prepared graphs and record this PreferenceActivity's modules and navigation history
+     */
+    protected boolean isObjectGraphPrewarmable() {
+        return false;
+    }
+
+    /**
+     * Returns whether this PreferenceActivity's object graph should be kept when it is destroyed and recreated for a
+     * configuration change, such as a rotation, and adopted by the new instance.  When enabled, activity-scope
+     * singletons survive the change, and only the Activity, Context and Injector provided by {@link
+     * InjectingActivityModule} are rebound to the new instance.  Subclasses that enable this must not keep references
+     * to the Activity or its Context in activity-scope singletons, and their modules must not hold per-instance state.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to retain the object graph across configuration changes
+     */
+    protected boolean isObjectGraphRetained() {
+        return false;
+    }
+
+    /**
+     * Returns whether this PreferenceActivity's own module should be taken from, and returned to, a bounded pool of
+     * module instances, rather than allocated for each instance.  The module is recycled in onDestroy, after which
+     * neither this PreferenceActivity's object graph nor anything holding a reference to it may be used.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to recycle this PreferenceActivity's module
+     */
+    protected boolean isModuleRecyclingEnabled() {
+        return false;
+    }
+
+    /**
+     * Adds the dagger modules to be included in this PreferenceActivity's object graph to a collector.  Subclasses that
+     * override this method should call super.collectModules(collector) and then add their own modules.  Unlike {@link
+     * #getModules()}, this allocates no list, and the collector is reused from one graph to the next.
+     * <p/>
+     * The default implementation adds the modules returned by getModules() if a subclass overrides it, and otherwise an
+     * InjectingActivityModule, followed by the modules declared with {@link StaticModules} on this class.
+     *
+     * @param collector the collector
+     */
+    protected void collectModules(ModuleCollector collector) {
+        mDelegate.addDefaultModules(collector);
+    }
+
     /**
      * Returns the list of dagger modules to be included in this PreferenceActivity's object graph.  Subclasses that
      * override this method should add to the list returned by super.getModules().
+     * <p/>
+     * Subclasses may override {@link #collectModules(ModuleCollector)} instead.
      *
      * @return the list of modules
      */
     protected List<Object> getModules() {
-        List<Object> result = new ArrayList<Object>();
-        result.add(new InjectingActivityModule(this, this));
-        return result;
+        return mDelegate.getDefaultModules();
     }
 }
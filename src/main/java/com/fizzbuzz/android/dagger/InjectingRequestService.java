@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.content.Intent;
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.fizzbuzz.android.dagger.InjectionPhase.CREATE_GRAPH;
+import static com.fizzbuzz.android.dagger.InjectionPhase.GET_MODULES;
+import static com.fizzbuzz.android.dagger.InjectionScope.REQUEST;
+import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * An {@link InjectingService} that handles each start command, and each request submitted by a bound client, on a
+ * bounded pool of worker threads, in a request-scope graph of its own.  A request's graph extends this Service's graph
+ * with the modules added by {@link #collectRequestModules(ModuleCollector)}, and is torn down as soon as the request
+ * has been handled, so that per-request state lives in request-scope objects rather than in fields of the Service.
+ * <p/>
+ * Requests run in parallel, up to {@link #getRequestConcurrency()} at a time.  Once every request started by
+ * onStartCommand has been handled, the Service stops itself, as an IntentService does.
+ */
+public abstract class InjectingRequestService
+        extends InjectingService {
+    private final List<RequestGraph> mPooledGraphs = new ArrayList<RequestGraph>();
+    private final Object mStartLock = new Object();
+    private ExecutorService mExecutor;
+    private int mConcurrency;
+    private int mPendingStarts;
+    private int mLastStartId;
+
+    /**
+     * Creates this Service's object graph, as {@link InjectingService#onCreate()} does, and the pool of worker threads
+     * that handle its requests.
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        String threadName = getClass().getSimpleName() + "-request-";
+        mConcurrency = getRequestConcurrency();
+        mExecutor = Executors.newFixedThreadPool(mConcurrency, new NamedThreadFactory(threadName, true));
+    }
+
+    /**
+     * Queues the Intent to be handled as a request, by {@link #onHandleRequest(Request)} on a worker thread.
+     * <p/>
+     * Returns START_NOT_STICKY; subclasses that need the Intent to be redelivered should call super and return
+     * START_REDELIVER_INTENT instead.
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        synchronized (mStartLock) {
+            mPendingStarts++;
+            mLastStartId = startId;
+        }
+        mExecutor.execute(new RequestRunnable(intent, true));
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Stops accepting requests, and discards the pooled request graphs.  Requests that are queued are dropped, and the
+     * worker threads handling requests are interrupted.
+     */
+    @Override
+    public void onDestroy() {
+        mExecutor.shutdownNow();
+        synchronized (mPooledGraphs) {
+            mPooledGraphs.clear();
+        }
+
+        super.onDestroy();
+    }
+
+    /**
+     * Queues an Intent to be handled as a request, by {@link #onHandleRequest(Request)} on a worker thread.  Intended
+     * for the Binder of a bound Service; unlike a start command, a submitted request doesn't keep the Service started.
+     *
+     * @param intent the Intent describing the request
+     * @return a Future that completes when the request has been handled
+     */
+    public final Future<?> submitRequest(Intent intent) {
+        return mExecutor.submit(new RequestRunnable(intent, false));
+    }
+
+    /**
+     * Handles a request, on a worker thread.  The request's object graph can only be used for the duration of this
+     * call.
+     *
+     * @param request the request, which injects objects from its own graph
+     */
+    protected abstract void onHandleRequest(Request request);
+
+    /**
+     * Returns the maximum number of requests handled at once, which is the number of worker threads.  Called once,
+     * from onCreate.
+     * <p/>
+     * The default implementation returns the number of available processors.
+     *
+     * @return the number of worker threads
+     */
+    protected int getRequestConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns whether request graphs should be kept in a pool and reused by later requests, rather than built for each
+     * request.  A pooled graph has the bindings of the classes listed in the injects of its modules resolved when it is
+     * built, so requests that reuse it neither extend this Service's graph nor link bindings.  Its modules are only
+     * collected when the graph is first built, so they must not hold per-request state other than the Request and
+     * Intent provided by {@link InjectingRequestModule}, which are swapped in for each request, and singletons of the
+     * request graph are shared by the requests that reuse it.  There are at most {@link #getRequestConcurrency()}
+     * pooled graphs.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to pool request graphs
+     */
+    protected boolean isRequestGraphPoolingEnabled() {
+        return false;
+    }
+
+    /**
+     * Adds the dagger modules to be included in each request's object graph to a collector.  Subclasses that override
+     * this method should call super.collectRequestModules(collector) and then add their own modules.
+     * <p/>
+     * The default implementation adds an InjectingRequestModule.
+     *
+     * @param collector the collector
+     */
+    protected void collectRequestModules(ModuleCollector collector) {
+        collector.add(new InjectingRequestModule());
+    }
+
+    private RequestGraph obtainRequestGraph() {
+        ObjectGraph parentGraph = getObjectGraph();
+        checkState(parentGraph != null, "service must have a Dagger object graph prior to handling requests");
+        if (isRequestGraphPoolingEnabled()) {
+            synchronized (mPooledGraphs) {
+                for (int i = mPooledGraphs.size() - 1; i >= 0; i--) {
+                    RequestGraph requestGraph = mPooledGraphs.remove(i);
+                    if (requestGraph.parentGraph == parentGraph) {
+                        return requestGraph;
+                    }
+                }
+            }
+        }
+
+        RequestGraph requestGraph;
+        ModuleCollector collector = ModuleCollector.obtain();
+        try {
+            Object[] modules;
+            InjectionTracing.begin(this, REQUEST, GET_MODULES);
+            try {
+                collectRequestModules(collector);
+                modules = collector.borrowArray();
+            } finally {
+                InjectionTracing.end(this, REQUEST, GET_MODULES);
+            }
+
+            ObjectGraph objectGraph;
+            InjectionTracing.begin(this, REQUEST, CREATE_GRAPH);
+            try {
+                objectGraph = parentGraph.plus(modules);
+            } finally {
+                InjectionTracing.end(this, REQUEST, CREATE_GRAPH);
+            }
+            requestGraph = new RequestGraph(parentGraph, objectGraph,
+                    (InjectingRequestModule) ObjectGraphCache.findModule(modules, InjectingRequestModule.class));
+        } finally {
+            collector.recycle();
+        }
+        if (isRequestGraphPoolingEnabled()) {
+            requestGraph.bindingCache.freeze();
+        }
+        return requestGraph;
+    }
+
+    private void recycleRequestGraph(RequestGraph requestGraph) {
+        if (isRequestGraphPoolingEnabled() && !mExecutor.isShutdown()) {
+            synchronized (mPooledGraphs) {
+                if (mPooledGraphs.size() < mConcurrency) {
+                    mPooledGraphs.add(requestGraph);
+                }
+            }
+        }
+    }
+
+    private void onStartedRequestHandled() {
+        synchronized (mStartLock) {
+            if (--mPendingStarts == 0) {
+                // does nothing if a command was started since the last one was queued
+                stopSelf(mLastStartId);
+            }
+        }
+    }
+
+    private final class RequestRunnable implements Runnable {
+        private final Intent mIntent;
+        private final boolean mStarted;
+
+        RequestRunnable(Intent intent, boolean started) {
+            mIntent = intent;
+            mStarted = started;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Request request = new Request(mIntent);
+                RequestGraph requestGraph = obtainRequestGraph();
+                ObjectGraphLeakTracker.getInstance().track(request, requestGraph.bindingCache.getObjectGraph());
+                if (requestGraph.module != null) {
+                    requestGraph.module.bind(request);
+                }
+                request.mBindingCache = requestGraph.bindingCache;
+                try {
+                    onHandleRequest(request);
+                } finally {
+                    request.mBindingCache = null;
+                    if (requestGraph.module != null) {
+                        requestGraph.module.bind(null);
+                    }
+                    ObjectGraphLeakTracker.getInstance().onDestroyed(request, false);
+                    recycleRequestGraph(requestGraph);
+                }
+            } finally {
+                if (mStarted) {
+                    onStartedRequestHandled();
+                }
+            }
+        }
+    }
+
+    private static final class RequestGraph {
+        final ObjectGraph parentGraph;
+        final BindingCache bindingCache;
+        final InjectingRequestModule module;
+
+        RequestGraph(ObjectGraph parentGraph, ObjectGraph objectGraph, InjectingRequestModule module) {
+            this.parentGraph = parentGraph;
+            this.bindingCache = new BindingCache(objectGraph);
+            this.module = module;
+        }
+    }
+
+    /**
+     * A request being handled by an {@link InjectingRequestService}, which injects objects from the request's own
+     * object graph.  The graph can only be used while the request is being handled.
+     */
+    public static final class Request
+            implements ExtendedInjector {
+        private final Intent mIntent;
+        // only set while the request is being handled, on the worker thread that handles it
+        private volatile BindingCache mBindingCache;
+
+        Request(Intent intent) {
+            mIntent = intent;
+        }
+
+        /**
+         * Gets the Intent that describes this request.
+         *
+         * @return the Intent passed to onStartCommand or submitRequest
+         */
+        public Intent getIntent() {
+            return mIntent;
+        }
+
+        /**
+         * Gets this request's object graph.
+         *
+         * @return the object graph
+         */
+        @Override
+        public ObjectGraph getObjectGraph() {
+            return getBindingCache().getObjectGraph();
+        }
+
+        /**
+         * Injects a target object using this request's object graph.
+         *
+         * @param target the target object
+         */
+        @Override
+        public void inject(Object target) {
+            getBindingCache().inject(target);
+        }
+
+        /**
+         * Injects each of an array of target objects using this request's object graph.
+         *
+         * @param targets the target objects
+         */
+        @Override
+        public void injectAll(Object[] targets) {
+            getBindingCache().injectAll(targets);
+        }
+
+        /**
+         * Injects each of a collection of target objects using this request's object graph.
+         *
+         * @param targets the target objects
+         */
+        @Override
+        public void injectAll(Iterable<?> targets) {
+            getBindingCache().injectAll(targets);
+        }
+
+        /**
+         * Gets an instance of a type from this request's object graph.
+         *
+         * @param type the type
+         * @return the instance
+         */
+        @Override
+        public <T> T get(Class<T> type) {
+            return getBindingCache().get(type);
+        }
+
+        /**
+         * Gets this request's object graph as a {@link GraphBackend.Graph}.  Request graphs are always Dagger object
+         * graphs.
+         *
+         * @return the graph
+         */
+        @Override
+        public GraphBackend.Graph getGraph() {
+            return new DaggerGraphBackend.DaggerGraph(getBindingCache());
+        }
+
+        private BindingCache getBindingCache() {
+            BindingCache bindingCache = mBindingCache;
+            checkState(bindingCache != null, "request object graph can only be used while the request is handled");
+            return bindingCache;
+        }
+    }
+
+    /**
+     * The dagger module associated with the request graphs of {@link InjectingRequestService}.  Its provisions are
+     * unscoped, so that a pooled graph provides the request it is currently handling.
+     */
+    @Module(library = true)
+    public static class InjectingRequestModule {
+        private Request mRequest;
+
+        /**
+         * Sets the request whose graph this module is part of.
+         */
+        void bind(Request request) {
+            mRequest = request;
+        }
+
+        /**
+         * Provides the request being handled, which is also the Injector for the request-scope graph.
+         *
+         * @return the request
+         */
+        @Provides
+        public Request provideRequest() {
+            return mRequest;
+        }
+
+        /**
+         * Provides the Intent that describes the request being handled.
+         *
+         * @return the request's Intent
+         */
+        @Provides
+        @RequestIntent
+        public Intent provideRequestIntent() {
+            return mRequest.getIntent();
+        }
+
+        @Qualifier
+        @Target({FIELD, PARAMETER, METHOD})
+        @Documented
+        @Retention(RUNTIME)
+        public @interface RequestIntent {
+        }
+    }
+}
@@ -28,7 +28,7 @@ import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+import static com.fizzbuzz.android.dagger.InjectionScope.SERVICE;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
@@ -40,9 +40,23 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 public abstract class InjectingService
         extends Service
-        implements Injector {
+        implements ExtendedInjector {
+    private final InjectionDelegate mDelegate = new InjectionDelegate(this, SERVICE) {
+        @Override
+        Injector getParent() {
+            return (Injector) getApplication();
+        }
 
-    private ObjectGraph mObjectGraph;
+        @Override
+        void collectModules(ModuleCollector collector) {
+            InjectingService.this.collectModules(collector);
+        }
+
+        @Override
+        boolean isConcurrent() {
+            return isConcurrentInjectionEnabled();
+        }
+    };
 
     /**
      * Creates an object graph for this Service by extending the application-scope object graph with the modules
@@ -54,11 +68,37 @@ public abstract class InjectingService
     public void onCreate() {
         super.onCreate();
 
-        // extend the application-scope object graph with the modules for this service
-        mObjectGraph = ((Injector) getApplication()).getObjectGraph().plus(getModules().toArray());
+        // unless the graph is created lazily, extend the application-scope graph and inject ourselves now
+        if (!isObjectGraphLazy()) {
+            mDelegate.attach();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mDelegate.destroy();
+
+        super.onDestroy();
+    }
+
+    /**
+     * Passes the callback on to the singletons of this Service's object graph that implement ComponentCallbacks2, and
+     * drops its {@link Evictable} singletons whose trim level is at most level.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        MemoryTrimming.onTrimMemory(mDelegate.peekObjectGraph(), level);
+        super.onTrimMemory(level);
+    }
 
-        // then inject ourselves
-        mObjectGraph.inject(this);
+    /**
+     * Passes the callback on to the singletons of this Service's object graph that implement ComponentCallbacks, and
+     * drops all its {@link Evictable} singletons.
+     */
+    @Override
+    public void onLowMemory() {
+        MemoryTrimming.onLowMemory(mDelegate.peekObjectGraph());
+        super.onLowMemory();
     }
 
     /**
@@ -68,7 +108,7 @@ public abstract class InjectingService
      */
     @Override
     public ObjectGraph getObjectGraph() {
-        return mObjectGraph;
+        return mDelegate.getObjectGraph(isObjectGraphLazy());
     }
 
     /**
@@ -77,18 +117,137 @@ public abstract class InjectingService
      * @param target the target object
      */
     public void inject(Object target) {
-        checkState(mObjectGraph != null, "object graph must be initialized prior to calling inject");
-        mObjectGraph.inject(target);
+        mDelegate.inject(target, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of an array of target objects using this Service's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Object[] targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Injects each of a collection of target objects using this Service's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Iterable<?> targets) {
+        mDelegate.injectAll(targets, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets an instance of a type from this Service's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    public <T> T get(Class<T> type) {
+        return mDelegate.get(type, isObjectGraphLazy());
+    }
+
+    /**
+     * Gets this Service's graph as created by the application's {@link GraphBackend}.
+     *
+     * @return the graph
+     */
+    public GraphBackend.Graph getGraph() {
+        return mDelegate.getGraph(isObjectGraphLazy());
+    }
+
+    /**
+     * Returns whether this Service's object graph should be created on first use rather than in onCreate.  When enabled,
+     * the graph is created, and this Service is injected, the first time {@link #getObjectGraph()} or {@link
+     * #inject(Object)} is called.  Subclasses that use their own injected fields should call {@code inject(this)} before
+     * doing so.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to create the object graph on first use
+     */
+    protected boolean isObjectGraphLazy() {
+        return false;
+    }
+
+    /**
+     * Returns whether this Service's object graph is used to inject objects from many threads at once.  When enabled,
+     * the bindings of all the classes listed in the injects of this Service's modules are resolved as soon as the
+     * graph has been created, so that {@link #inject(Object)}, {@link #injectAll(Object[])} and {@link #get(Class)}
+     * don't contend for dagger's linker lock when those classes are first injected.  See also
+     * {@link PerThreadObjectGraph}, for bindings that must not be shared between threads.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to resolve bindings up front
+     */
+    protected boolean isConcurrentInjectionEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns whether this Service's own module should be taken from, and returned to, a bounded pool of module
+     * instances, rather than allocated for each instance.  The module is recycled in onDestroy, after which neither
+     * this Service's object graph nor anything holding a reference to it may be used.
+     * <p/>
+     * The default implementation returns false.
+     *
+     * @return true to recycle this Service's module
+     */
+    protected boolean isModuleRecyclingEnabled() {
+        return false;
+    }
+
+    /**
+     * Adds the dagger modules to be included in this Service's object graph to a collector.  Subclasses that override
+     * this method should call super.collectModules(collector) and then add their own modules.  Unlike {@link
+     * #getModules()}, this allocates no list, and the collector is reused from one graph to the next.
+     * <p/>
+     * The default implementation adds the modules returned by getModules() if a subclass overrides it, and otherwise an
+     * InjectingServiceModule, followed by the modules declared with {@link StaticModules} on this class.
+     *
+     * @param collector the collector
+     */
+    protected void collectModules(ModuleCollector collector) {
+        if (ModuleCollector.overridesGetModules(getClass(), InjectingService.class)) {
+            addLegacyModules(collector, getModules());
+        } else if (isModuleRecyclingEnabled()) {
+            collector.add(mDelegate.recycleOnDestroy(InjectingServiceModule.obtain(this, this)));
+        } else {
+            collector.add(new InjectingServiceModule(this, this));
+        }
+        collector.addStaticModules(getClass());
+    }
+
+    // getModules() used to return an empty list, so subclasses that override it may add their own
+    // InjectingServiceModule as well as the one now returned by super.getModules(); keep only the last one
+    private static void addLegacyModules(ModuleCollector collector, List<Object> modules) {
+        int last = -1;
+        for (int i = 0, n = modules.size(); i < n; i++) {
+            if (modules.get(i) instanceof InjectingServiceModule) {
+                last = i;
+            }
+        }
+        for (int i = 0, n = modules.size(); i < n; i++) {
+            Object module = modules.get(i);
+            if (i == last || !(module instanceof InjectingServiceModule)) {
+                collector.add(module);
+            }
+        }
     }
 
     /**
      * Returns the list of dagger modules to be included in this Service's object graph.  Subclasses that override
      * this method should add to the list returned by super.getModules().
+     * <p/>
+     * Subclasses may override {@link #collectModules(ModuleCollector)} instead.
      *
      * @return the list of modules
      */
     protected List<Object> getModules() {
         List<Object> result = new ArrayList<Object>();
+        result.add(new InjectingServiceModule(this, this));
         return result;
     }
 
@@ -97,6 +256,9 @@ public abstract class InjectingService
      */
     @Module(library = true)
     public static class InjectingServiceModule {
+        private static final ModulePool<InjectingServiceModule> sPool =
+                new ModulePool<InjectingServiceModule>(ModulePool.DEFAULT_CAPACITY);
+
         private android.app.Service mService;
         private Injector mInjector;
 
@@ -104,12 +266,36 @@ public abstract class InjectingService
          * Class constructor.
          *
          * @param service the Service with which this module is associated.
+         * @param injector the Injector for the Service-scope graph
          */
         public InjectingServiceModule(android.app.Service service, Injector injector) {
             mService = service;
             mInjector = injector;
         }
 
+        /**
+         * Gets a module for a service, reusing a recycled one if there is one.
+         */
+        static InjectingServiceModule obtain(android.app.Service service, Injector injector) {
+            InjectingServiceModule module = sPool.acquire();
+            if (module == null) {
+                return new InjectingServiceModule(service, injector);
+            }
+            module.mService = service;
+            module.mInjector = injector;
+            return module;
+        }
+
+        /**
+         * Releases this module's references and returns it to the pool.  The graph it was part of must no longer be
+         * used.
+         */
+        void recycle() {
+            mService = null;
+            mInjector = null;
+            sPool.release(this);
+        }
+
         /**
          * Provides the Service Context
          *
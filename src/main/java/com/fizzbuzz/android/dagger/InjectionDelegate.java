@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+
+import static com.fizzbuzz.android.dagger.InjectionPhase.CREATE_GRAPH;
+import static com.fizzbuzz.android.dagger.InjectionPhase.GET_MODULES;
+import static com.fizzbuzz.android.dagger.InjectionPhase.INJECT;
+import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+
+/**
+ * Creates, caches, traces and tears down the object graph of one component, on behalf of the Injecting... base
+ * classes.  Each base class subclasses this to supply its parent graph and its modules, and forwards its lifecycle
+ * callbacks and Injector methods to it.
+ * <p/>
+ * A component's graph extends its parent graph with the component's modules, after which the component itself is
+ * injected.  If the component is attached again to the same parent graph (e.g. a retained fragment reattached to its
+ * activity), the graph is kept.  If it is attached to a different parent graph (e.g. a retained fragment whose activity
+ * was recreated), the component's modules are collected again, so that none of them carries a reference to the old
+ * parent, and the graph is rebuilt from them; the component is not injected again.
+ * <p/>
+ * If the parent has no Dagger object graph, because the application creates its graphs with another
+ * {@link GraphBackend} (see {@link InjectingApplication#getGraphBackend()}), the component's graph extends the parent's
+ * backend graph instead, and the component has no object graph of its own.  Graphs are then neither cached, retained
+ * nor prewarmed.
+ */
+abstract class InjectionDelegate {
+    private final Object mComponent;
+    private final InjectionScope mScope;
+    // volatile so that graphs created on one thread can be used from others
+    private volatile ObjectGraph mObjectGraph;
+    private volatile BindingCache mBindingCache;
+    private ObjectGraph mParentGraph;
+    // the component's graph and its parent's, when they come from a GraphBackend other than Dagger's
+    private volatile GraphBackend.Graph mGraph;
+    private GraphBackend.Graph mParentBackendGraph;
+    private boolean mInjected;
+    private Object mRecyclableModule;
+
+    /**
+     * Class constructor.
+     *
+     * @param component the component whose graph this delegate manages
+     * @param scope the component's scope
+     */
+    InjectionDelegate(Object component, InjectionScope scope) {
+        mComponent = component;
+        mScope = scope;
+    }
+
+    /**
+     * Gets the component whose graph the component's graph extends.
+     *
+     * @return the parent, or null if the component is not currently attached to one
+     */
+    abstract Injector getParent();
+
+    /**
+     * Adds the component's modules to a collector.
+     */
+    abstract void collectModules(ModuleCollector collector);
+
+    /**
+     * Gets a graph that was prepared ahead of time for the component, instead of building one.  The default
+     * implementation returns null.
+     *
+     * @return the prepared graph, or null to build one
+     */
+    ObjectGraph adoptObjectGraph(ObjectGraph parentGraph) {
+        return null;
+    }
+
+    /**
+     * Returns whether the component's graph is shared by many threads, in which case its binding cache is frozen (see
+     * {@link BindingCache#freeze()}) once the component has been injected.  The default implementation returns false.
+     */
+    boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * Called once the component's graph has been built or adopted.  The default implementation does nothing.
+     *
+     * @param modules the component's modules, or null if the graph was adopted; not to be kept
+     */
+    void onObjectGraphCreated(ObjectGraph parentGraph, Object[] modules) {
+    }
+
+    /**
+     * Gets the component's graph, without creating it.
+     *
+     * @return the object graph, or null if there is none
+     */
+    final ObjectGraph peekObjectGraph() {
+        return mObjectGraph;
+    }
+
+    /**
+     * Gets the component's graph, first creating it if lazy is true and it hasn't been created yet.
+     *
+     * @return the object graph, or null if there is none
+     */
+    final ObjectGraph getObjectGraph(boolean lazy) {
+        if (!hasGraph() && lazy) {
+            attachLazily();
+        }
+        return mObjectGraph;
+    }
+
+    /**
+     * Gets the component's graph as a {@link GraphBackend.Graph}, first creating it if lazy is true and it hasn't been
+     * created yet.  A Dagger object graph is wrapped in a graph that shares its binding cache.
+     *
+     * @return the graph, or null if there is none
+     */
+    final GraphBackend.Graph getGraph(boolean lazy) {
+        if (!hasGraph() && lazy) {
+            attachLazily();
+        }
+        GraphBackend.Graph graph = mGraph;
+        if (graph == null && mObjectGraph != null) {
+            graph = new DaggerGraphBackend.DaggerGraph(getBindingCache());
+        }
+        return graph;
+    }
+
+    /**
+     * Injects a target object using the component's graph, first creating it if lazy is true and it hasn't been
+     * created yet.
+     */
+    final void inject(Object target, boolean lazy) {
+        if (!hasGraph() && lazy) {
+            boolean injected = mInjected;
+            attachLazily();
+            if (target == mComponent && !injected && mInjected) {
+                return; // already injected as part of creating the graph
+            }
+        }
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            graph.inject(target);
+            return;
+        }
+        checkState(mObjectGraph != null, "object graph must be initialized prior to calling inject");
+        getBindingCache().inject(target);
+    }
+
+    /**
+     * Injects each of an array of target objects using the component's graph, first creating it if lazy is true and
+     * it hasn't been created yet.
+     */
+    final void injectAll(Object[] targets, boolean lazy) {
+        if (!hasGraph() && lazy) {
+            attachLazily();
+        }
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            for (Object target : targets) {
+                graph.inject(target);
+            }
+            return;
+        }
+        checkState(mObjectGraph != null, "object graph must be initialized prior to calling injectAll");
+        getBindingCache().injectAll(targets);
+    }
+
+    /**
+     * Injects each of a collection of target objects using the component's graph, first creating it if lazy is true
+     * and it hasn't been created yet.
+     */
+    final void injectAll(Iterable<?> targets, boolean lazy) {
+        if (!hasGraph() && lazy) {
+            attachLazily();
+        }
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            for (Object target : targets) {
+                graph.inject(target);
+            }
+            return;
+        }
+        checkState(mObjectGraph != null, "object graph must be initialized prior to calling injectAll");
+        getBindingCache().injectAll(targets);
+    }
+
+    /**
+     * Gets an instance of a type from the component's graph, first creating it if lazy is true and it hasn't been
+     * created yet.
+     */
+    final <T> T get(Class<T> type, boolean lazy) {
+        if (!hasGraph() && lazy) {
+            attachLazily();
+        }
+        GraphBackend.Graph graph = mGraph;
+        if (graph != null) {
+            return graph.get(type);
+        }
+        checkState(mObjectGraph != null, "object graph must be initialized prior to calling get");
+        return getBindingCache().get(type);
+    }
+
+    /**
+     * Creates the component's graph, or rebuilds it if the parent graph has changed, and injects the component the
+     * first time.  Does nothing if the component has no parent graph.
+     */
+    final void attach() {
+        Injector parent = getParent();
+        if (parent == null) {
+            return;
+        }
+        ObjectGraph parentGraph = parent.getObjectGraph();
+        if (parentGraph == null) {
+            attachToBackendGraph(parent);
+            return;
+        }
+
+        if (mObjectGraph == null || parentGraph != mParentGraph) {
+            ObjectGraph objectGraph = mObjectGraph == null ? adoptObjectGraph(parentGraph) : null;
+            if (objectGraph != null) {
+                onObjectGraphCreated(parentGraph, null);
+            } else {
+                ModuleCollector collector = ModuleCollector.obtain();
+                try {
+                    Object[] modules = gatherModules(collector);
+                    objectGraph = plus(parentGraph, modules);
+                    onObjectGraphCreated(parentGraph, modules);
+                } finally {
+                    collector.recycle();
+                }
+            }
+            mObjectGraph = objectGraph;
+            ObjectGraphLeakTracker.getInstance().track(mComponent, objectGraph);
+        }
+        mParentGraph = parentGraph;
+
+        if (!mInjected) {
+            InjectionTracing.begin(mComponent, mScope, INJECT);
+            try {
+                mObjectGraph.inject(mComponent);
+            } finally {
+                InjectionTracing.end(mComponent, mScope, INJECT);
+            }
+            mInjected = true;
+        }
+
+        if (isConcurrent()) {
+            getBindingCache().freeze();
+        }
+    }
+
+    // extends the parent's graph when it comes from a GraphBackend other than Dagger's
+    private void attachToBackendGraph(Injector parent) {
+        if (!(parent instanceof ExtendedInjector)) {
+            return;
+        }
+        GraphBackend.Graph parentGraph = ((ExtendedInjector) parent).getGraph();
+        if (parentGraph == null) {
+            return;
+        }
+
+        if (mGraph == null || parentGraph != mParentBackendGraph) {
+            ModuleCollector collector = ModuleCollector.obtain();
+            try {
+                Object[] modules = gatherModules(collector);
+                InjectionTracing.begin(mComponent, mScope, CREATE_GRAPH);
+                try {
+                    mGraph = parentGraph.plus(modules);
+                } finally {
+                    InjectionTracing.end(mComponent, mScope, CREATE_GRAPH);
+                }
+            } finally {
+                collector.recycle();
+            }
+        }
+        mParentBackendGraph = parentGraph;
+
+        if (!mInjected) {
+            InjectionTracing.begin(mComponent, mScope, INJECT);
+            try {
+                mGraph.inject(mComponent);
+            } finally {
+                InjectionTracing.end(mComponent, mScope, INJECT);
+            }
+            mInjected = true;
+        }
+    }
+
+    // a lazily created graph may first be needed by several threads at once
+    private synchronized void attachLazily() {
+        if (!hasGraph()) {
+            attach();
+        }
+    }
+
+    private boolean hasGraph() {
+        return mObjectGraph != null || mGraph != null;
+    }
+
+    /**
+     * Injects the component using a graph cached elsewhere (see {@link ObjectGraphCache}), and makes that graph, and
+     * its binding cache, the component's.
+     */
+    final void injectComponent(ObjectGraphCache.Entry entry) {
+        mObjectGraph = entry.objectGraph;
+        mBindingCache = entry.bindingCache;
+        InjectionTracing.begin(mComponent, mScope, INJECT);
+        try {
+            mBindingCache.inject(mComponent);
+        } finally {
+            InjectionTracing.end(mComponent, mScope, INJECT);
+        }
+        mInjected = true;
+    }
+
+    /**
+     * Gets the graph cached for the component's class (see {@link ObjectGraphCache}), building and caching one if
+     * there is none for the current parent graph.  The component is not injected.  A graph built without a module of
+     * componentModuleClass is not cached, and is returned for this use only.
+     *
+     * @param componentModuleClass the class of the component's own module, whose references are swapped in on each use
+     */
+    final ObjectGraphCache.Entry getCachedObjectGraph(Class<?> componentModuleClass) {
+        Injector parent = getParent();
+        ObjectGraph parentGraph = parent != null ? parent.getObjectGraph() : null;
+        checkState(parentGraph != null, "object graph caching requires the parent to have a Dagger object graph");
+        ObjectGraphCache.Entry entry = ObjectGraphCache.get(mComponent.getClass(), parentGraph);
+        if (entry == null) {
+            ModuleCollector collector = ModuleCollector.obtain();
+            try {
+                Object[] modules = gatherModules(collector);
+                ObjectGraph objectGraph = plus(parentGraph, modules);
+                Object componentModule = ObjectGraphCache.findModule(modules, componentModuleClass);
+                entry = componentModule != null
+                        ? ObjectGraphCache.put(mComponent.getClass(), parentGraph, objectGraph, componentModule)
+                        : new ObjectGraphCache.Entry(parentGraph, objectGraph, null);
+            } finally {
+                collector.recycle();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Arranges for the component's own module, taken from its {@link ModulePool}, to be recycled when the graph is torn
+     * down.
+     *
+     * @return the module
+     */
+    final <T> T recycleOnDestroy(T module) {
+        mRecyclableModule = module;
+        return module;
+    }
+
+    /**
+     * Releases the component's graph and modules, recycling its own module if it came from a pool, so that the
+     * delegate is as new.
+     */
+    final void destroy() {
+        Object recyclableModule = mRecyclableModule;
+        ObjectGraphLeakTracker.getInstance().onDestroyed(mComponent, false);
+        clear();
+        if (recyclableModule != null) {
+            recycle(recyclableModule);
+        }
+    }
+
+    /**
+     * Releases the component's graph and modules without recycling its own module, for a graph that lives on after
+     * the component (see {@link ActivityGraphRetainer}), so that the delegate is as new.
+     */
+    final void release() {
+        ObjectGraphLeakTracker.getInstance().onDestroyed(mComponent, true);
+        clear();
+    }
+
+    private void clear() {
+        // Eagerly clear the reference to the graph to allow it to be garbage collected as soon as possible.
+        mObjectGraph = null;
+        mBindingCache = null;
+        mParentGraph = null;
+        mGraph = null;
+        mParentBackendGraph = null;
+        mInjected = false;
+        mRecyclableModule = null;
+    }
+
+    // created on first use, since most graphs are only used to inject their component
+    private BindingCache getBindingCache() {
+        BindingCache bindingCache = mBindingCache;
+        if (bindingCache == null || bindingCache.getObjectGraph() != mObjectGraph) {
+            bindingCache = new BindingCache(mObjectGraph);
+            mBindingCache = bindingCache;
+        }
+        return bindingCache;
+    }
+
+    private static void recycle(Object module) {
+        if (module instanceof InjectingActivityModule) {
+            ((InjectingActivityModule) module).recycle();
+        } else if (module instanceof InjectingFragmentModule) {
+            ((InjectingFragmentModule) module).recycle();
+        } else if (module instanceof InjectingService.InjectingServiceModule) {
+            ((InjectingService.InjectingServiceModule) module).recycle();
+        } else if (module instanceof InjectingAppWidgetProvider.InjectingAppWidgetProviderModule) {
+            ((InjectingAppWidgetProvider.InjectingAppWidgetProviderModule) module).recycle();
+        }
+    }
+
+    // collects the component's modules into an array borrowed from the collector
+    private Object[] gatherModules(ModuleCollector collector) {
+        InjectionTracing.begin(mComponent, mScope, GET_MODULES);
+        try {
+            collectModules(collector);
+            return collector.borrowArray();
+        } finally {
+            InjectionTracing.end(mComponent, mScope, GET_MODULES);
+        }
+    }
+
+    private ObjectGraph plus(ObjectGraph parentGraph, Object[] modules) {
+        InjectionTracing.begin(mComponent, mScope, CREATE_GRAPH);
+        try {
+            return parentGraph.plus(modules);
+        } finally {
+            InjectionTracing.end(mComponent, mScope, CREATE_GRAPH);
+        }
+    }
+}
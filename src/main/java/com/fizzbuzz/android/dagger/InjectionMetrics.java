@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A registry of injection metrics, suitable for use in production builds.  For each component class, it counts the
+ * phases of object graph setup (see {@link InjectionPhase}) and keeps a latency histogram for a sample of them.
+ * <p/>
+ * Recording is lock-free, and allocation-free once a component class has been seen: counters and histogram buckets
+ * are atomic arrays, and the start times of in-progress phases are kept in a per-thread array.  Only one in every
+ * {@link #setSampleInterval(int) N} phases on a thread is timed; the rest are just counted.
+ * <p/>
+ * Recording is disabled by default; enable it with {@link #setEnabled(boolean)}.  The registry is available for
+ * injection from the application-scope graph, and {@link #snapshot()} can be used to export its contents.
+ */
+public final class InjectionMetrics {
+    /**
+     * The default sample interval, which times 1% of phases.
+     */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+
+    /**
+     * The number of buckets in each latency histogram.  Bucket 0 counts durations of 0ns; bucket i > 0 counts durations
+     * in [2^(i-1), 2^i) ns, with the last bucket also counting anything longer.
+     */
+    public static final int HISTOGRAM_BUCKETS = 40;
+
+    /**
+     * The number of buckets in each budget histogram.  Bucket i < 10 counts work that used [10i, 10(i+1))% of its time
+     * budget; the last bucket counts work that used all of its budget, or overran it.
+     */
+    public static final int BUDGET_BUCKETS = 11;
+
+    private static final InjectionMetrics sInstance = new InjectionMetrics();
+
+    private static final int PHASES = InjectionPhase.values().length;
+    private static final int MAX_DEPTH = 8;
+
+    // per-thread state: [0] = sample counter, [1] = depth, [2..] = start times of in-progress phases (or NOT_TIMED or
+    // NOT_RECORDED), followed by the ordinals of the same phases
+    private static final int SAMPLE_COUNTER = 0;
+    private static final int DEPTH = 1;
+    private static final int STACK = 2;
+    private static final int PHASE_STACK = STACK + MAX_DEPTH;
+    private static final long NOT_TIMED = -1;
+    private static final long NOT_RECORDED = -2;
+
+    private final ConcurrentHashMap<Class<?>, ComponentMetrics> mComponents =
+            new ConcurrentHashMap<Class<?>, ComponentMetrics>();
+    private final ThreadLocal<long[]> mThreadState = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[PHASE_STACK + MAX_DEPTH];
+        }
+    };
+    private volatile boolean mEnabled;
+    private volatile boolean mTracking;
+    private volatile int mSampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+    private InjectionMetrics() {
+    }
+
+    /**
+     * Gets the registry.
+     *
+     * @return the registry
+     */
+    public static InjectionMetrics getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Enables or disables recording.
+     *
+     * @param enabled true to record metrics
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled) {
+            mTracking = true;
+        }
+        mEnabled = enabled;
+    }
+
+    /**
+     * Returns whether recording is enabled.
+     *
+     * @return true if metrics are being recorded
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Returns whether phases must be reported with {@link #begin(InjectionPhase)} and {@link #end}.  This is true once
+     * recording has been enabled, even if it has since been disabled, so that every phase that was begun is ended and
+     * the per-thread phase stack stays balanced.
+     */
+    boolean isTracking() {
+        return mTracking;
+    }
+
+    /**
+     * Sets how often phases are timed: one in every sampleInterval phases on each thread.  For example, 100 times 1% of
+     * phases, and 1 times all of them.
+     *
+     * @param sampleInterval the sample interval; must be at least 1
+     */
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sample interval must be at least 1");
+        }
+        mSampleInterval = sampleInterval;
+    }
+
+    /**
+     * Gets the sample interval.
+     *
+     * @return the sample interval
+     */
+    public int getSampleInterval() {
+        return mSampleInterval;
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset() {
+        mComponents.clear();
+    }
+
+    /**
+     * Takes a snapshot of everything recorded so far.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        Map<Class<?>, ComponentSnapshot> components = new HashMap<Class<?>, ComponentSnapshot>();
+        for (Map.Entry<Class<?>, ComponentMetrics> entry : mComponents.entrySet()) {
+            components.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new Snapshot(components);
+    }
+
+    /**
+     * Records how much of its time budget a component's work used, such as an asynchronous broadcast receiver handling
+     * a broadcast before the system's deadline.  Unlike phases, every occurrence is recorded.
+     */
+    void recordBudget(Class<?> componentClass, InjectionScope scope, long elapsedNanos, long budgetNanos) {
+        getComponentMetrics(componentClass, scope).recordBudget(elapsedNanos, budgetNanos);
+    }
+
+    void begin(InjectionPhase phase) {
+        long[] state = mThreadState.get();
+        int depth = (int) state[DEPTH];
+        if (depth < MAX_DEPTH) {
+            // whether the phase is recorded is decided here, and its end follows that decision even if recording has
+            // been enabled or disabled in the meantime
+            long start = NOT_RECORDED;
+            if (mEnabled) {
+                start = ++state[SAMPLE_COUNTER] % mSampleInterval == 0 ? System.nanoTime() : NOT_TIMED;
+            }
+            state[STACK + depth] = start;
+            state[PHASE_STACK + depth] = phase.ordinal();
+        }
+        state[DEPTH] = depth + 1;
+    }
+
+    void end(Class<?> componentClass, InjectionScope scope, InjectionPhase phase) {
+        long[] state = mThreadState.get();
+        int depth = (int) state[DEPTH] - 1;
+        long start = NOT_TIMED;
+        if (depth >= MAX_DEPTH) {
+            state[DEPTH] = depth; // too deep to have been kept
+            if (!mEnabled) {
+                return;
+            }
+        } else {
+            // the phase ends the innermost in-progress phase of the same kind; any phases begun inside it that are
+            // still in progress never ended (e.g. they threw), and are discarded along with it
+            while (depth >= 0 && state[PHASE_STACK + depth] != phase.ordinal()) {
+                depth--;
+            }
+            if (depth < 0) {
+                return; // recording was first enabled part way through the phase
+            }
+            state[DEPTH] = depth;
+            start = state[STACK + depth];
+            if (start == NOT_RECORDED) {
+                return; // recording was disabled when the phase began
+            }
+        }
+
+        ComponentMetrics metrics = getComponentMetrics(componentClass, scope);
+        metrics.record(phase, start < 0 ? -1 : System.nanoTime() - start);
+    }
+
+    private ComponentMetrics getComponentMetrics(Class<?> componentClass, InjectionScope scope) {
+        ComponentMetrics metrics = mComponents.get(componentClass);
+        if (metrics == null) {
+            ComponentMetrics newMetrics = new ComponentMetrics(scope);
+            metrics = mComponents.putIfAbsent(componentClass, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    static int bucketFor(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos);
+        return bucket < HISTOGRAM_BUCKETS ? bucket : HISTOGRAM_BUCKETS - 1;
+    }
+
+    private static final class ComponentMetrics {
+        // per phase: [0] = count, [1] = sampled count, [2] = total sampled nanos
+        private static final int COUNT = 0;
+        private static final int SAMPLED_COUNT = 1;
+        private static final int SAMPLED_NANOS = 2;
+        private static final int COUNTERS = 3;
+
+        final InjectionScope mScope;
+        final AtomicLongArray mCounters = new AtomicLongArray(PHASES * COUNTERS);
+        final AtomicLongArray mHistograms = new AtomicLongArray(PHASES * HISTOGRAM_BUCKETS);
+        final AtomicLongArray mBudgetHistogram = new AtomicLongArray(BUDGET_BUCKETS);
+        final AtomicLong mMaxBudgetPercent = new AtomicLong();
+
+        ComponentMetrics(InjectionScope scope) {
+            mScope = scope;
+        }
+
+        void record(InjectionPhase phase, long nanos) {
+            int counters = phase.ordinal() * COUNTERS;
+            mCounters.incrementAndGet(counters + COUNT);
+            if (nanos >= 0) {
+                mCounters.incrementAndGet(counters + SAMPLED_COUNT);
+                mCounters.addAndGet(counters + SAMPLED_NANOS, nanos);
+                mHistograms.incrementAndGet(phase.ordinal() * HISTOGRAM_BUCKETS + bucketFor(nanos));
+            }
+        }
+
+        void recordBudget(long elapsedNanos, long budgetNanos) {
+            long percent = budgetNanos > 0 ? elapsedNanos * 100 / budgetNanos : 100;
+            mBudgetHistogram.incrementAndGet((int) Math.min(percent / 10, BUDGET_BUCKETS - 1));
+            long max = mMaxBudgetPercent.get();
+            while (percent > max && !mMaxBudgetPercent.compareAndSet(max, percent)) {
+                max = mMaxBudgetPercent.get();
+            }
+        }
+
+        ComponentSnapshot snapshot() {
+            long[] counters = new long[mCounters.length()];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = mCounters.get(i);
+            }
+            long[] histograms = new long[mHistograms.length()];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = mHistograms.get(i);
+            }
+            long[] budgetHistogram = new long[BUDGET_BUCKETS];
+            for (int i = 0; i < BUDGET_BUCKETS; i++) {
+                budgetHistogram[i] = mBudgetHistogram.get(i);
+            }
+            return new ComponentSnapshot(mScope, counters, histograms, budgetHistogram, mMaxBudgetPercent.get());
+        }
+    }
+
+    /**
+     * A point-in-time copy of the metrics for all component classes.
+     */
+    public static final class Snapshot {
+        private final Map<Class<?>, ComponentSnapshot> mComponents;
+
+        Snapshot(Map<Class<?>, ComponentSnapshot> components) {
+            mComponents = Collections.unmodifiableMap(components);
+        }
+
+        /**
+         * Gets the metrics for each component class that has been recorded.
+         *
+         * @return a map from component class to its metrics
+         */
+        public Map<Class<?>, ComponentSnapshot> getComponents() {
+            return mComponents;
+        }
+    }
+
+    /**
+     * A point-in-time copy of the metrics for one component class.
+     */
+    public static final class ComponentSnapshot {
+        private final InjectionScope mScope;
+        private final long[] mCounters;
+        private final long[] mHistograms;
+        private final long[] mBudgetHistogram;
+        private final long mMaxBudgetPercent;
+
+        ComponentSnapshot(InjectionScope scope, long[] counters, long[] histograms, long[] budgetHistogram,
+                long maxBudgetPercent) {
+            mScope = scope;
+            mCounters = counters;
+            mHistograms = histograms;
+            mBudgetHistogram = budgetHistogram;
+            mMaxBudgetPercent = maxBudgetPercent;
+        }
+
+        /**
+         * Gets the scope of the component's graph.
+         *
+         * @return the scope
+         */
+        public InjectionScope getScope() {
+            return mScope;
+        }
+
+        /**
+         * Gets the number of times a phase has been performed.
+         *
+         * @param phase the phase
+         * @return the count
+         */
+        public long getCount(InjectionPhase phase) {
+            return mCounters[phase.ordinal() * ComponentMetrics.COUNTERS + ComponentMetrics.COUNT];
+        }
+
+        /**
+         * Gets the number of times a phase has been timed.
+         *
+         * @param phase the phase
+         * @return the sampled count
+         */
+        public long getSampledCount(InjectionPhase phase) {
+            return mCounters[phase.ordinal() * ComponentMetrics.COUNTERS + ComponentMetrics.SAMPLED_COUNT];
+        }
+
+        /**
+         * Gets the mean duration of the timed occurrences of a phase.
+         *
+         * @param phase the phase
+         * @return the mean duration in nanoseconds, or 0 if the phase has not been timed
+         */
+        public long getMeanNanos(InjectionPhase phase) {
+            long sampledCount = getSampledCount(phase);
+            long sampledNanos = mCounters[phase.ordinal() * ComponentMetrics.COUNTERS + ComponentMetrics.SAMPLED_NANOS];
+            return sampledCount == 0 ? 0 : sampledNanos / sampledCount;
+        }
+
+        /**
+         * Gets the latency histogram for a phase.  See {@link InjectionMetrics#HISTOGRAM_BUCKETS} for the bucket
+         * boundaries.
+         *
+         * @param phase the phase
+         * @return a copy of the bucket counts
+         */
+        public long[] getHistogram(InjectionPhase phase) {
+            long[] histogram = new long[HISTOGRAM_BUCKETS];
+            System.arraycopy(mHistograms, phase.ordinal() * HISTOGRAM_BUCKETS, histogram, 0, HISTOGRAM_BUCKETS);
+            return histogram;
+        }
+
+        /**
+         * Estimates a percentile of the timed durations of a phase, from its histogram.  The result is the upper bound of
+         * the bucket containing the percentile, so it overestimates by up to a factor of 2.
+         *
+         * @param phase the phase
+         * @param percentile the percentile, between 0 and 100
+         * @return the estimated duration in nanoseconds, or 0 if the phase has not been timed
+         */
+        public long getPercentileNanos(InjectionPhase phase, double percentile) {
+            long sampledCount = getSampledCount(phase);
+            if (sampledCount == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(sampledCount * percentile / 100);
+            long seen = 0;
+            int base = phase.ordinal() * HISTOGRAM_BUCKETS;
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                seen += mHistograms[base + i];
+                if (seen >= threshold) {
+                    return i == 0 ? 0 : 1L << i;
+                }
+            }
+            return 1L << (HISTOGRAM_BUCKETS - 1);
+        }
+
+        /**
+         * Gets the budget histogram: how much of its time budget each occurrence of the component's budgeted work used.
+         * See {@link InjectionMetrics#BUDGET_BUCKETS} for the bucket boundaries.
+         *
+         * @return a copy of the bucket counts
+         */
+        public long[] getBudgetHistogram() {
+            return mBudgetHistogram.clone();
+        }
+
+        /**
+         * Gets the number of times the component's budgeted work overran its time budget.
+         *
+         * @return the overrun count
+         */
+        public long getBudgetOverruns() {
+            return mBudgetHistogram[BUDGET_BUCKETS - 1];
+        }
+
+        /**
+         * Gets the largest share of its time budget that the component's budgeted work has used.
+         *
+         * @return the percentage of the budget, which is at least 100 if the work ran out of budget, or 0 if none has
+         *         been recorded
+         */
+        public long getMaxBudgetPercent() {
+            return mMaxBudgetPercent;
+        }
+    }
+}
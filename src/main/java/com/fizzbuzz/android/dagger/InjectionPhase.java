@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * The phases of setting up a component's object graph, as reported to an {@link InjectionTracer}.
+ */
+public enum InjectionPhase {
+    /**
+     * Gathering the component's modules via collectModules(ModuleCollector) or getModules().
+     */
+    GET_MODULES,
+
+    /**
+     * Creating the object graph, via ObjectGraph.create() or ObjectGraph.plus().
+     */
+    CREATE_GRAPH,
+
+    /**
+     * Injecting the component itself.
+     */
+    INJECT,
+
+    /**
+     * Validating the object graph.
+     */
+    VALIDATE
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * The scopes in which fb-android-dagger creates object graphs.  Each scope has a level, which is its depth in the graph
+ * hierarchy: the application-scope graph is at level 0, the graphs that extend it directly are at level 1, and so on.
+ */
+public enum InjectionScope {
+    APPLICATION(0),
+    ACTIVITY(1),
+    SERVICE(1),
+    BROADCAST_RECEIVER(1),
+    APP_WIDGET_PROVIDER(1),
+    FRAGMENT(2),
+    REQUEST(2);
+
+    private final int mLevel;
+
+    InjectionScope(int level) {
+        mLevel = level;
+    }
+
+    /**
+     * Gets the depth of this scope in the graph hierarchy.
+     *
+     * @return the level, where 0 is the application scope
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+}
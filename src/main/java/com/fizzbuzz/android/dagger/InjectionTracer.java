@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * Receives notification of the phases of object graph setup performed by the Injecting* base classes.  Install a
+ * tracer with {@link InjectionTracing#setTracer(InjectionTracer)}.
+ * <p/>
+ * Sections are properly nested and are begun and ended on the same thread.  Every section that is begun is ended,
+ * including when its phase throws an exception.
+ */
+public interface InjectionTracer {
+    /**
+     * Called when a phase begins.
+     *
+     * @param componentClass the class of the component whose graph is being set up
+     * @param scope the scope of the graph
+     * @param phase the phase
+     */
+    public void beginSection(Class<?> componentClass, InjectionScope scope, InjectionPhase phase);
+
+    /**
+     * Called when a phase ends.
+     *
+     * @param componentClass the class of the component whose graph is being set up
+     * @param scope the scope of the graph
+     * @param phase the phase
+     */
+    public void endSection(Class<?> componentClass, InjectionScope scope, InjectionPhase phase);
+}
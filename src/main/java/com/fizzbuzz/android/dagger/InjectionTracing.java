@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * Holds the {@link InjectionTracer} to which the Injecting* base classes report, and forwards the same phases to
+ * {@link InjectionMetrics} when it is enabled.  No tracer is installed and metrics are disabled by default, in which
+ * case tracing costs a couple of volatile reads per phase.
+ */
+public final class InjectionTracing {
+    private static volatile InjectionTracer sTracer;
+
+    private InjectionTracing() {
+    }
+
+    /**
+     * Installs a tracer.  This is typically done at the start of Application.onCreate, before calling super.onCreate.
+     *
+     * @param tracer the tracer, or null to disable tracing
+     */
+    public static void setTracer(InjectionTracer tracer) {
+        sTracer = tracer;
+    }
+
+    /**
+     * Gets the installed tracer.
+     *
+     * @return the tracer, or null if none is installed
+     */
+    public static InjectionTracer getTracer() {
+        return sTracer;
+    }
+
+    static void begin(Object component, InjectionScope scope, InjectionPhase phase) {
+        InjectionTracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.beginSection(component.getClass(), scope, phase);
+        }
+
+        InjectionMetrics metrics = InjectionMetrics.getInstance();
+        if (metrics.isTracking()) {
+            metrics.begin(phase);
+        }
+    }
+
+    static void end(Object component, InjectionScope scope, InjectionPhase phase) {
+        InjectionMetrics metrics = InjectionMetrics.getInstance();
+        if (metrics.isTracking()) {
+            metrics.end(component.getClass(), scope, phase);
+        }
+
+        InjectionTracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.endSection(component.getClass(), scope, phase);
+        }
+    }
+}
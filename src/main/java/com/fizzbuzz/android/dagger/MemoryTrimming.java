@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
+import android.os.Build;
+import dagger.ObjectGraph;
+
+/**
+ * Passes a component's memory callbacks on to the singletons of its graph: those that implement ComponentCallbacks or
+ * ComponentCallbacks2 are called back, and then the {@link Evictable} ones are dropped.  Only the singletons of the
+ * component's own graph are called back, not those of the graphs it extends, which are called back by their own
+ * component.
+ */
+final class MemoryTrimming {
+    private MemoryTrimming() {
+    }
+
+    /**
+     * Handles a component's onTrimMemory.
+     *
+     * @param objectGraph the component's graph, or null if it has none
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    static void onTrimMemory(ObjectGraph objectGraph, int level) {
+        if (objectGraph == null) {
+            return;
+        }
+        for (Object singleton : EvictingLoader.getSingletons(objectGraph).values()) {
+            if (singleton instanceof ComponentCallbacks2) {
+                ((ComponentCallbacks2) singleton).onTrimMemory(level);
+            }
+        }
+        EvictingLoader.evict(objectGraph, level);
+    }
+
+    /**
+     * Handles a component's onLowMemory, evicting singletons as for the highest trim level.
+     *
+     * @param objectGraph the component's graph, or null if it has none
+     */
+    static void onLowMemory(ObjectGraph objectGraph) {
+        if (objectGraph == null) {
+            return;
+        }
+        for (Object singleton : EvictingLoader.getSingletons(objectGraph).values()) {
+            if (singleton instanceof ComponentCallbacks) {
+                ((ComponentCallbacks) singleton).onLowMemory();
+            }
+        }
+        EvictingLoader.evict(objectGraph, ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the dagger modules for a component's object graph.  Components pass a collector to their
+ * collectModules(ModuleCollector) method, which adds modules to it, in place of building a list in getModules().
+ * <p/>
+ * Collectors are reused: each thread has one, whose buffer, and the exact-size arrays handed to Dagger, are kept from
+ * one graph to the next.  So once warmed up, collecting modules allocates nothing but the modules themselves, and
+ * modules declared with {@link StaticModules} are not even allocated after the first time.
+ * <p/>
+ * Modules that are expensive to construct can be added as {@link ModuleFactory ModuleFactories} instead, which are run
+ * concurrently once collection is complete: one on the thread creating the graph, and the rest on a shared pool of
+ * threads, which is as large as the number of available processors and whose threads exit when idle.
+ */
+public final class ModuleCollector {
+    private static final int INITIAL_CAPACITY = 4;
+    // arrays up to this length are cached for reuse
+    private static final int MAX_CACHED_ARRAY_LENGTH = 16;
+    private static final Object[] NO_MODULES = new Object[0];
+    private static final long FACTORY_THREAD_KEEP_ALIVE_SECONDS = 1;
+
+    private static final ThreadLocal<ModuleCollector> sCollectors = new ThreadLocal<ModuleCollector>() {
+        @Override
+        protected ModuleCollector initialValue() {
+            return new ModuleCollector();
+        }
+    };
+    private static final ConcurrentHashMap<Class<?>, Boolean> sOverridesGetModules =
+            new ConcurrentHashMap<Class<?>, Boolean>();
+    private static final ConcurrentHashMap<Class<?>, Object[]> sStaticModules =
+            new ConcurrentHashMap<Class<?>, Object[]>();
+    private static ExecutorService sFactoryExecutor;
+
+    private Object[] mBuffer = new Object[INITIAL_CAPACITY];
+    private int mSize;
+    private int mFactories;
+    private final Object[][] mArrays = new Object[MAX_CACHED_ARRAY_LENGTH + 1][];
+    private Object[] mBorrowedArray;
+    private boolean mInUse;
+
+    private ModuleCollector() {
+    }
+
+    /**
+     * Adds a module.
+     *
+     * @param module the module
+     */
+    public void add(Object module) {
+        if (mSize == mBuffer.length) {
+            Object[] buffer = new Object[mSize * 2];
+            System.arraycopy(mBuffer, 0, buffer, 0, mSize);
+            mBuffer = buffer;
+        }
+        mBuffer[mSize++] = module;
+    }
+
+    /**
+     * Adds a list of modules.
+     *
+     * @param modules the modules
+     */
+    public void addAll(List<?> modules) {
+        for (int i = 0, n = modules.size(); i < n; i++) {
+            add(modules.get(i));
+        }
+    }
+
+    /**
+     * Adds a module that is created by a factory, concurrently with the other factories added to this collector, once
+     * all the modules have been collected.  The module takes the factory's place among the modules.
+     *
+     * @param factory the factory
+     */
+    public void addFactory(ModuleFactory<?> factory) {
+        add(new FactoryModule(factory));
+        mFactories++;
+    }
+
+    /**
+     * Adds the modules declared with {@link StaticModules} on a component class, constructing them the first time.
+     *
+     * @param componentClass the component class
+     * @throws IllegalStateException if a module can't be constructed
+     */
+    public void addStaticModules(Class<?> componentClass) {
+        Object[] modules = sStaticModules.get(componentClass);
+        if (modules == null) {
+            modules = createStaticModules(componentClass);
+            Object[] existing = sStaticModules.putIfAbsent(componentClass, modules);
+            if (existing != null) {
+                modules = existing;
+            }
+        }
+        for (Object module : modules) {
+            add(module);
+        }
+    }
+
+    /**
+     * Gets the number of modules collected so far.
+     *
+     * @return the number of modules
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets an empty collector.  Callers must {@link #recycle()} it when they are done with it.
+     */
+    static ModuleCollector obtain() {
+        ModuleCollector collector = sCollectors.get();
+        if (collector.mInUse) {
+            // a graph is being created while another is being collected on the same thread; don't share
+            collector = new ModuleCollector();
+        }
+        collector.mInUse = true;
+        return collector;
+    }
+
+    /**
+     * Gets the collected modules in a new array, which the caller may keep.
+     *
+     * @throws IllegalStateException if a module factory fails
+     */
+    Object[] toArray() {
+        createFactoryModules();
+        Object[] result = new Object[mSize];
+        System.arraycopy(mBuffer, 0, result, 0, mSize);
+        return result;
+    }
+
+    /**
+     * Gets the collected modules in an array that is reused once this collector is recycled.  The caller must not keep
+     * a reference to it.
+     *
+     * @throws IllegalStateException if a module factory fails
+     */
+    Object[] borrowArray() {
+        createFactoryModules();
+        if (mSize > MAX_CACHED_ARRAY_LENGTH) {
+            return toArray();
+        }
+        Object[] result = mArrays[mSize];
+        if (result == null) {
+            result = mSize == 0 ? NO_MODULES : new Object[mSize];
+            mArrays[mSize] = result;
+        }
+        System.arraycopy(mBuffer, 0, result, 0, mSize);
+        mBorrowedArray = result;
+        return result;
+    }
+
+    /**
+     * Empties this collector, releasing its references to the collected modules, and makes it available for reuse.
+     */
+    void recycle() {
+        for (int i = 0; i < mSize; i++) {
+            mBuffer[i] = null;
+        }
+        if (mBorrowedArray != null) {
+            for (int i = 0; i < mBorrowedArray.length; i++) {
+                mBorrowedArray[i] = null;
+            }
+            mBorrowedArray = null;
+        }
+        mSize = 0;
+        mFactories = 0;
+        mInUse = false;
+    }
+
+    /**
+     * Returns whether a component class, or one of its superclasses below baseClass, overrides getModules().  Such
+     * classes predate collectModules(ModuleCollector), so their modules must still be gathered via getModules().
+     */
+    static boolean overridesGetModules(Class<?> componentClass, Class<?> baseClass) {
+        Boolean result = sOverridesGetModules.get(componentClass);
+        if (result == null) {
+            result = Boolean.FALSE;
+            for (Class<?> cls = componentClass; cls != baseClass && cls != null; cls = cls.getSuperclass()) {
+                try {
+                    cls.getDeclaredMethod("getModules");
+                    result = Boolean.TRUE;
+                    break;
+                } catch (NoSuchMethodException e) {
+                    // keep looking
+                }
+            }
+            sOverridesGetModules.put(componentClass, result);
+        }
+        return result;
+    }
+
+    // runs the factories, all but the last on the shared pool, and puts the modules they create in their place
+    private void createFactoryModules() {
+        if (mFactories == 0) {
+            return;
+        }
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(mFactories - 1);
+        FactoryModule last = null;
+        for (int i = 0; i < mSize; i++) {
+            if (mBuffer[i] instanceof FactoryModule) {
+                if (last != null) {
+                    futures.add(getFactoryExecutor().submit(last));
+                }
+                last = (FactoryModule) mBuffer[i];
+            }
+        }
+        mFactories = 0;
+
+        Object lastModule = last.call();
+        try {
+            for (int i = 0, f = 0; i < mSize; i++) {
+                if (mBuffer[i] instanceof FactoryModule) {
+                    mBuffer[i] = mBuffer[i] == last ? lastModule : futures.get(f++).get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for module factories", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("could not create module", cause);
+        }
+    }
+
+    private static synchronized ExecutorService getFactoryExecutor() {
+        if (sFactoryExecutor == null) {
+            // no core threads, so that the pool costs nothing once startup is over; when all threads are busy, the
+            // thread creating the graph runs the factory itself
+            sFactoryExecutor = new ThreadPoolExecutor(0, Runtime.getRuntime().availableProcessors(),
+                    FACTORY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new NamedThreadFactory("ModuleCollector-factory-", false),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return sFactoryExecutor;
+    }
+
+    private static Object[] createStaticModules(Class<?> componentClass) {
+        StaticModules annotation = componentClass.getAnnotation(StaticModules.class);
+        if (annotation == null) {
+            return NO_MODULES;
+        }
+        Class<?>[] moduleClasses = annotation.value();
+        Object[] modules = new Object[moduleClasses.length];
+        for (int i = 0; i < moduleClasses.length; i++) {
+            try {
+                Constructor<?> constructor = moduleClasses[i].getDeclaredConstructor();
+                constructor.setAccessible(true);
+                modules[i] = constructor.newInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("could not construct static module " + moduleClasses[i].getName(), e);
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Holds the place of a module that is yet to be created by its factory.
+     */
+    private static final class FactoryModule implements Callable<Object> {
+        private final ModuleFactory<?> mFactory;
+
+        FactoryModule(ModuleFactory<?> factory) {
+            mFactory = factory;
+        }
+
+        @Override
+        public Object call() {
+            Object module = mFactory.createModule();
+            if (module == null) {
+                throw new IllegalStateException("module factory " + mFactory.getClass().getName() + " returned null");
+            }
+            return module;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * Creates a module whose construction does real work, such as reading configuration or opening files.  Factories added
+ * to a {@link ModuleCollector} with {@link ModuleCollector#addFactory(ModuleFactory)} are run concurrently, each on its
+ * own thread, once all of a component's modules have been collected and before its object graph is created, so that
+ * the time spent constructing modules is that of the slowest factory rather than the sum of them all.
+ * <p/>
+ * Factories must therefore be safe to run concurrently with each other, and off the main thread.
+ */
+public interface ModuleFactory<T> {
+    /**
+     * Creates the module.
+     *
+     * @return the module
+     */
+    T createModule();
+}
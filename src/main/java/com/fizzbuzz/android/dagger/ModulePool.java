@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+/**
+ * A bounded pool of released module instances, so that components which are created and destroyed in quick succession
+ * can reuse the modules of earlier instances instead of allocating new ones.  Modules must be unbound from their
+ * component before they are released.
+ */
+final class ModulePool<T> {
+    static final int DEFAULT_CAPACITY = 8;
+
+    private final Object[] mModules;
+    private int mSize;
+
+    ModulePool(int capacity) {
+        mModules = new Object[capacity];
+    }
+
+    /**
+     * Takes a released module from the pool.
+     *
+     * @return the module, or null if the pool is empty
+     */
+    @SuppressWarnings("unchecked")
+    synchronized T acquire() {
+        if (mSize == 0) {
+            return null;
+        }
+        T module = (T) mModules[--mSize];
+        mModules[mSize] = null;
+        return module;
+    }
+
+    /**
+     * Returns a module to the pool, unless the pool is full.
+     */
+    synchronized void release(T module) {
+        if (mSize < mModules.length) {
+            mModules[mSize++] = module;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered threads for the worker pools of the Injecting... base classes, at background priority unless they
+ * must keep time, so that they don't compete with the main thread.
+ */
+final class NamedThreadFactory implements ThreadFactory {
+    private final String mNamePrefix;
+    private final boolean mBackground;
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * Class constructor.
+     *
+     * @param namePrefix the prefix of the threads' names, to which each thread's number is appended
+     * @param background true to run the threads at background priority
+     */
+    NamedThreadFactory(String namePrefix, boolean background) {
+        mNamePrefix = namePrefix;
+        mBackground = background;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (mBackground) {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                }
+                runnable.run();
+            }
+        }, mNamePrefix + mCount.incrementAndGet());
+    }
+}
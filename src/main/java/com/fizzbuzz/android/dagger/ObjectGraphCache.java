@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches extended object graphs by component class, so that short-lived components such as BroadcastReceivers can
+ * reuse the graph built for a previous instance of the same class instead of extending the parent graph each time.
+ * An entry is only reused while the parent graph it was built from is still current.
+ */
+final class ObjectGraphCache {
+    private static final Map<Class<?>, Entry> sEntries = new HashMap<Class<?>, Entry>();
+
+    private ObjectGraphCache() {
+    }
+
+    /**
+     * A cached graph, together with its binding cache and the component module whose per-call references are swapped
+     * in on each use.
+     * Callers must hold the entry's monitor while the component module is bound.
+     */
+    static final class Entry {
+        final ObjectGraph parentGraph;
+        final ObjectGraph objectGraph;
+        final BindingCache bindingCache;
+        final Object componentModule;
+
+        Entry(ObjectGraph parentGraph, ObjectGraph objectGraph, Object componentModule) {
+            this.parentGraph = parentGraph;
+            this.objectGraph = objectGraph;
+            this.bindingCache = new BindingCache(objectGraph);
+            this.componentModule = componentModule;
+        }
+    }
+
+    /**
+     * Gets the cached entry for a component class.
+     *
+     * @param componentClass the component class
+     * @param parentGraph the graph the cached graph must extend
+     * @return the entry, or null if there is no entry extending parentGraph
+     */
+    static Entry get(Class<?> componentClass, ObjectGraph parentGraph) {
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(componentClass);
+            return entry != null && entry.parentGraph == parentGraph ? entry : null;
+        }
+    }
+
+    /**
+     * Caches a graph for a component class, unless another thread has already cached one extending the same parent.
+     *
+     * @return the entry now cached for the component class
+     */
+    static Entry put(Class<?> componentClass, ObjectGraph parentGraph, ObjectGraph objectGraph,
+            Object componentModule) {
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(componentClass);
+            if (entry == null || entry.parentGraph != parentGraph) {
+                entry = new Entry(parentGraph, objectGraph, componentModule);
+                sEntries.put(componentClass, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Finds the first module of the given type.
+     *
+     * @return the module, or null if there is none
+     */
+    static Object findModule(Object[] modules, Class<?> moduleClass) {
+        for (Object module : modules) {
+            if (moduleClass.isInstance(module)) {
+                return module;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.os.Handler;
+import android.os.Looper;
+import dagger.ObjectGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A one-shot readiness gate for an object graph that is being created on a background thread.  Callers that need the
+ * graph can either block on {@link #await(long, TimeUnit)} or register a {@link Callback} to be notified on the main
+ * thread once the graph is available.
+ */
+public final class ObjectGraphGate {
+    private static final Executor MAIN_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Handler(Looper.getMainLooper()).post(command);
+        }
+    };
+
+    private final Executor mMainThread;
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+    private final List<Callback> mCallbacks = new ArrayList<Callback>();
+    private volatile ObjectGraph mObjectGraph;
+    private volatile boolean mOpen;
+    private volatile Throwable mFailure;
+
+    /**
+     * Receives notification that the gated object graph is ready for use.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread once the object graph has been created and its owner injected.
+         *
+         * @param objectGraph the object graph, or null if the owner's graph was created by a {@link GraphBackend} other
+         * than Dagger's
+         */
+        public void onObjectGraphReady(ObjectGraph objectGraph);
+    }
+
+    /**
+     * Class constructor.
+     */
+    public ObjectGraphGate() {
+        this(MAIN_THREAD);
+    }
+
+    /**
+     * Class constructor for tests, which run callbacks and failures through the given executor rather than on the
+     * main thread.
+     */
+    ObjectGraphGate(Executor mainThread) {
+        mMainThread = mainThread;
+    }
+
+    /**
+     * Returns whether the object graph is ready for use.
+     *
+     * @return true if the graph has been created
+     */
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    /**
+     * Blocks until the object graph is ready, or until the timeout expires.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout argument
+     * @return the object graph, or null if the timeout expired first (see {@link #isOpen()}) or the owner's graph was
+     * created by a {@link GraphBackend} other than Dagger's
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     * @throws IllegalStateException if creation of the object graph failed
+     */
+    public ObjectGraph await(long timeout, TimeUnit unit) throws InterruptedException {
+        mLatch.await(timeout, unit);
+        checkFailure();
+        return mObjectGraph;
+    }
+
+    /**
+     * Registers a callback to be invoked on the main thread once the object graph is ready.  If the graph is already
+     * ready, the callback is posted immediately.
+     *
+     * @param callback the callback
+     */
+    public void addCallback(Callback callback) {
+        synchronized (mCallbacks) {
+            if (!mOpen) {
+                mCallbacks.add(callback);
+                return;
+            }
+        }
+        post(callback, mObjectGraph);
+    }
+
+    /**
+     * Unregisters a callback that has not yet been invoked.
+     *
+     * @param callback the callback
+     */
+    public void removeCallback(Callback callback) {
+        synchronized (mCallbacks) {
+            mCallbacks.remove(callback);
+        }
+    }
+
+    void open(ObjectGraph objectGraph) {
+        List<Callback> callbacks;
+        synchronized (mCallbacks) {
+            mObjectGraph = objectGraph;
+            mOpen = true;
+            callbacks = new ArrayList<Callback>(mCallbacks);
+            mCallbacks.clear();
+        }
+        mLatch.countDown();
+
+        for (Callback callback : callbacks) {
+            post(callback, objectGraph);
+        }
+    }
+
+    void fail(final Throwable failure) {
+        synchronized (mCallbacks) {
+            mFailure = failure;
+            mCallbacks.clear();
+        }
+        mLatch.countDown();
+
+        // surface the failure on the main thread, just as it would have been had the graph been created there
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                checkFailure();
+            }
+        });
+    }
+
+    private void checkFailure() {
+        if (mFailure != null) {
+            throw new IllegalStateException("object graph creation failed", mFailure);
+        }
+    }
+
+    private void post(final Callback callback, final ObjectGraph objectGraph) {
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onObjectGraphReady(objectGraph);
+            }
+        });
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the object graphs of destroyed components that are still reachable, typically because a singleton of a longer
+ * lived graph has captured the component's Context or Injector.  Intended for debug builds and automated tests: when
+ * enabled, every graph created by an Injecting... component is tracked with a weak reference, and {@link #findLeaks()}
+ * reports the graphs, and components, that survive a garbage collection after the component was destroyed.
+ * <p/>
+ * For each leak, the path through which it is reachable is found by searching the fields of the singletons that
+ * have been instantiated by the graphs that are still live (see {@link Leak#getPath()}).  References held elsewhere,
+ * such as by static fields or running threads, are reported as leaks without a path.
+ * <p/>
+ * Tracking must be enabled before the graphs to be tracked are created, e.g. at the start of the application's
+ * onCreate.
+ */
+public final class ObjectGraphLeakTracker {
+    // bounds the search for a leak's path in very large heaps
+    private static final int MAX_OBJECTS_SEARCHED = 200000;
+    private static final int GC_ATTEMPTS = 3;
+
+    private static final ObjectGraphLeakTracker sInstance = new ObjectGraphLeakTracker();
+
+    private final List<TrackedGraph> mTrackedGraphs = new ArrayList<TrackedGraph>();
+    private final Map<Class<?>, Field[]> mFields = new ConcurrentHashMap<Class<?>, Field[]>();
+    private volatile boolean mEnabled;
+
+    private ObjectGraphLeakTracker() {
+    }
+
+    /**
+     * Gets the tracker.
+     *
+     * @return the tracker
+     */
+    public static ObjectGraphLeakTracker getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Enables or disables tracking.  Disabling it forgets all tracked graphs.
+     *
+     * @param enabled true to track graphs created from now on
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            synchronized (mTrackedGraphs) {
+                mTrackedGraphs.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns whether tracking is enabled.
+     *
+     * @return true if tracking is enabled
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Runs the garbage collector, and then reports the graphs of destroyed components that are still reachable.  This
+     * takes some time, and must not be called on the main thread of a production app.
+     *
+     * @return the leaks, or an empty list if there are none
+     */
+    public List<Leak> findLeaks() {
+        collectGarbage();
+
+        List<TrackedGraph> leaked = new ArrayList<TrackedGraph>();
+        List<ObjectGraph> liveGraphs = new ArrayList<ObjectGraph>();
+        synchronized (mTrackedGraphs) {
+            for (Iterator<TrackedGraph> it = mTrackedGraphs.iterator(); it.hasNext(); ) {
+                TrackedGraph tracked = it.next();
+                ObjectGraph objectGraph = tracked.objectGraph.get();
+                if (tracked.destroyed) {
+                    if (tracked.component.get() != null || (!tracked.graphRetained && objectGraph != null)) {
+                        leaked.add(tracked);
+                    } else {
+                        it.remove();
+                    }
+                } else if (objectGraph != null) {
+                    liveGraphs.add(objectGraph);
+                } else {
+                    it.remove();
+                }
+            }
+        }
+        if (leaked.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Leak> leaks = new ArrayList<Leak>();
+        for (TrackedGraph tracked : leaked) {
+            // a graph retained for the component's replacement is reachable by design
+            Object objectGraph = tracked.graphRetained ? null : tracked.objectGraph.get();
+            Object component = tracked.component.get();
+            leaks.add(new Leak(tracked.componentClassName, component != null,
+                    findPath(liveGraphs, component, objectGraph)));
+        }
+        return leaks;
+    }
+
+    /**
+     * Starts tracking a graph created for a component.
+     */
+    void track(Object component, ObjectGraph objectGraph) {
+        if (!mEnabled) {
+            return;
+        }
+        synchronized (mTrackedGraphs) {
+            mTrackedGraphs.add(new TrackedGraph(component, objectGraph));
+        }
+    }
+
+    /**
+     * Records that a component has been destroyed, after which it, and the graphs tracked for it unless graphRetained
+     * is true, should become unreachable.
+     *
+     * @param graphRetained true if the component's graph lives on (see {@link ActivityGraphRetainer})
+     */
+    void onDestroyed(Object component, boolean graphRetained) {
+        if (!mEnabled) {
+            return;
+        }
+        synchronized (mTrackedGraphs) {
+            for (TrackedGraph tracked : mTrackedGraphs) {
+                if (tracked.component.get() == component && !tracked.destroyed) {
+                    tracked.destroyed = true;
+                    tracked.graphRetained = graphRetained;
+                }
+            }
+        }
+    }
+
+    private static void collectGarbage() {
+        for (int i = 0; i < GC_ATTEMPTS; i++) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // breadth-first search of the fields of the live graphs' singletons, for the shortest path to either target
+    private String findPath(List<ObjectGraph> liveGraphs, Object component, Object objectGraph) {
+        Map<Object, PathNode> visited = new IdentityHashMap<Object, PathNode>();
+        Queue<Object> queue = new LinkedList<Object>();
+        for (ObjectGraph liveGraph : liveGraphs) {
+            for (Map.Entry<String, Object> singleton : EvictingLoader.getSingletons(liveGraph).entrySet()) {
+                Object instance = singleton.getValue();
+                if (!visited.containsKey(instance)) {
+                    visited.put(instance, new PathNode(null, "singleton " + singleton.getKey()));
+                    queue.add(instance);
+                }
+            }
+        }
+
+        while (!queue.isEmpty() && visited.size() < MAX_OBJECTS_SEARCHED) {
+            Object object = queue.poll();
+            if (object == component || (objectGraph != null && object == objectGraph)) {
+                return describe(visited, object);
+            }
+            Class<?> cls = object.getClass();
+            if (cls.isArray()) {
+                if (!cls.getComponentType().isPrimitive()) {
+                    for (int i = 0, n = Array.getLength(object); i < n; i++) {
+                        visit(visited, queue, object, "[" + i + "]", Array.get(object, i));
+                    }
+                }
+            } else if (!(object instanceof Reference) && !(object instanceof Class)) {
+                // weak and soft references don't keep their referents reachable
+                for (Field field : getFields(cls)) {
+                    try {
+                        visit(visited, queue, object, "." + field.getName(), field.get(object));
+                    } catch (IllegalAccessException e) {
+                        // skip
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void visit(Map<Object, PathNode> visited, Queue<Object> queue, Object parent, String step,
+            Object child) {
+        if (child != null && !(child instanceof String) && !visited.containsKey(child)) {
+            visited.put(child, new PathNode(parent, step));
+            queue.add(child);
+        }
+    }
+
+    private static String describe(Map<Object, PathNode> visited, Object target) {
+        List<String> steps = new ArrayList<String>();
+        for (Object object = target; object != null; ) {
+            PathNode node = visited.get(object);
+            steps.add(node.parent == null ? node.step : node.step + " (" + object.getClass().getName() + ")");
+            object = node.parent;
+        }
+        Collections.reverse(steps);
+        StringBuilder result = new StringBuilder();
+        for (String step : steps) {
+            result.append(step);
+        }
+        return result.toString();
+    }
+
+    private Field[] getFields(Class<?> cls) {
+        Field[] result = mFields.get(cls);
+        if (result == null) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException e) {
+                        // inaccessible platform class; skip the field
+                    }
+                }
+            }
+            result = fields.toArray(new Field[fields.size()]);
+            mFields.put(cls, result);
+        }
+        return result;
+    }
+
+    /**
+     * The graph of a destroyed component that was still reachable.
+     */
+    public static final class Leak {
+        private final String mComponentClassName;
+        private final boolean mComponentReachable;
+        private final String mPath;
+
+        Leak(String componentClassName, boolean componentReachable, String path) {
+            mComponentClassName = componentClassName;
+            mComponentReachable = componentReachable;
+            mPath = path;
+        }
+
+        /**
+         * Gets the class of the component whose graph leaked.
+         *
+         * @return the class name
+         */
+        public String getComponentClassName() {
+            return mComponentClassName;
+        }
+
+        /**
+         * Returns whether the component itself, not just its graph, was still reachable.
+         *
+         * @return true if the component leaked too
+         */
+        public boolean isComponentReachable() {
+            return mComponentReachable;
+        }
+
+        /**
+         * Gets the path through which the component, or its graph, is reachable: the key of the singleton binding it
+         * was found from, followed by the fields leading to it, e.g. "singleton com.example.ImageCache.mListener
+         * (com.example.MainActivity$1).this$0 (com.example.MainActivity)".
+         *
+         * @return the path, or null if it isn't reachable from the singletons of a live graph
+         */
+        public String getPath() {
+            return mPath;
+        }
+
+        @Override
+        public String toString() {
+            return mComponentClassName + (mComponentReachable ? " and its object graph" : "'s object graph")
+                    + " leaked" + (mPath != null ? " via " + mPath : " (not via a singleton)");
+        }
+    }
+
+    private static final class TrackedGraph {
+        final WeakReference<Object> component;
+        final String componentClassName;
+        final WeakReference<ObjectGraph> objectGraph;
+        boolean destroyed;
+        boolean graphRetained;
+
+        TrackedGraph(Object component, ObjectGraph objectGraph) {
+            this.component = new WeakReference<Object>(component);
+            this.componentClassName = component.getClass().getName();
+            this.objectGraph = new WeakReference<ObjectGraph>(objectGraph);
+        }
+    }
+
+    private static final class PathNode {
+        final Object parent;
+        final String step;
+
+        PathNode(Object parent, String step) {
+            this.parent = parent;
+            this.step = step;
+        }
+    }
+}
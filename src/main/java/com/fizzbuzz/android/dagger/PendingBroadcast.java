@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A broadcast being handled off the main thread after goAsync, which is finished by whichever comes first: its
+ * handling returning, or its time budget running out.  Used by InjectingAsyncBroadcastReceiver and
+ * InjectingCoalescingAppWidgetProvider, which share the watchdog thread that enforces budgets.
+ */
+final class PendingBroadcast {
+    /**
+     * Runs commands on the main thread.
+     */
+    static final Executor MAIN_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Handler(Looper.getMainLooper()).post(command);
+        }
+    };
+
+    private static ScheduledExecutorService sWatchdog;
+
+    private final Runnable mFinish;
+    private final Class<?> mComponentClass;
+    private final InjectionScope mScope;
+    private final long mBudgetNanos;
+    private final long mStartNanos = System.nanoTime();
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+    private volatile Future<?> mTimeout;
+
+    /**
+     * Class constructor.
+     *
+     * @param finish finishes the broadcast, e.g. by calling PendingResult.finish
+     * @param componentClass the class of the receiver, under which budget use is recorded
+     * @param scope the scope of the receiver
+     * @param budgetNanos the budget
+     */
+    PendingBroadcast(Runnable finish, Class<?> componentClass, InjectionScope scope, long budgetNanos) {
+        mFinish = finish;
+        mComponentClass = componentClass;
+        mScope = scope;
+        mBudgetNanos = budgetNanos;
+    }
+
+    /**
+     * Gets the executor on which broadcasts that run out of their budget are finished.
+     */
+    static synchronized ScheduledExecutorService getWatchdog() {
+        if (sWatchdog == null) {
+            sWatchdog = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("PendingBroadcast-watchdog-", false));
+        }
+        return sWatchdog;
+    }
+
+    /**
+     * Finishes the broadcast when its budget runs out, unless it has been finished by then.
+     *
+     * @param watchdog the executor on which to finish it
+     * @param onTimeout run after the broadcast is finished for running out of its budget, or null
+     */
+    void watch(ScheduledExecutorService watchdog, final Runnable onTimeout) {
+        Future<?> timeout = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (finish() && onTimeout != null) {
+                    onTimeout.run();
+                }
+            }
+        }, mBudgetNanos, TimeUnit.NANOSECONDS);
+        mTimeout = timeout;
+        if (mFinished.get()) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Finishes the broadcast and records how much of its budget it used, unless it has already been finished.
+     *
+     * @return true if the broadcast was finished by this call
+     */
+    boolean finish() {
+        if (!mFinished.compareAndSet(false, true)) {
+            return false;
+        }
+        long elapsedNanos = System.nanoTime() - mStartNanos;
+        Future<?> timeout = mTimeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        mFinish.run();
+
+        InjectionMetrics metrics = InjectionMetrics.getInstance();
+        if (metrics.isEnabled()) {
+            metrics.recordBudget(mComponentClass, mScope, elapsedNanos, mBudgetNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Rethrows a failure to handle a broadcast off the main thread, as it would have been thrown had the broadcast been
+     * handled there.
+     *
+     * @param mainThread the executor on which to rethrow it
+     * @param failure the failure
+     */
+    static void rethrow(Executor mainThread, final Throwable failure) {
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new RuntimeException(failure);
+            }
+        });
+    }
+}
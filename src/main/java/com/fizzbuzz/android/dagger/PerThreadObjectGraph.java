@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+
+import static com.fizzbuzz.android.dagger.Preconditions.checkState;
+
+/**
+ * Extends a component's object graph with modules of its own, separately on each thread that uses it, for bindings
+ * that must not be shared between threads (e.g. a database session, or a formatter that isn't thread-safe).  Singletons
+ * provided by these modules are singletons per thread.
+ * <p/>
+ * Each thread's graph is created on first use, and is rebuilt if the component's graph has changed.  Since a thread's
+ * graph is only ever used by that thread, injecting with it takes no locks once its bindings have been resolved.
+ * Threads that are done with their graph, such as pooled worker threads finishing a job, should call {@link #remove()}.
+ */
+public abstract class PerThreadObjectGraph {
+    private final Injector mInjector;
+    private final ThreadLocal<ThreadGraph> mThreadGraphs = new ThreadLocal<ThreadGraph>();
+
+    /**
+     * Class constructor.
+     *
+     * @param injector the component whose graph is extended
+     */
+    protected PerThreadObjectGraph(Injector injector) {
+        mInjector = injector;
+    }
+
+    /**
+     * Adds the dagger modules to be included in each thread's graph to a collector.  A new set of modules is collected
+     * for each thread.
+     *
+     * @param collector the collector
+     */
+    protected abstract void collectModules(ModuleCollector collector);
+
+    /**
+     * Gets the calling thread's object graph, creating it if necessary.
+     *
+     * @return the object graph
+     */
+    public ObjectGraph getObjectGraph() {
+        return getThreadGraph().bindingCache.getObjectGraph();
+    }
+
+    /**
+     * Injects a target object using the calling thread's object graph.
+     *
+     * @param target the target object
+     */
+    public void inject(Object target) {
+        getThreadGraph().bindingCache.inject(target);
+    }
+
+    /**
+     * Injects each of an array of target objects using the calling thread's object graph.
+     *
+     * @param targets the target objects
+     */
+    public void injectAll(Object[] targets) {
+        getThreadGraph().bindingCache.injectAll(targets);
+    }
+
+    /**
+     * Gets an instance of a type from the calling thread's object graph.
+     *
+     * @param type the type
+     * @return the instance
+     */
+    public <T> T get(Class<T> type) {
+        return getThreadGraph().bindingCache.get(type);
+    }
+
+    /**
+     * Releases the calling thread's object graph, if it has one.
+     */
+    public void remove() {
+        mThreadGraphs.remove();
+    }
+
+    private ThreadGraph getThreadGraph() {
+        ObjectGraph parentGraph = mInjector.getObjectGraph();
+        checkState(parentGraph != null, "object graph must be initialized prior to calling inject");
+        ThreadGraph threadGraph = mThreadGraphs.get();
+        if (threadGraph == null || threadGraph.parentGraph != parentGraph) {
+            ModuleCollector collector = ModuleCollector.obtain();
+            try {
+                collectModules(collector);
+                threadGraph = new ThreadGraph(parentGraph, parentGraph.plus(collector.borrowArray()));
+            } finally {
+                collector.recycle();
+            }
+            mThreadGraphs.set(threadGraph);
+        }
+        return threadGraph;
+    }
+
+    private static final class ThreadGraph {
+        final ObjectGraph parentGraph;
+        final BindingCache bindingCache;
+
+        ThreadGraph(ObjectGraph parentGraph, ObjectGraph objectGraph) {
+            this.parentGraph = parentGraph;
+            this.bindingCache = new BindingCache(objectGraph);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what an object graph instantiates: the bindings it has linked, the singletons it holds, the instances each of
+ * its unscoped bindings has provided, and their approximate shallow size.  Intended for finding over-instantiated
+ * unscoped bindings and for budgeting the memory of each screen.
+ * <p/>
+ * Accounting is enabled by overriding {@link InjectingApplication#isScopeAccountingEnabled()}, which makes the
+ * application graph, and every graph that extends it, load its bindings through a counting wrapper.  A binding is
+ * counted in the graph that linked it, which for a binding inherited from a parent graph is the parent: an unscoped
+ * application-scope binding used by an activity is counted in the application's accounting.  Sizes are estimated from
+ * each instance's fields, assuming 8-byte object headers and 4-byte references, as on ART; they don't include the
+ * objects an instance refers to.
+ */
+public final class ScopeAccounting {
+    private static final int OBJECT_HEADER_BYTES = 8;
+    private static final int ARRAY_HEADER_BYTES = 12;
+    private static final int REFERENCE_BYTES = 4;
+
+    // by linker, which is unique to each graph
+    private static final Map<Object, ScopeAccounting> sAccountings = new WeakHashMap<Object, ScopeAccounting>();
+    private static final Map<Class<?>, Integer> sShallowSizes = new ConcurrentHashMap<Class<?>, Integer>();
+
+    private final List<Counter> mCounters = new ArrayList<Counter>();
+
+    private ScopeAccounting() {
+    }
+
+    /**
+     * Gets the accounting of a component's object graph.
+     *
+     * @param injector the component
+     * @return the accounting, or null if the component has no graph, or accounting isn't enabled
+     */
+    public static ScopeAccounting of(Injector injector) {
+        ObjectGraph objectGraph = injector.getObjectGraph();
+        if (objectGraph == null || !WrappingLoader.isLoadedBy(objectGraph, AccountingLoader.class)) {
+            return null;
+        }
+        return forLinker(DaggerInternals.getLinker(objectGraph));
+    }
+
+    /**
+     * Gets the number of bindings that have been linked, not counting those that only inject members.
+     *
+     * @return the number of bindings
+     */
+    public int getBindingsLinked() {
+        synchronized (mCounters) {
+            return mCounters.size();
+        }
+    }
+
+    /**
+     * Gets the number of singletons that have been instantiated.
+     *
+     * @return the number of singletons
+     */
+    public int getSingletonsInstantiated() {
+        int result = 0;
+        for (BindingAccounting binding : getBindings()) {
+            if (binding.isSingleton() && binding.getProvisions() > 0) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the approximate shallow size of the singletons that have been instantiated, which live as long as the graph.
+     *
+     * @return the size, in bytes
+     */
+    public long getSingletonBytes() {
+        long result = 0;
+        for (BindingAccounting binding : getBindings()) {
+            if (binding.isSingleton()) {
+                result += binding.getShallowBytes();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of instances the unscoped bindings have provided.
+     *
+     * @return the number of instances
+     */
+    public long getUnscopedProvisions() {
+        long result = 0;
+        for (BindingAccounting binding : getBindings()) {
+            if (!binding.isSingleton()) {
+                result += binding.getProvisions();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the approximate shallow size of all the instances the unscoped bindings have provided, whether or not they
+     * are still reachable.
+     *
+     * @return the size, in bytes
+     */
+    public long getUnscopedBytes() {
+        long result = 0;
+        for (BindingAccounting binding : getBindings()) {
+            if (!binding.isSingleton()) {
+                result += binding.getShallowBytes();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the accounting of each binding that has been linked, the most provided first.
+     *
+     * @return a snapshot of the bindings' accounting
+     */
+    public List<BindingAccounting> getBindings() {
+        List<BindingAccounting> result;
+        synchronized (mCounters) {
+            result = new ArrayList<BindingAccounting>(mCounters.size());
+            for (Counter counter : mCounters) {
+                result.add(new BindingAccounting(counter.key, counter.singleton, counter.provisions.get(),
+                        counter.shallowBytes.get()));
+            }
+        }
+        Collections.sort(result, new Comparator<BindingAccounting>() {
+            @Override
+            public int compare(BindingAccounting lhs, BindingAccounting rhs) {
+                return lhs.mProvisions < rhs.mProvisions ? 1 : (lhs.mProvisions == rhs.mProvisions ? 0 : -1);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ScopeAccounting{bindings=" + getBindingsLinked() + ", singletons=" + getSingletonsInstantiated()
+                + ", singletonBytes=" + getSingletonBytes() + ", unscopedProvisions=" + getUnscopedProvisions()
+                + ", unscopedBytes=" + getUnscopedBytes() + "}";
+    }
+
+    /**
+     * Gets the accounting of the graph a linker belongs to, creating it if necessary.
+     */
+    static ScopeAccounting forLinker(Object linker) {
+        synchronized (sAccountings) {
+            ScopeAccounting accounting = sAccountings.get(linker);
+            if (accounting == null) {
+                accounting = new ScopeAccounting();
+                sAccountings.put(linker, accounting);
+            }
+            return accounting;
+        }
+    }
+
+    /**
+     * Starts counting a binding that has just been linked.
+     *
+     * @return the binding's counter
+     */
+    Counter addBinding(String key, boolean singleton) {
+        Counter counter = new Counter(key, singleton);
+        synchronized (mCounters) {
+            mCounters.add(counter);
+        }
+        return counter;
+    }
+
+    private static long shallowSize(Object instance) {
+        Class<?> cls = instance.getClass();
+        if (cls.isArray()) {
+            Class<?> componentType = cls.getComponentType();
+            int elementBytes = componentType.isPrimitive() ? primitiveSize(componentType) : REFERENCE_BYTES;
+            return align(ARRAY_HEADER_BYTES + (long) Array.getLength(instance) * elementBytes);
+        }
+        Integer size = sShallowSizes.get(cls);
+        if (size == null) {
+            long bytes = OBJECT_HEADER_BYTES;
+            for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        Class<?> type = field.getType();
+                        bytes += type.isPrimitive() ? primitiveSize(type) : REFERENCE_BYTES;
+                    }
+                }
+            }
+            size = (int) align(bytes);
+            sShallowSizes.put(cls, size);
+        }
+        return size;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Counts the provisions of one binding.
+     */
+    static final class Counter {
+        final String key;
+        final boolean singleton;
+        final AtomicLong provisions = new AtomicLong();
+        final AtomicLong shallowBytes = new AtomicLong();
+
+        Counter(String key, boolean singleton) {
+            this.key = key;
+            this.singleton = singleton;
+        }
+
+        void onProvided(Object instance) {
+            provisions.incrementAndGet();
+            if (instance != null) {
+                shallowBytes.addAndGet(shallowSize(instance));
+            }
+        }
+    }
+
+    /**
+     * The accounting of one binding.
+     */
+    public static final class BindingAccounting {
+        private final String mKey;
+        private final boolean mSingleton;
+        private final long mProvisions;
+        private final long mShallowBytes;
+
+        BindingAccounting(String key, boolean singleton, long provisions, long shallowBytes) {
+            mKey = key;
+            mSingleton = singleton;
+            mProvisions = provisions;
+            mShallowBytes = shallowBytes;
+        }
+
+        /**
+         * Gets the binding's key, e.g. "android.app.Activity", or "@javax.inject.Named(value=foo)/java.lang.String".
+         *
+         * @return the key
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns whether the binding is scoped as a singleton.
+         *
+         * @return true if it's a singleton
+         */
+        public boolean isSingleton() {
+            return mSingleton;
+        }
+
+        /**
+         * Gets the number of instances the binding has provided, which is at most 1 for a singleton.
+         *
+         * @return the number of instances
+         */
+        public long getProvisions() {
+            return mProvisions;
+        }
+
+        /**
+         * Gets the approximate total shallow size of the instances the binding has provided.
+         *
+         * @return the size, in bytes
+         */
+        public long getShallowBytes() {
+            return mShallowBytes;
+        }
+
+        @Override
+        public String toString() {
+            return mKey + (mSingleton ? " (singleton)" : "") + ": " + mProvisions + " provided, " + mShallowBytes
+                    + " bytes";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Declares modules to be included in the object graph of every instance of an Injecting... component class.  The
+ * modules must have no-arg constructors and hold no per-instance state: each is constructed once, the first time the
+ * class creates a graph, and the same instances are shared by all of its graphs from then on.
+ * <p/>
+ * Modules declared here are added by the default implementation of each component's collectModules(ModuleCollector),
+ * so they must not also be returned from getModules().
+ */
+@Documented
+@Inherited
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface StaticModules {
+    /**
+     * The module classes.
+     */
+    Class<?>[] value();
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * An {@link InjectionTracer} that emits android.os.Trace sections, which show up in systrace output when the app is
+ * traced with the "app" category enabled.  Sections are named "&lt;phase&gt; &lt;scope&gt;/&lt;level&gt;
+ * &lt;component&gt;", e.g. "INJECT ACTIVITY/1 MainActivity".  Does nothing on devices older than Jelly Bean MR2.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class SystraceInjectionTracer
+        implements InjectionTracer {
+    // section names longer than this are rejected by android.os.Trace
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private final boolean mEnabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    @Override
+    public void beginSection(Class<?> componentClass, InjectionScope scope, InjectionPhase phase) {
+        if (mEnabled) {
+            String name = phase + " " + scope + "/" + scope.getLevel() + " " + componentClass.getSimpleName();
+            if (name.length() > MAX_SECTION_NAME_LENGTH) {
+                name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+            }
+            Trace.beginSection(name);
+        }
+    }
+
+    @Override
+    public void endSection(Class<?> componentClass, InjectionScope scope, InjectionPhase phase) {
+        if (mEnabled) {
+            Trace.endSection();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a @Singleton @Provides method of an application module as one whose singleton is expensive to create, such as
+ * a database or an HTTP client, and should be created ahead of its first use.  Once the application's object graph has
+ * been created, an {@link InjectingApplication} instantiates its warm-up singletons on a low-priority background
+ * thread, one after the other, or, for those that must be created on the main thread, one per main thread idle period.
+ * <p/>
+ * A component that needs a singleton while it is being warmed up waits for it, rather than creating a second instance.
+ * Only provider methods can be marked, since a class with an @Inject constructor isn't loaded until it is first needed.
+ * The annotation is ignored on the modules of activity, fragment, service and receiver graphs.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(METHOD)
+public @interface WarmUp {
+    /**
+     * Whether the singleton must be created on the main thread, in which case it is created when the main thread's
+     * message queue is idle rather than on the background thread.  The default is false.
+     */
+    boolean mainThread() default false;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.util.Log;
+import dagger.ObjectGraph;
+import dagger.internal.Binding;
+import dagger.internal.Linker;
+import dagger.internal.Loader;
+import dagger.internal.ProvidesBinding;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Notes the bindings of the {@link WarmUp} provider methods of the modules of the first graph created with it, and
+ * instantiates them once that graph is ready.  Bindings aren't wrapped: the first access that races a warm-up waits on
+ * the same lock as dagger's singleton binding, or the evictable singleton's slot, and gets the instance it created.
+ */
+final class WarmingLoader extends WrappingLoader {
+    private static final Executor BACKGROUND = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    command.run();
+                }
+            }, "InjectingApplication-warm-up").start();
+        }
+    };
+
+    // whether each of a module's warm-up provider methods must run on the main thread, by method name
+    private final Map<Class<?>, Map<String, Boolean>> mWarmUpMethods =
+            new ConcurrentHashMap<Class<?>, Map<String, Boolean>>();
+    private final List<Target> mTargets = new ArrayList<Target>();
+    private volatile boolean mCollecting = true;
+
+    /**
+     * Class constructor.
+     *
+     * @param delegate the loader that loads the bindings
+     */
+    WarmingLoader(Loader delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Stops noting warm-up bindings, and starts instantiating those that have been noted, in the graph that was created
+     * with this loader.
+     */
+    void warmUp(ObjectGraph objectGraph) {
+        warmUp(objectGraph, BACKGROUND);
+    }
+
+    /**
+     * As {@link #warmUp(ObjectGraph)}, for tests, which run the singletons that aren't created on the main thread
+     * through the given executor rather than on a new background thread.
+     */
+    void warmUp(ObjectGraph objectGraph, Executor executor) {
+        mCollecting = false;
+        Linker linker = (Linker) DaggerInternals.getLinker(objectGraph);
+        if (linker == null) {
+            return;
+        }
+        Queue<Target> background = new LinkedList<Target>();
+        Queue<Target> mainThread = new LinkedList<Target>();
+        synchronized (mTargets) {
+            for (Target target : mTargets) {
+                (target.mainThread ? mainThread : background).add(target);
+            }
+            mTargets.clear();
+        }
+        if (!background.isEmpty()) {
+            executor.execute(new WarmUpRunnable(linker, background));
+        }
+        if (!mainThread.isEmpty()) {
+            final MessageQueue.IdleHandler idleHandler = new WarmUpIdleHandler(linker, mainThread);
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    Looper.myQueue().addIdleHandler(idleHandler);
+                }
+            });
+        }
+    }
+
+    @Override
+    <T> Binding<T> wrapAtInjectBinding(Binding<T> binding, String className, ClassLoader classLoader) {
+        return binding;
+    }
+
+    @Override
+    boolean wrapsProvidesBindings(Class<?> moduleClass) {
+        return mCollecting && !getWarmUpMethods(moduleClass).isEmpty();
+    }
+
+    @Override
+    <T> ProvidesBinding<T> wrapProvidesBinding(ProvidesBinding<T> binding, Object module) {
+        Boolean mainThread = getWarmUpMethods(module.getClass()).get(getMethodName(binding));
+        if (mainThread != null && mCollecting) {
+            synchronized (mTargets) {
+                mTargets.add(new Target(binding.provideKey, binding.requiredBy, module.getClass().getClassLoader(),
+                        mainThread));
+            }
+        }
+        return binding;
+    }
+
+    private Map<String, Boolean> getWarmUpMethods(Class<?> moduleClass) {
+        Map<String, Boolean> warmUpMethods = mWarmUpMethods.get(moduleClass);
+        if (warmUpMethods == null) {
+            warmUpMethods = new HashMap<String, Boolean>();
+            for (Method method : moduleClass.getDeclaredMethods()) {
+                WarmUp warmUp = method.getAnnotation(WarmUp.class);
+                if (warmUp != null) {
+                    warmUpMethods.put(method.getName(), warmUp.mainThread());
+                }
+            }
+            mWarmUpMethods.put(moduleClass, warmUpMethods);
+        }
+        return warmUpMethods;
+    }
+
+    private static void warmUp(Linker linker, Target target) {
+        try {
+            Binding<?> binding;
+            // as the graph itself resolves an injectable type
+            synchronized (linker) {
+                binding = linker.requestBinding(target.key, target.requiredBy, target.classLoader, false, true);
+                if (binding == null || !binding.isLinked()) {
+                    linker.linkRequested();
+                    binding = linker.requestBinding(target.key, target.requiredBy, target.classLoader, false, true);
+                }
+            }
+            // outside the linker's lock, so that components can use the graph meanwhile
+            binding.get();
+        } catch (RuntimeException e) {
+            // the first component to need the singleton will fail the same way, where it can be dealt with
+            Log.w(LoggingManager.TAG, "failed to warm up " + target.key, e);
+        }
+    }
+
+    private static final class Target {
+        final String key;
+        final Object requiredBy;
+        final ClassLoader classLoader;
+        final boolean mainThread;
+
+        Target(String key, Object requiredBy, ClassLoader classLoader, boolean mainThread) {
+            this.key = key;
+            this.requiredBy = requiredBy;
+            this.classLoader = classLoader;
+            this.mainThread = mainThread;
+        }
+    }
+
+    private static final class WarmUpRunnable implements Runnable {
+        private final Linker mLinker;
+        private final Queue<Target> mTargets;
+
+        WarmUpRunnable(Linker linker, Queue<Target> targets) {
+            mLinker = linker;
+            mTargets = targets;
+        }
+
+        @Override
+        public void run() {
+            for (Target target : mTargets) {
+                warmUp(mLinker, target);
+            }
+        }
+    }
+
+    private static final class WarmUpIdleHandler implements MessageQueue.IdleHandler {
+        private final Linker mLinker;
+        private final Queue<Target> mTargets;
+
+        WarmUpIdleHandler(Linker linker, Queue<Target> targets) {
+            mLinker = linker;
+            mTargets = targets;
+        }
+
+        @Override
+        public boolean queueIdle() {
+            // one singleton per idle period, so as not to hold up the main thread for long
+            warmUp(mLinker, mTargets.remove());
+            return !mTargets.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+import dagger.internal.Binding;
+import dagger.internal.BindingsGroup;
+import dagger.internal.Loader;
+import dagger.internal.ModuleAdapter;
+import dagger.internal.ProvidesBinding;
+import dagger.internal.SetBinding;
+import dagger.internal.StaticInjection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads bindings through another loader, giving subclasses the chance to wrap each binding that provides instances,
+ * whether from a module's provider method or from an @Inject constructor.  A graph created with a loader (see
+ * {@link DaggerInternals#createWith}) passes it on to the graphs that extend it.
+ */
+abstract class WrappingLoader extends Loader {
+    private static final Method sNewModule;
+
+    static {
+        Method newModule = null;
+        try {
+            newModule = ModuleAdapter.class.getDeclaredMethod("newModule");
+            newModule.setAccessible(true);
+        } catch (Exception e) {
+            // modules that aren't passed to the graph will fail to be created
+        }
+        sNewModule = newModule;
+    }
+
+    private final Loader mDelegate;
+    private final Map<Class<?>, ModuleAdapter<?>> mModuleAdapters = new ConcurrentHashMap<Class<?>, ModuleAdapter<?>>();
+
+    /**
+     * Class constructor.
+     *
+     * @param delegate the loader that loads the bindings
+     */
+    WrappingLoader(Loader delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * Returns whether a graph's bindings are loaded through a loader of the given type.
+     */
+    static boolean isLoadedBy(ObjectGraph objectGraph, Class<? extends WrappingLoader> loaderClass) {
+        Loader loader = DaggerInternals.getLoader(objectGraph);
+        while (loader instanceof WrappingLoader) {
+            if (loaderClass.isInstance(loader)) {
+                return true;
+            }
+            loader = ((WrappingLoader) loader).mDelegate;
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a binding for a class with an @Inject constructor.
+     *
+     * @return the binding to link in its place, or the binding itself
+     */
+    abstract <T> Binding<T> wrapAtInjectBinding(Binding<T> binding, String className, ClassLoader classLoader);
+
+    /**
+     * Wraps a binding for a module's provider method.
+     *
+     * @return the binding to link in its place, or the binding itself
+     */
+    abstract <T> ProvidesBinding<T> wrapProvidesBinding(ProvidesBinding<T> binding, Object module);
+
+    /**
+     * Returns whether {@link #wrapProvidesBinding} may wrap any of a module's bindings; if not, the module's bindings
+     * are loaded as they are, without the cost of intercepting them.  The default implementation returns true.
+     */
+    boolean wrapsProvidesBindings(Class<?> moduleClass) {
+        return true;
+    }
+
+    @Override
+    public Binding<?> getAtInjectBinding(String key, String className, ClassLoader classLoader,
+            boolean mustHaveInjections) {
+        Binding<?> binding = mDelegate.getAtInjectBinding(key, className, classLoader, mustHaveInjections);
+        if (binding == null || binding.provideKey == null) {
+            return binding; // injects members only
+        }
+        return wrapAtInjectBinding(binding, className, classLoader);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> ModuleAdapter<T> getModuleAdapter(Class<T> moduleClass) {
+        ModuleAdapter<T> adapter = (ModuleAdapter<T>) mModuleAdapters.get(moduleClass);
+        if (adapter == null) {
+            adapter = new WrappingModuleAdapter<T>(mDelegate.getModuleAdapter(moduleClass));
+            mModuleAdapters.put(moduleClass, adapter);
+        }
+        return adapter;
+    }
+
+    @Override
+    public StaticInjection getStaticInjection(Class<?> injectedClass) {
+        return mDelegate.getStaticInjection(injectedClass);
+    }
+
+    /**
+     * Gets the name of the module class that declares a provider method.
+     */
+    static String getModuleClassName(ProvidesBinding<?> binding) {
+        // requiredBy is "<module class>.<method name>()"
+        String requiredBy = String.valueOf(binding.requiredBy);
+        return requiredBy.substring(0, Math.max(requiredBy.lastIndexOf('.'), 0));
+    }
+
+    /**
+     * Gets the name of a provider method.
+     */
+    static String getMethodName(ProvidesBinding<?> binding) {
+        String requiredBy = String.valueOf(binding.requiredBy);
+        return requiredBy.substring(requiredBy.lastIndexOf('.') + 1).replace("()", "");
+    }
+
+    private final class WrappingModuleAdapter<T> extends ModuleAdapter<T> {
+        private final ModuleAdapter<T> mDelegate;
+
+        WrappingModuleAdapter(ModuleAdapter<T> delegate) {
+            super(delegate.moduleClass, delegate.injectableTypes, delegate.staticInjections, delegate.overrides,
+                    delegate.includes, delegate.complete, delegate.library);
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void getBindings(final BindingsGroup bindings, final T module) {
+            if (!wrapsProvidesBindings(moduleClass)) {
+                mDelegate.getBindings(bindings, module);
+                return;
+            }
+            mDelegate.getBindings(new BindingsGroup() {
+                @Override
+                public Binding<?> contributeSetBinding(String key, SetBinding<?> value) {
+                    return bindings.contributeSetBinding(key, value);
+                }
+
+                @Override
+                public Binding<?> contributeProvidesBinding(String key, ProvidesBinding<?> value) {
+                    return bindings.contributeProvidesBinding(key, wrapProvidesBinding(value, module));
+                }
+
+                @Override
+                public Binding<?> get(String key) {
+                    return bindings.get(key);
+                }
+            }, module);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected T newModule() {
+            try {
+                return (T) sNewModule.invoke(mDelegate);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
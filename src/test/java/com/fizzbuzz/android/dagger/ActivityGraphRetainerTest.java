@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.app.Activity;
+import com.fizzbuzz.android.dagger.ActivityGraphRetainer.RetainedGraph;
+import dagger.ObjectGraph;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ActivityGraphRetainerTest {
+    @Test
+    public void recreatedActivityAdoptsRetainedGraph() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        RetainedGraph retained = retain(FirstActivity.class, parentGraph);
+        String token = newToken();
+        ActivityGraphRetainer.put(token, retained);
+
+        RetainedGraph adopted = ActivityGraphRetainer.take(token, FirstActivity.class, parentGraph);
+
+        assertSame(retained, adopted);
+        assertSame(retained.objectGraph, adopted.objectGraph);
+        assertSame(retained.activityModule, adopted.activityModule);
+    }
+
+    @Test
+    public void retainedGraphIsAdoptedOnlyOnce() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        String token = newToken();
+        ActivityGraphRetainer.put(token, retain(FirstActivity.class, parentGraph));
+
+        assertNotNull(ActivityGraphRetainer.take(token, FirstActivity.class, parentGraph));
+        assertNull(ActivityGraphRetainer.take(token, FirstActivity.class, parentGraph));
+    }
+
+    @Test
+    public void unknownTokenIsNotAdopted() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        ActivityGraphRetainer.put(newToken(), retain(FirstActivity.class, parentGraph));
+
+        // e.g. a token restored from the instance state of an earlier process
+        assertNull(ActivityGraphRetainer.take(newToken(), FirstActivity.class, parentGraph));
+    }
+
+    @Test
+    public void activityOfAnotherClassDoesNotAdoptGraph() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        String token = newToken();
+        ActivityGraphRetainer.put(token, retain(FirstActivity.class, parentGraph));
+
+        assertNull(ActivityGraphRetainer.take(token, SecondActivity.class, parentGraph));
+        // the mismatched graph is discarded rather than kept for a later lookup
+        assertNull(ActivityGraphRetainer.take(token, FirstActivity.class, parentGraph));
+    }
+
+    @Test
+    public void graphFromOldParentGraphIsNotAdopted() {
+        String token = newToken();
+        ActivityGraphRetainer.put(token, retain(FirstActivity.class, ObjectGraph.create()));
+
+        assertNull(ActivityGraphRetainer.take(token, FirstActivity.class, ObjectGraph.create()));
+    }
+
+    @Test
+    public void eldestUnclaimedGraphsAreDropped() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        List<String> tokens = new ArrayList<String>();
+        for (int i = 0; i <= ActivityGraphRetainer.MAX_RETAINED_GRAPHS; i++) {
+            String token = newToken();
+            ActivityGraphRetainer.put(token, retain(FirstActivity.class, parentGraph));
+            tokens.add(token);
+        }
+
+        assertNull(ActivityGraphRetainer.take(tokens.get(0), FirstActivity.class, parentGraph));
+        for (int i = 1; i < tokens.size(); i++) {
+            assertNotNull(ActivityGraphRetainer.take(tokens.get(i), FirstActivity.class, parentGraph));
+        }
+    }
+
+    @Test
+    public void graphAdoptedFromPrewarmerIsRetained() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        ActivityGraphPrewarmer prewarmer = ActivityGraphPrewarmer.getInstance();
+        prewarmer.declareModules(PrewarmedActivity.class, InjectingActivityModule.class);
+        prewarmer.prepare(PrewarmedActivity.class, parentGraph);
+        ActivityGraphPrewarmer.PreparedGraph prepared = prewarmer.take(PrewarmedActivity.class, parentGraph);
+        assertNotNull(prepared);
+
+        // as the activity's delegate does when it adopts the prepared graph
+        ActivityGraphRetainer retainer = new ActivityGraphRetainer(null);
+        retainer.onPrewarmedObjectGraphAdopted(prepared.activityModule);
+        String token = retainer.getToken();
+
+        assertTrue(retainer.retain(prepared.objectGraph, PrewarmedActivity.class, parentGraph));
+        RetainedGraph retained = ActivityGraphRetainer.take(token, PrewarmedActivity.class, parentGraph);
+        assertNotNull(retained);
+        assertSame(prepared.objectGraph, retained.objectGraph);
+        assertSame(prepared.activityModule, retained.activityModule);
+    }
+
+    @Test
+    public void graphWithoutActivityModuleIsNotRetained() {
+        ObjectGraph parentGraph = ObjectGraph.create();
+        ActivityGraphRetainer retainer = new ActivityGraphRetainer(null);
+        retainer.onObjectGraphCreated(new Object[0]);
+        retainer.getToken();
+
+        assertFalse(retainer.retain(parentGraph.plus(), FirstActivity.class, parentGraph));
+    }
+
+    private static RetainedGraph retain(Class<? extends Activity> activityClass, ObjectGraph parentGraph) {
+        return new RetainedGraph(activityClass, parentGraph, parentGraph.plus(),
+                new InjectingActivityModule(null, null));
+    }
+
+    private static String newToken() {
+        return UUID.randomUUID().toString();
+    }
+
+    static class FirstActivity
+            extends Activity {
+    }
+
+    static class SecondActivity
+            extends Activity {
+    }
+
+    static class PrewarmedActivity
+            extends Activity {
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+import dagger.internal.FailoverLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class EvictingLoaderTest {
+    private ObjectGraph mObjectGraph;
+
+    @Before
+    public void setUp() {
+        mObjectGraph = DaggerInternals.createWith(new EvictingLoader(new FailoverLoader()),
+                new Object[]{new TestModule()});
+        assertNotNull(mObjectGraph);
+    }
+
+    @Test
+    public void evictableSingletonIsKeptBelowItsTrimLevel() {
+        EvictableService service = mObjectGraph.get(EvictableService.class);
+
+        MemoryTrimming.onTrimMemory(mObjectGraph, TRIM_MEMORY_UI_HIDDEN);
+
+        assertSame(service, mObjectGraph.get(EvictableService.class));
+    }
+
+    @Test
+    public void evictedSingletonIsRecreatedOnNextAccess() {
+        EvictableService service = mObjectGraph.get(EvictableService.class);
+        assertSame(service, mObjectGraph.get(EvictableService.class));
+
+        MemoryTrimming.onTrimMemory(mObjectGraph, TRIM_MEMORY_BACKGROUND);
+
+        EvictableService recreated = mObjectGraph.get(EvictableService.class);
+        assertNotSame(service, recreated);
+        assertSame(recreated, mObjectGraph.get(EvictableService.class));
+    }
+
+    @Test
+    public void evictableProviderMethodHonoursItsTrimLevel() {
+        StringBuilder cache = mObjectGraph.get(StringBuilder.class);
+
+        MemoryTrimming.onTrimMemory(mObjectGraph, TRIM_MEMORY_BACKGROUND);
+        assertSame(cache, mObjectGraph.get(StringBuilder.class));
+
+        MemoryTrimming.onTrimMemory(mObjectGraph, TRIM_MEMORY_COMPLETE);
+        assertNotSame(cache, mObjectGraph.get(StringBuilder.class));
+    }
+
+    @Test
+    public void plainSingletonIsNeverEvicted() {
+        PlainService service = mObjectGraph.get(PlainService.class);
+
+        MemoryTrimming.onLowMemory(mObjectGraph);
+
+        assertSame(service, mObjectGraph.get(PlainService.class));
+    }
+
+    @Test
+    public void lowMemoryEvictsEverything() {
+        EvictableService service = mObjectGraph.get(EvictableService.class);
+        StringBuilder cache = mObjectGraph.get(StringBuilder.class);
+
+        MemoryTrimming.onLowMemory(mObjectGraph);
+
+        assertNotSame(service, mObjectGraph.get(EvictableService.class));
+        assertNotSame(cache, mObjectGraph.get(StringBuilder.class));
+    }
+
+    @Test
+    public void singletonsAreCalledBackBeforeEviction() {
+        EvictableService service = mObjectGraph.get(EvictableService.class);
+
+        MemoryTrimming.onTrimMemory(mObjectGraph, TRIM_MEMORY_RUNNING_LOW);
+        MemoryTrimming.onTrimMemory(mObjectGraph, TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(Arrays.asList(TRIM_MEMORY_RUNNING_LOW, TRIM_MEMORY_BACKGROUND), service.trimLevels);
+    }
+
+    @Test
+    public void extendingGraphDoesNotEvictParentSingletons() {
+        EvictableService service = mObjectGraph.get(EvictableService.class);
+        ObjectGraph childGraph = mObjectGraph.plus();
+
+        MemoryTrimming.onLowMemory(childGraph);
+
+        assertSame(service, mObjectGraph.get(EvictableService.class));
+    }
+
+    @Module(injects = {EvictableService.class, PlainService.class, StringBuilder.class})
+    static class TestModule {
+        @Provides
+        @Singleton
+        @Evictable(trimLevel = TRIM_MEMORY_COMPLETE)
+        StringBuilder provideCache() {
+            return new StringBuilder();
+        }
+    }
+
+    @Singleton
+    @Evictable
+    static class EvictableService
+            implements ComponentCallbacks2 {
+        final List<Integer> trimLevels = new ArrayList<Integer>();
+
+        @Inject
+        EvictableService() {
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            trimLevels.add(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    }
+
+    @Singleton
+    static class PlainService {
+        @Inject
+        PlainService() {
+        }
+    }
+}
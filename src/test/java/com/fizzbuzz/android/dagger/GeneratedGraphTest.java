@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class GeneratedGraphTest {
+    @Test
+    public void nullInstanceIsReturned() {
+        GeneratedGraph graph = new TestGraph(null, String.class, null);
+
+        assertNull(graph.get(String.class));
+    }
+
+    @Test
+    public void typeListedByParentGraphIsGotFromIt() {
+        GeneratedGraph graph = new TestGraph(new TestGraph(null, Integer.class, 1), String.class, "name");
+
+        assertEquals(Integer.valueOf(1), graph.get(Integer.class));
+        assertEquals("name", graph.get(String.class));
+    }
+
+    @Test
+    public void unlistedTypeIsNotRegistered() {
+        GeneratedGraph graph = new TestGraph(new TestGraph(null, Integer.class, null), String.class, null);
+
+        try {
+            graph.get(Long.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("No inject registered for java.lang.Long. You must explicitly add it to the 'injects'"
+                    + " option in one of your modules.", e.getMessage());
+        }
+    }
+
+    // as fb-android-dagger-compiler generates, listing one type
+    private static final class TestGraph extends GeneratedGraph {
+        private final Class<?> mType;
+        private final Object mInstance;
+
+        TestGraph(GeneratedGraph parentGraph, Class<?> type, Object instance) {
+            super(parentGraph, 0);
+            mType = type;
+            mInstance = instance;
+        }
+
+        @Override
+        protected boolean injectMembers(Object target) {
+            return false;
+        }
+
+        @Override
+        protected Object getInstance(Class<?> type) {
+            if (type == mType) {
+                return mInstance;
+            }
+            return NOT_FOUND;
+        }
+    }
+}
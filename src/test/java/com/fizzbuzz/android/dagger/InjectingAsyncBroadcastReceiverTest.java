@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InjectingAsyncBroadcastReceiverTest {
+    private static final long SHORT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long LONG_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final AtomicInteger mFinished = new AtomicInteger();
+    private final CountDownLatch mFinishedLatch = new CountDownLatch(1);
+    private final List<Runnable> mMainThread = new ArrayList<Runnable>();
+    private ExecutorService mExecutor;
+    private ScheduledExecutorService mWatchdog;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadExecutor();
+        mWatchdog = Executors.newSingleThreadScheduledExecutor();
+        InjectionMetrics.getInstance().reset();
+        InjectionMetrics.getInstance().setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        mWatchdog.shutdownNow();
+        InjectionMetrics.getInstance().setEnabled(false);
+        InjectionMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void broadcastIsFinishedWhenHandled() throws Exception {
+        final AtomicBoolean received = new AtomicBoolean();
+
+        receiveAsync(new Runnable() {
+            @Override
+            public void run() {
+                received.set(true);
+            }
+        }, LONG_BUDGET_NANOS);
+        awaitDispatch();
+
+        assertTrue(received.get());
+        assertEquals(1, mFinished.get());
+        assertEquals(0, budget().getBudgetOverruns());
+        assertTrue(mMainThread.isEmpty());
+    }
+
+    @Test
+    public void broadcastOverrunningBudgetIsFinishedAndInterrupted() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        receiveAsync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(LONG_BUDGET_NANOS / 1000000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        }, SHORT_BUDGET_NANOS);
+
+        assertTrue(mFinishedLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        awaitDispatch();
+        assertEquals(1, mFinished.get());
+        assertEquals(1, budget().getBudgetOverruns());
+        assertTrue(mMainThread.isEmpty());
+    }
+
+    @Test
+    public void failureIsRethrownOnMainThread() throws Exception {
+        final IllegalStateException failure = new IllegalStateException();
+
+        receiveAsync(new Runnable() {
+            @Override
+            public void run() {
+                throw failure;
+            }
+        }, LONG_BUDGET_NANOS);
+        awaitDispatch();
+
+        assertEquals(1, mFinished.get());
+        assertEquals(1, mMainThread.size());
+        try {
+            mMainThread.get(0).run();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    private void receiveAsync(Runnable receive, long budgetNanos) {
+        InjectingAsyncBroadcastReceiver.receiveAsync(Receiver.class, null, receive, new Runnable() {
+            @Override
+            public void run() {
+                mFinished.incrementAndGet();
+                mFinishedLatch.countDown();
+            }
+        }, budgetNanos, mExecutor, mWatchdog, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                synchronized (mMainThread) {
+                    mMainThread.add(command);
+                }
+            }
+        });
+    }
+
+    // waits for the dispatch to return, and for the watchdog to have run if it is due
+    private void awaitDispatch() throws Exception {
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        mWatchdog.shutdown();
+        assertTrue(mWatchdog.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static InjectionMetrics.ComponentSnapshot budget() {
+        return InjectionMetrics.getInstance().snapshot().getComponents().get(Receiver.class);
+    }
+
+    static class Receiver {
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import android.content.Context;
+import android.content.Intent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InjectingBroadcastReceiverTest {
+    @Test
+    public void receiverHandlingBroadcastsInOnReceiveKeepsGraph() {
+        assertFalse(InjectingBroadcastReceiver.overridesOnReceiveInjected(InjectingBroadcastReceiver.class));
+        assertFalse(InjectingBroadcastReceiver.overridesOnReceiveInjected(OnReceiveReceiver.class));
+    }
+
+    @Test
+    public void receiverHandlingBroadcastsInOnReceiveInjectedReleasesGraph() {
+        assertTrue(InjectingBroadcastReceiver.overridesOnReceiveInjected(InjectedReceiver.class));
+        assertTrue(InjectingBroadcastReceiver.overridesOnReceiveInjected(InjectedReceiverSubclass.class));
+        assertTrue(InjectingBroadcastReceiver.overridesOnReceiveInjected(AsyncReceiver.class));
+    }
+
+    static class OnReceiveReceiver
+            extends InjectingBroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            super.onReceive(context, intent);
+        }
+    }
+
+    static class InjectedReceiver
+            extends InjectingBroadcastReceiver {
+        @Override
+        protected void onReceiveInjected(Context context, Intent intent) {
+        }
+    }
+
+    static class InjectedReceiverSubclass
+            extends InjectedReceiver {
+    }
+
+    static class AsyncReceiver
+            extends InjectingAsyncBroadcastReceiver {
+        @Override
+        protected void onReceiveInjected(Context context, Intent intent) {
+        }
+    }
+}
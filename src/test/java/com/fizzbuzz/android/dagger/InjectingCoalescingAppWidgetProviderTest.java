@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import com.fizzbuzz.android.dagger.InjectingCoalescingAppWidgetProvider.AppWidgetUpdate;
+import com.fizzbuzz.android.dagger.InjectingCoalescingAppWidgetProvider.PassRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InjectingCoalescingAppWidgetProviderTest {
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SHORT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long LONG_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int BUILD_THREADS = 4;
+
+    private final List<int[]> mPasses = Collections.synchronizedList(new ArrayList<int[]>());
+    private final List<Runnable> mMainThread = Collections.synchronizedList(new ArrayList<Runnable>());
+    private ScheduledExecutorService mPassExecutor;
+    private ScheduledExecutorService mWatchdog;
+
+    @Before
+    public void setUp() {
+        mPassExecutor = Executors.newSingleThreadScheduledExecutor();
+        mWatchdog = Executors.newSingleThreadScheduledExecutor();
+        InjectionMetrics.getInstance().reset();
+        InjectionMetrics.getInstance().setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mPassExecutor.shutdownNow();
+        mWatchdog.shutdownNow();
+        InjectionMetrics.getInstance().setEnabled(false);
+        InjectionMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void broadcastsWithinWindowAreUpdatedInOnePass() throws Exception {
+        AtomicInteger finished = new AtomicInteger();
+
+        coalesce(FirstProvider.class, new int[]{1, 2}, finished, LONG_BUDGET_NANOS, recordingRunner());
+        coalesce(FirstProvider.class, new int[]{2, 3}, finished, LONG_BUDGET_NANOS, recordingRunner());
+        coalesce(FirstProvider.class, new int[]{4}, finished, LONG_BUDGET_NANOS, recordingRunner());
+        awaitPasses();
+
+        assertEquals(1, mPasses.size());
+        assertEquals(Arrays.toString(new int[]{1, 2, 3, 4}), Arrays.toString(mPasses.get(0)));
+        assertEquals(3, finished.get());
+        assertEquals(0, budget(FirstProvider.class).getBudgetOverruns());
+    }
+
+    @Test
+    public void broadcastAfterPassStartsNextPass() throws Exception {
+        AtomicInteger finished = new AtomicInteger();
+
+        coalesce(SecondProvider.class, new int[]{1}, finished, LONG_BUDGET_NANOS, recordingRunner());
+        mPassExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, WINDOW_NANOS, TimeUnit.NANOSECONDS).get();
+        coalesce(SecondProvider.class, new int[]{2}, finished, LONG_BUDGET_NANOS, recordingRunner());
+        awaitPasses();
+
+        assertEquals(2, mPasses.size());
+        assertEquals(Arrays.toString(new int[]{1}), Arrays.toString(mPasses.get(0)));
+        assertEquals(Arrays.toString(new int[]{2}), Arrays.toString(mPasses.get(1)));
+        assertEquals(2, finished.get());
+    }
+
+    @Test
+    public void slowPassIsFinishedWhenBudgetRunsOut() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger finished = new AtomicInteger();
+        final CountDownLatch allFinished = new CountDownLatch(2);
+        PassRunner slowRunner = new PassRunner() {
+            @Override
+            public void run(int[] appWidgetIds) {
+                awaitQuietly(release);
+                mPasses.add(appWidgetIds);
+            }
+        };
+        Runnable finish = new Runnable() {
+            @Override
+            public void run() {
+                finished.incrementAndGet();
+                allFinished.countDown();
+            }
+        };
+
+        InjectingCoalescingAppWidgetProvider.coalesce(ThirdProvider.class, new int[]{1}, finish, slowRunner,
+                WINDOW_NANOS, SHORT_BUDGET_NANOS, mPassExecutor, mWatchdog, mainThread());
+        InjectingCoalescingAppWidgetProvider.coalesce(ThirdProvider.class, new int[]{2}, finish, slowRunner,
+                WINDOW_NANOS, SHORT_BUDGET_NANOS, mPassExecutor, mWatchdog, mainThread());
+
+        // both broadcasts are finished while the pass is still running
+        assertTrue(allFinished.await(5, TimeUnit.SECONDS));
+        assertTrue(mPasses.isEmpty());
+        release.countDown();
+        awaitPasses();
+        assertEquals(1, mPasses.size());
+        assertEquals(2, finished.get());
+        assertEquals(2, budget(ThirdProvider.class).getBudgetOverruns());
+    }
+
+    @Test
+    public void passFailureIsRethrownOnMainThreadAfterFinishing() throws Exception {
+        final IllegalStateException failure = new IllegalStateException();
+        AtomicInteger finished = new AtomicInteger();
+
+        coalesce(FourthProvider.class, new int[]{1}, finished, LONG_BUDGET_NANOS, new PassRunner() {
+            @Override
+            public void run(int[] appWidgetIds) {
+                throw failure;
+            }
+        });
+        awaitPasses();
+
+        assertEquals(1, finished.get());
+        assertEquals(1, mMainThread.size());
+        try {
+            mMainThread.get(0).run();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void appWidgetsAreUpdatedInParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(BUILD_THREADS);
+        try {
+            final CountDownLatch building = new CountDownLatch(BUILD_THREADS);
+            final List<Integer> updated = Collections.synchronizedList(new ArrayList<Integer>());
+
+            InjectingCoalescingAppWidgetProvider.updateAll(new int[]{1, 2, 3, 4}, executor, new AppWidgetUpdate() {
+                @Override
+                public void update(int appWidgetId) {
+                    // returns only once every app widget is being built at the same time
+                    building.countDown();
+                    awaitQuietly(building);
+                    updated.add(appWidgetId);
+                }
+            });
+
+            Collections.sort(updated);
+            assertEquals(Arrays.asList(1, 2, 3, 4), updated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureToUpdateAppWidgetIsRethrown() {
+        ExecutorService executor = Executors.newFixedThreadPool(BUILD_THREADS);
+        try {
+            final IllegalStateException failure = new IllegalStateException();
+            try {
+                InjectingCoalescingAppWidgetProvider.updateAll(new int[]{1, 2}, executor, new AppWidgetUpdate() {
+                    @Override
+                    public void update(int appWidgetId) {
+                        if (appWidgetId == 2) {
+                            throw failure;
+                        }
+                    }
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                assertSame(failure, e);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void coalesce(Class<?> providerClass, int[] appWidgetIds, final AtomicInteger finished, long budgetNanos,
+            PassRunner runner) {
+        InjectingCoalescingAppWidgetProvider.coalesce(providerClass, appWidgetIds, new Runnable() {
+            @Override
+            public void run() {
+                finished.incrementAndGet();
+            }
+        }, runner, WINDOW_NANOS, budgetNanos, mPassExecutor, mWatchdog, mainThread());
+    }
+
+    private PassRunner recordingRunner() {
+        return new PassRunner() {
+            @Override
+            public void run(int[] appWidgetIds) {
+                mPasses.add(appWidgetIds);
+            }
+        };
+    }
+
+    private Executor mainThread() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mMainThread.add(command);
+            }
+        };
+    }
+
+    // waits for the scheduled passes to run, and for the watchdog to have run if it is due
+    private void awaitPasses() throws Exception {
+        mPassExecutor.shutdown();
+        assertTrue(mPassExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        mWatchdog.shutdown();
+        assertTrue(mWatchdog.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static InjectionMetrics.ComponentSnapshot budget(Class<?> providerClass) {
+        return InjectionMetrics.getInstance().snapshot().getComponents().get(providerClass);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class FirstProvider {
+    }
+
+    static class SecondProvider {
+    }
+
+    static class ThirdProvider {
+    }
+
+    static class FourthProvider {
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class InjectionDelegateTest {
+    private static final int ATTACHING_THREADS = 2;
+
+    private Component mComponent;
+    private TestDelegate mDelegate;
+
+    @Before
+    public void setUp() {
+        // empty the module pool, so that the only modules in it are the ones these tests recycle
+        for (int i = 0; i < ModulePool.DEFAULT_CAPACITY; i++) {
+            InjectingActivityModule.obtain(null, null);
+        }
+        mComponent = new Component();
+        mDelegate = new TestDelegate(mComponent);
+    }
+
+    @Test
+    public void attachInjectsComponent() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+
+        mDelegate.attach();
+
+        assertNotNull(mDelegate.peekObjectGraph());
+        assertEquals("first", mComponent.name);
+        assertEquals(1, mDelegate.mCollected.get());
+    }
+
+    @Test
+    public void attachToSameParentGraphKeepsGraph() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+        mDelegate.attach();
+        ObjectGraph objectGraph = mDelegate.peekObjectGraph();
+        mComponent.name = null;
+
+        mDelegate.attach();
+
+        assertSame(objectGraph, mDelegate.peekObjectGraph());
+        assertEquals(1, mDelegate.mCollected.get());
+        assertNull(mComponent.name);
+    }
+
+    @Test
+    public void attachToNewParentGraphRebuildsGraphWithoutInjectingAgain() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+        mDelegate.attach();
+        ObjectGraph objectGraph = mDelegate.peekObjectGraph();
+        mComponent.name = null;
+
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("second"));
+        mDelegate.attach();
+
+        assertNotSame(objectGraph, mDelegate.peekObjectGraph());
+        assertEquals(2, mDelegate.mCollected.get());
+        assertNull(mComponent.name);
+        assertEquals("second", mDelegate.get(Holder.class, false).name);
+    }
+
+    @Test
+    public void destroyReleasesGraphThenRecyclesModule() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+        mDelegate.attach();
+        InjectingActivityModule module = mDelegate.mModule;
+
+        mDelegate.destroy();
+
+        assertNull(mDelegate.peekObjectGraph());
+        assertSame(module, InjectingActivityModule.obtain(null, null));
+    }
+
+    @Test
+    public void moduleIsRecycledOnlyOnce() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+        mDelegate.attach();
+
+        mDelegate.destroy();
+        mDelegate.destroy();
+
+        InjectingActivityModule module = InjectingActivityModule.obtain(null, null);
+        assertNotSame(module, InjectingActivityModule.obtain(null, null));
+    }
+
+    @Test
+    public void releaseDoesNotRecycleModule() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+        mDelegate.attach();
+        InjectingActivityModule module = mDelegate.mModule;
+
+        mDelegate.release();
+
+        assertNull(mDelegate.peekObjectGraph());
+        assertNotSame(module, InjectingActivityModule.obtain(null, null));
+    }
+
+    @Test
+    public void attachAfterDestroyCollectsNewModules() {
+        mDelegate.mParentGraph = ObjectGraph.create(new ParentModule("first"));
+        mDelegate.attach();
+        mDelegate.destroy();
+        mComponent.name = null;
+
+        mDelegate.attach();
+
+        assertNotNull(mDelegate.peekObjectGraph());
+        assertEquals(2, mDelegate.mCollected.get());
+        assertEquals("first", mComponent.name);
+    }
+
+    @Test
+    public void lazyAttachFromTwoThreadsCreatesOneGraph() throws Exception {
+        final ParentModule parentModule = new ParentModule("first");
+        mDelegate.mParentGraph = ObjectGraph.create(parentModule);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ObjectGraph[] objectGraphs = new ObjectGraph[ATTACHING_THREADS];
+        Thread[] threads = new Thread[ATTACHING_THREADS];
+        for (int i = 0; i < ATTACHING_THREADS; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    objectGraphs[index] = mDelegate.getObjectGraph(true);
+                }
+            });
+            threads[i].start();
+        }
+        mDelegate.mSlow = true;
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNotNull(objectGraphs[0]);
+        assertSame(objectGraphs[0], objectGraphs[1]);
+        assertEquals(1, mDelegate.mCollected.get());
+        assertEquals(1, parentModule.mProvided.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestDelegate
+            extends InjectionDelegate {
+        final AtomicInteger mCollected = new AtomicInteger();
+        volatile ObjectGraph mParentGraph;
+        volatile InjectingActivityModule mModule;
+        volatile boolean mSlow;
+
+        TestDelegate(Object component) {
+            super(component, InjectionScope.ACTIVITY);
+        }
+
+        @Override
+        Injector getParent() {
+            final ObjectGraph parentGraph = mParentGraph;
+            return new Injector() {
+                @Override
+                public ObjectGraph getObjectGraph() {
+                    return parentGraph;
+                }
+
+                @Override
+                public void inject(Object target) {
+                    parentGraph.inject(target);
+                }
+            };
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            mCollected.incrementAndGet();
+            if (mSlow) {
+                // widen the window in which the other thread can race this one
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mModule = recycleOnDestroy(InjectingActivityModule.obtain(null, null));
+            collector.add(mModule);
+            collector.add(new ComponentModule());
+        }
+    }
+
+    @Module(library = true)
+    static class ParentModule {
+        final String mName;
+        final AtomicInteger mProvided = new AtomicInteger();
+
+        ParentModule(String name) {
+            mName = name;
+        }
+
+        @Provides
+        String provideName() {
+            mProvided.incrementAndGet();
+            return mName;
+        }
+    }
+
+    @Module(addsTo = ParentModule.class, includes = InjectingActivityModule.class,
+            injects = {Component.class, Holder.class})
+    static class ComponentModule {
+    }
+
+    static class Component {
+        @Inject
+        String name;
+    }
+
+    static class Holder {
+        @Inject
+        String name;
+
+        @Inject
+        Holder() {
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.fizzbuzz.android.dagger.InjectionPhase.CREATE_GRAPH;
+import static com.fizzbuzz.android.dagger.InjectionPhase.INJECT;
+import static com.fizzbuzz.android.dagger.InjectionScope.ACTIVITY;
+import static org.junit.Assert.assertEquals;
+
+public class InjectionMetricsTest {
+    // more than the phases a thread can have in progress
+    private static final int PHASES = 20;
+
+    private final InjectionMetrics mMetrics = InjectionMetrics.getInstance();
+    private final Component mComponent = new Component();
+
+    @Before
+    public void setUp() {
+        mMetrics.reset();
+        mMetrics.setSampleInterval(1);
+        mMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mMetrics.setEnabled(false);
+        mMetrics.setSampleInterval(InjectionMetrics.DEFAULT_SAMPLE_INTERVAL);
+        mMetrics.reset();
+    }
+
+    @Test
+    public void phasesAreCountedAndTimed() {
+        InjectionTracing.begin(mComponent, ACTIVITY, CREATE_GRAPH);
+        InjectionTracing.begin(mComponent, ACTIVITY, INJECT);
+        InjectionTracing.end(mComponent, ACTIVITY, INJECT);
+        InjectionTracing.end(mComponent, ACTIVITY, CREATE_GRAPH);
+
+        InjectionMetrics.ComponentSnapshot snapshot = snapshot();
+        assertEquals(ACTIVITY, snapshot.getScope());
+        assertEquals(1, snapshot.getCount(CREATE_GRAPH));
+        assertEquals(1, snapshot.getSampledCount(CREATE_GRAPH));
+        assertEquals(1, snapshot.getSampledCount(INJECT));
+    }
+
+    @Test
+    public void phasesEndedAfterDisablingDoNotStayInProgress() {
+        for (int i = 0; i < PHASES; i++) {
+            mMetrics.setEnabled(true);
+            InjectionTracing.begin(mComponent, ACTIVITY, CREATE_GRAPH);
+            mMetrics.setEnabled(false);
+            InjectionTracing.end(mComponent, ACTIVITY, CREATE_GRAPH);
+        }
+        mMetrics.setEnabled(true);
+        InjectionTracing.begin(mComponent, ACTIVITY, INJECT);
+        InjectionTracing.end(mComponent, ACTIVITY, INJECT);
+
+        assertEquals(PHASES, snapshot().getCount(CREATE_GRAPH));
+        assertEquals(1, snapshot().getSampledCount(INJECT));
+    }
+
+    @Test
+    public void phasesBegunWhileDisabledAreNotRecorded() {
+        mMetrics.setEnabled(false);
+        InjectionTracing.begin(mComponent, ACTIVITY, CREATE_GRAPH);
+        mMetrics.setEnabled(true);
+        InjectionTracing.begin(mComponent, ACTIVITY, CREATE_GRAPH);
+        InjectionTracing.end(mComponent, ACTIVITY, CREATE_GRAPH);
+        InjectionTracing.end(mComponent, ACTIVITY, CREATE_GRAPH);
+        for (int i = 0; i < PHASES; i++) {
+            InjectionTracing.begin(mComponent, ACTIVITY, INJECT);
+            InjectionTracing.end(mComponent, ACTIVITY, INJECT);
+        }
+
+        assertEquals(1, snapshot().getCount(CREATE_GRAPH));
+        assertEquals(PHASES, snapshot().getSampledCount(INJECT));
+    }
+
+    private InjectionMetrics.ComponentSnapshot snapshot() {
+        return mMetrics.snapshot().getComponents().get(Component.class);
+    }
+
+    private static final class Component {
+    }
+}
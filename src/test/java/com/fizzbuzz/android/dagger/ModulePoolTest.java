@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ModulePoolTest {
+    @Test
+    public void emptyPoolHasNothingToAcquire() {
+        assertNull(new ModulePool<Object>(2).acquire());
+    }
+
+    @Test
+    public void releasedModuleIsAcquiredAgain() {
+        ModulePool<Object> pool = new ModulePool<Object>(2);
+        Object module = new Object();
+        pool.release(module);
+
+        assertSame(module, pool.acquire());
+        assertNull(pool.acquire());
+    }
+
+    @Test
+    public void poolKeepsNoMoreThanItsCapacity() {
+        ModulePool<Object> pool = new ModulePool<Object>(2);
+        Object first = new Object();
+        Object second = new Object();
+        pool.release(first);
+        pool.release(second);
+        pool.release(new Object());
+
+        Map<Object, Boolean> acquired = new IdentityHashMap<Object, Boolean>();
+        acquired.put(pool.acquire(), true);
+        acquired.put(pool.acquire(), true);
+
+        assertNull(pool.acquire());
+        assertEquals(2, acquired.size());
+        assertSame(Boolean.TRUE, acquired.get(first));
+        assertSame(Boolean.TRUE, acquired.get(second));
+    }
+
+    @Test
+    public void recycledActivityModuleIsReboundWhenObtained() {
+        Injector first = new TestInjector();
+        Injector second = new TestInjector();
+        InjectingActivityModule module = InjectingActivityModule.obtain(null, first);
+        assertSame(first, module.provideActivityInjector());
+
+        module.recycle();
+        assertNull(module.provideActivityInjector());
+
+        InjectingActivityModule reused = InjectingActivityModule.obtain(null, second);
+        assertSame(module, reused);
+        assertSame(second, reused.provideActivityInjector());
+    }
+
+    private static class TestInjector
+            implements Injector {
+        @Override
+        public ObjectGraph getObjectGraph() {
+            return null;
+        }
+
+        @Override
+        public void inject(Object target) {
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import com.fizzbuzz.android.dagger.InjectingAppWidgetProvider.CachedAppWidgetProviderModule;
+import com.fizzbuzz.android.dagger.InjectingAppWidgetProvider.InjectingAppWidgetProviderModule.AppWidgetProvider;
+import com.fizzbuzz.android.dagger.InjectingBroadcastReceiver.CachedBroadcastReceiverModule;
+import com.fizzbuzz.android.dagger.InjectingBroadcastReceiver.InjectingBroadcastReceiverModule.BroadcastReceiver;
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectGraphCacheTest {
+    @Test
+    public void secondComponentReusesCachedGraph() {
+        ObjectGraph parentGraph = ObjectGraph.create(new ParentModule());
+        TestDelegate first = new TestDelegate(new FirstReceiver(), parentGraph);
+        TestDelegate second = new TestDelegate(new FirstReceiver(), parentGraph);
+
+        ObjectGraphCache.Entry entry = first.getCachedObjectGraph(CachedBroadcastReceiverModule.class);
+
+        assertSame(entry, second.getCachedObjectGraph(CachedBroadcastReceiverModule.class));
+        assertSame(parentGraph, entry.parentGraph);
+        assertEquals(1, first.mCollected);
+        assertEquals(0, second.mCollected);
+    }
+
+    @Test
+    public void newParentGraphMissesCache() {
+        ObjectGraph parentGraph = ObjectGraph.create(new ParentModule());
+        ObjectGraphCache.Entry entry = new TestDelegate(new SecondReceiver(), parentGraph)
+                .getCachedObjectGraph(CachedBroadcastReceiverModule.class);
+
+        ObjectGraph newParentGraph = ObjectGraph.create(new ParentModule());
+        TestDelegate delegate = new TestDelegate(new SecondReceiver(), newParentGraph);
+        ObjectGraphCache.Entry newEntry = delegate.getCachedObjectGraph(CachedBroadcastReceiverModule.class);
+
+        assertNotSame(entry, newEntry);
+        assertSame(newParentGraph, newEntry.parentGraph);
+        assertEquals(1, delegate.mCollected);
+        assertNull(ObjectGraphCache.get(SecondReceiver.class, parentGraph));
+        assertSame(newEntry, ObjectGraphCache.get(SecondReceiver.class, newParentGraph));
+    }
+
+    @Test
+    public void bindingNullReleasesComponentReferences() {
+        ObjectGraph parentGraph = ObjectGraph.create(new ParentModule());
+        ThirdReceiver receiver = new ThirdReceiver();
+        TestDelegate delegate = new TestDelegate(receiver, parentGraph);
+
+        // the sequence InjectingBroadcastReceiver.onReceive goes through when the cache is enabled
+        ObjectGraphCache.Entry entry = delegate.getCachedObjectGraph(CachedBroadcastReceiverModule.class);
+        CachedBroadcastReceiverModule module = (CachedBroadcastReceiverModule) entry.componentModule;
+        synchronized (entry) {
+            module.bind(null, null, receiver);
+            try {
+                delegate.injectComponent(entry);
+                assertEquals("parent", receiver.parentValue);
+                assertSame(receiver, receiver.injector.get());
+            } finally {
+                module.bind(null, null, null);
+                delegate.destroy();
+            }
+        }
+
+        // the cached graph no longer reaches the receiver
+        assertNull(delegate.peekObjectGraph());
+        assertNull(receiver.injector.get());
+        assertNull(entry.objectGraph.get(Holder.class).injector.get());
+    }
+
+    @Test
+    public void graphWithoutComponentModuleIsNotCached() {
+        ObjectGraph parentGraph = ObjectGraph.create(new ParentModule());
+        TestDelegate delegate = new TestDelegate(new FourthReceiver(), parentGraph) {
+            @Override
+            void collectModules(ModuleCollector collector) {
+                mCollected++;
+                collector.add(new UncachedModule());
+            }
+        };
+
+        ObjectGraphCache.Entry entry = delegate.getCachedObjectGraph(CachedBroadcastReceiverModule.class);
+
+        assertNull(entry.componentModule);
+        assertNull(ObjectGraphCache.get(FourthReceiver.class, parentGraph));
+    }
+
+    @Test
+    public void secondAppWidgetProviderReusesCachedGraph() {
+        ObjectGraph parentGraph = ObjectGraph.create(new ParentModule());
+        TestDelegate first = new AppWidgetProviderDelegate(new FirstProvider(), parentGraph);
+        TestDelegate second = new AppWidgetProviderDelegate(new FirstProvider(), parentGraph);
+
+        ObjectGraphCache.Entry entry = first.getCachedObjectGraph(CachedAppWidgetProviderModule.class);
+
+        assertSame(entry, second.getCachedObjectGraph(CachedAppWidgetProviderModule.class));
+        assertTrue(entry.componentModule instanceof CachedAppWidgetProviderModule);
+        assertEquals(1, first.mCollected);
+        assertEquals(0, second.mCollected);
+    }
+
+    @Test
+    public void bindingNullReleasesAppWidgetProviderReferences() {
+        ObjectGraph parentGraph = ObjectGraph.create(new ParentModule());
+        SecondProvider provider = new SecondProvider();
+        TestDelegate delegate = new AppWidgetProviderDelegate(provider, parentGraph);
+
+        // the sequence InjectingAppWidgetProvider.onReceive goes through when the cache is enabled
+        ObjectGraphCache.Entry entry = delegate.getCachedObjectGraph(CachedAppWidgetProviderModule.class);
+        CachedAppWidgetProviderModule module = (CachedAppWidgetProviderModule) entry.componentModule;
+        synchronized (entry) {
+            module.bind(null, null, provider);
+            try {
+                delegate.injectComponent(entry);
+                assertEquals("parent", provider.parentValue);
+                assertSame(provider, provider.injector.get());
+            } finally {
+                module.bind(null, null, null);
+                delegate.destroy();
+            }
+        }
+
+        assertNull(delegate.peekObjectGraph());
+        assertNull(provider.injector.get());
+        assertNull(entry.objectGraph.get(ProviderHolder.class).injector.get());
+    }
+
+    private static class TestDelegate
+            extends InjectionDelegate {
+        private final Injector mParent;
+        int mCollected;
+
+        TestDelegate(Object component, final ObjectGraph parentGraph) {
+            super(component, InjectionScope.BROADCAST_RECEIVER);
+            mParent = new Injector() {
+                @Override
+                public ObjectGraph getObjectGraph() {
+                    return parentGraph;
+                }
+
+                @Override
+                public void inject(Object target) {
+                    parentGraph.inject(target);
+                }
+            };
+        }
+
+        @Override
+        Injector getParent() {
+            return mParent;
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            mCollected++;
+            collector.add(new CachedBroadcastReceiverModule(null, null, null));
+            collector.add(new ReceiverModule());
+        }
+    }
+
+    private static class AppWidgetProviderDelegate
+            extends TestDelegate {
+        AppWidgetProviderDelegate(Object component, ObjectGraph parentGraph) {
+            super(component, parentGraph);
+        }
+
+        @Override
+        void collectModules(ModuleCollector collector) {
+            mCollected++;
+            collector.add(new CachedAppWidgetProviderModule(null, null, null));
+            collector.add(new ProviderModule());
+        }
+    }
+
+    @Module(library = true)
+    static class ParentModule {
+        @Provides
+        String provideValue() {
+            return "parent";
+        }
+    }
+
+    @Module(addsTo = ParentModule.class,
+            includes = CachedBroadcastReceiverModule.class,
+            injects = {FirstReceiver.class, SecondReceiver.class, ThirdReceiver.class, Holder.class})
+    static class ReceiverModule {
+    }
+
+    @Module(addsTo = ParentModule.class,
+            includes = CachedAppWidgetProviderModule.class,
+            injects = {FirstProvider.class, SecondProvider.class, ProviderHolder.class})
+    static class ProviderModule {
+    }
+
+    @Module(addsTo = ParentModule.class, injects = FourthReceiver.class)
+    static class UncachedModule {
+    }
+
+    static class FirstReceiver {
+    }
+
+    static class SecondReceiver {
+    }
+
+    static class ThirdReceiver
+            implements Injector {
+        @Inject
+        String parentValue;
+        @Inject
+        @BroadcastReceiver
+        Provider<Injector> injector;
+
+        @Override
+        public ObjectGraph getObjectGraph() {
+            return null;
+        }
+
+        @Override
+        public void inject(Object target) {
+        }
+    }
+
+    static class FourthReceiver {
+    }
+
+    static class FirstProvider {
+    }
+
+    static class SecondProvider
+            implements Injector {
+        @Inject
+        String parentValue;
+        @Inject
+        @AppWidgetProvider
+        Provider<Injector> injector;
+
+        @Override
+        public ObjectGraph getObjectGraph() {
+            return null;
+        }
+
+        @Override
+        public void inject(Object target) {
+        }
+    }
+
+    static class ProviderHolder {
+        @Inject
+        @AppWidgetProvider
+        Provider<Injector> injector;
+
+        @Inject
+        ProviderHolder() {
+        }
+    }
+
+    static class Holder {
+        @Inject
+        @BroadcastReceiver
+        Provider<Injector> injector;
+
+        @Inject
+        Holder() {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.ObjectGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObjectGraphGateTest {
+    private final List<Runnable> mPosted = new ArrayList<Runnable>();
+    private final List<ObjectGraph> mReady = new ArrayList<ObjectGraph>();
+    private final ObjectGraphGate.Callback mCallback = new ObjectGraphGate.Callback() {
+        @Override
+        public void onObjectGraphReady(ObjectGraph objectGraph) {
+            mReady.add(objectGraph);
+        }
+    };
+
+    private ObjectGraphGate mGate;
+
+    @Before
+    public void setUp() {
+        mGate = new ObjectGraphGate(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mPosted.add(command);
+            }
+        });
+    }
+
+    @Test
+    public void awaitReturnsGraphOnceOpen() throws Exception {
+        ObjectGraph objectGraph = ObjectGraph.create();
+        mGate.open(objectGraph);
+
+        assertTrue(mGate.isOpen());
+        assertSame(objectGraph, mGate.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void awaitReturnsNullOnTimeout() throws Exception {
+        assertNull(mGate.await(10, TimeUnit.MILLISECONDS));
+        assertFalse(mGate.isOpen());
+    }
+
+    @Test
+    public void awaitUnblocksWhenOpenedFromAnotherThread() throws Exception {
+        final ObjectGraph objectGraph = ObjectGraph.create();
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mGate.open(objectGraph);
+            }
+        });
+        opener.start();
+
+        assertSame(objectGraph, mGate.await(5, TimeUnit.SECONDS));
+        opener.join();
+    }
+
+    @Test
+    public void openWithoutDaggerGraphStillOpens() throws Exception {
+        mGate.open(null);
+
+        assertTrue(mGate.isOpen());
+        assertNull(mGate.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failSurfacesCauseFromAwaitAndMainThread() throws Exception {
+        RuntimeException cause = new RuntimeException("boom");
+        mGate.addCallback(mCallback);
+        mGate.fail(cause);
+
+        try {
+            mGate.await(0, TimeUnit.MILLISECONDS);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertSame(cause, e.getCause());
+        }
+
+        // the callback is dropped; the only thing posted is the rethrow
+        assertEquals(1, mPosted.size());
+        try {
+            mPosted.get(0).run();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertSame(cause, e.getCause());
+        }
+        assertTrue(mReady.isEmpty());
+    }
+
+    @Test
+    public void callbacksArePostedOnOpen() {
+        ObjectGraph objectGraph = ObjectGraph.create();
+        mGate.addCallback(mCallback);
+        assertTrue(mPosted.isEmpty());
+
+        mGate.open(objectGraph);
+        runPosted();
+
+        assertEquals(1, mReady.size());
+        assertSame(objectGraph, mReady.get(0));
+    }
+
+    @Test
+    public void callbackAddedAfterOpenIsPostedImmediately() {
+        ObjectGraph objectGraph = ObjectGraph.create();
+        mGate.open(objectGraph);
+
+        mGate.addCallback(mCallback);
+        runPosted();
+
+        assertEquals(1, mReady.size());
+        assertSame(objectGraph, mReady.get(0));
+    }
+
+    @Test
+    public void removedCallbackIsNotInvoked() {
+        mGate.addCallback(mCallback);
+        mGate.removeCallback(mCallback);
+
+        mGate.open(ObjectGraph.create());
+        runPosted();
+
+        assertTrue(mReady.isEmpty());
+    }
+
+    private void runPosted() {
+        for (Runnable runnable : mPosted) {
+            runnable.run();
+        }
+        mPosted.clear();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+import dagger.internal.FailoverLoader;
+import dagger.internal.Loader;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScopeAccountingTest {
+    // an 8-byte header, a long and an int, aligned to 8 bytes
+    private static final long SIZED_BYTES = 24;
+
+    private ObjectGraph mObjectGraph;
+
+    @Before
+    public void setUp() {
+        // as InjectingApplication creates its graph when accounting is enabled
+        Loader loader = new AccountingLoader(new FailoverLoader());
+        mObjectGraph = DaggerInternals.createWith(new EvictingLoader(new WarmingLoader(loader)),
+                new Object[]{new ApplicationModule()});
+        assertNotNull(mObjectGraph);
+    }
+
+    @Test
+    public void countsSingletonsAndUnscopedProvisions() {
+        mObjectGraph.get(SingletonService.class);
+        mObjectGraph.get(SingletonService.class);
+        mObjectGraph.get(UnscopedService.class);
+        mObjectGraph.get(UnscopedService.class);
+        mObjectGraph.get(UnscopedService.class);
+
+        ScopeAccounting accounting = ScopeAccounting.of(injectorFor(mObjectGraph));
+        Map<String, ScopeAccounting.BindingAccounting> bindings = byKey(accounting);
+
+        assertEquals(2, accounting.getBindingsLinked());
+        assertEquals(1, accounting.getSingletonsInstantiated());
+        assertEquals(3, accounting.getUnscopedProvisions());
+        assertEquals(3 * SIZED_BYTES, accounting.getUnscopedBytes());
+        assertEquals(SIZED_BYTES, accounting.getSingletonBytes());
+
+        ScopeAccounting.BindingAccounting singleton = bindings.get(SingletonService.class.getName());
+        assertTrue(singleton.isSingleton());
+        assertEquals(1, singleton.getProvisions());
+
+        ScopeAccounting.BindingAccounting unscoped = bindings.get(UnscopedService.class.getName());
+        assertFalse(unscoped.isSingleton());
+        assertEquals(3, unscoped.getProvisions());
+        assertEquals(3 * SIZED_BYTES, unscoped.getShallowBytes());
+
+        // the most provided first
+        assertEquals(UnscopedService.class.getName(), accounting.getBindings().get(0).getKey());
+    }
+
+    @Test
+    public void countsProviderMethods() {
+        mObjectGraph.get(String.class);
+        mObjectGraph.get(String.class);
+
+        ScopeAccounting.BindingAccounting binding = byKey(ScopeAccounting.of(injectorFor(mObjectGraph)))
+                .get(String.class.getName());
+
+        assertFalse(binding.isSingleton());
+        assertEquals(2, binding.getProvisions());
+    }
+
+    @Test
+    public void bindingIsCountedInTheGraphThatLinksIt() {
+        ObjectGraph activityGraph = mObjectGraph.plus(new ActivityModule());
+
+        activityGraph.get(ActivityService.class);
+        activityGraph.get(UnscopedService.class);
+
+        ScopeAccounting application = ScopeAccounting.of(injectorFor(mObjectGraph));
+        ScopeAccounting activity = ScopeAccounting.of(injectorFor(activityGraph));
+
+        // the unscoped binding inherited from the application graph is counted there
+        assertEquals(1, byKey(application).get(UnscopedService.class.getName()).getProvisions());
+        assertEquals(1, application.getUnscopedProvisions());
+        assertNull(byKey(application).get(ActivityService.class.getName()));
+
+        assertEquals(1, activity.getBindingsLinked());
+        assertEquals(1, activity.getSingletonsInstantiated());
+        assertEquals(0, activity.getUnscopedProvisions());
+    }
+
+    @Test
+    public void graphWithoutAccountingHasNone() {
+        assertNull(ScopeAccounting.of(injectorFor(ObjectGraph.create(new ApplicationModule()))));
+        assertNull(ScopeAccounting.of(injectorFor(null)));
+    }
+
+    private static Map<String, ScopeAccounting.BindingAccounting> byKey(ScopeAccounting accounting) {
+        Map<String, ScopeAccounting.BindingAccounting> result =
+                new HashMap<String, ScopeAccounting.BindingAccounting>();
+        for (ScopeAccounting.BindingAccounting binding : accounting.getBindings()) {
+            result.put(binding.getKey(), binding);
+        }
+        return result;
+    }
+
+    private static Injector injectorFor(final ObjectGraph objectGraph) {
+        return new Injector() {
+            @Override
+            public ObjectGraph getObjectGraph() {
+                return objectGraph;
+            }
+
+            @Override
+            public void inject(Object target) {
+                objectGraph.inject(target);
+            }
+        };
+    }
+
+    @Module(injects = {SingletonService.class, UnscopedService.class, String.class})
+    static class ApplicationModule {
+        @Provides
+        String provideName() {
+            return new String("name");
+        }
+    }
+
+    @Module(addsTo = ApplicationModule.class, injects = {ActivityService.class, UnscopedService.class})
+    static class ActivityModule {
+        @Provides
+        @Singleton
+        ActivityService provideActivityService() {
+            return new ActivityService();
+        }
+    }
+
+    @Singleton
+    static class SingletonService {
+        long mLong;
+        int mInt;
+
+        @Inject
+        SingletonService() {
+        }
+    }
+
+    static class UnscopedService {
+        long mLong;
+        int mInt;
+
+        @Inject
+        UnscopedService() {
+        }
+    }
+
+    static class ActivityService {
+    }
+}
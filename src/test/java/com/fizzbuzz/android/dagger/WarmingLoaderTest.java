@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2015 Fizz Buzz LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fizzbuzz.android.dagger;
+
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+import dagger.internal.FailoverLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class WarmingLoaderTest {
+    private static final int ACCESSING_THREADS = 4;
+
+    private final TestModule mModule = new TestModule();
+    private WarmingLoader mLoader;
+    private ObjectGraph mObjectGraph;
+
+    @Before
+    public void setUp() {
+        // as InjectingApplication creates its graph
+        mLoader = new WarmingLoader(new FailoverLoader());
+        mObjectGraph = DaggerInternals.createWith(new EvictingLoader(mLoader), new Object[]{mModule});
+        assertNotNull(mObjectGraph);
+    }
+
+    @Test
+    public void warmUpCreatesOnlyWarmUpSingletons() {
+        mLoader.warmUp(mObjectGraph, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        assertEquals(1, mModule.mSlowCreated.get());
+        assertEquals(1, mModule.mEvictableCreated.get());
+        assertEquals(0, mModule.mColdCreated.get());
+
+        mObjectGraph.get(SlowService.class);
+        mObjectGraph.get(EvictableService.class);
+        assertEquals(1, mModule.mSlowCreated.get());
+        assertEquals(1, mModule.mEvictableCreated.get());
+    }
+
+    @Test
+    public void warmUpRacingFirstAccessCreatesSingleInstance() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        mLoader.warmUp(mObjectGraph, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        awaitQuietly(start);
+                        command.run();
+                    }
+                }));
+            }
+        });
+        assertEquals(1, threads.size());
+
+        final Object[] slow = new Object[ACCESSING_THREADS];
+        final Object[] evictable = new Object[ACCESSING_THREADS];
+        for (int i = 0; i < ACCESSING_THREADS; i++) {
+            final int index = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    slow[index] = mObjectGraph.get(SlowService.class);
+                    evictable[index] = mObjectGraph.get(EvictableService.class);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, mModule.mSlowCreated.get());
+        assertEquals(1, mModule.mEvictableCreated.get());
+        for (int i = 0; i < ACCESSING_THREADS; i++) {
+            assertSame(mObjectGraph.get(SlowService.class), slow[i]);
+            assertSame(mObjectGraph.get(EvictableService.class), evictable[i]);
+        }
+    }
+
+    @Test
+    public void graphsCreatedAfterWarmUpAreNotWarmedUp() {
+        mLoader.warmUp(mObjectGraph, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        TestModule module = new TestModule();
+        ObjectGraph objectGraph = DaggerInternals.createWith(new EvictingLoader(mLoader), new Object[]{module});
+
+        mLoader.warmUp(objectGraph, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        assertEquals(0, module.mSlowCreated.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Module(injects = {SlowService.class, EvictableService.class, ColdService.class})
+    static class TestModule {
+        final AtomicInteger mSlowCreated = new AtomicInteger();
+        final AtomicInteger mEvictableCreated = new AtomicInteger();
+        final AtomicInteger mColdCreated = new AtomicInteger();
+
+        @Provides
+        @Singleton
+        @WarmUp
+        SlowService provideSlowService() {
+            mSlowCreated.incrementAndGet();
+            // widen the window in which a first access can race the warm-up
+            sleepQuietly();
+            return new SlowService();
+        }
+
+        @Provides
+        @Singleton
+        @WarmUp
+        @Evictable
+        EvictableService provideEvictableService() {
+            mEvictableCreated.incrementAndGet();
+            sleepQuietly();
+            return new EvictableService();
+        }
+
+        @Provides
+        @Singleton
+        ColdService provideColdService() {
+            mColdCreated.incrementAndGet();
+            return new ColdService();
+        }
+
+        private static void sleepQuietly() {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static class SlowService {
+    }
+
+    static class EvictableService {
+    }
+
+    static class ColdService {
+    }
+}